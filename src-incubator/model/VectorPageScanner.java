@@ -0,0 +1,95 @@
+package model;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * A {@link PageScanner} that gathers the key bytes of the records of a page at
+ * {@code recordSize} stride into vector lanes and compares them against the key
+ * with the {@code jdk.incubator.vector} API. One lane holds one record, the four
+ * bytes of the big-endian key are compared plane by plane.
+ * <p>
+ * This class lives in {@code src-incubator} since it needs the incubator module to be
+ * compiled and run:
+ * </p>
+ * <blockquote>
+ * <pre>
+ *  javac --add-modules jdk.incubator.vector -d bin src/.../*.java src-incubator/model/VectorPageScanner.java
+ *  java --add-modules jdk.incubator.vector -cp bin modelTesting.App
+ * </pre>
+ * </blockquote>
+ * It is loaded reflectively by {@link PageScanner#create()}.
+ *
+ * @author nr
+ * @since 2023-03
+ */
+public class VectorPageScanner implements PageScanner {
+
+    /* The widest byte species of the platform */
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+
+    /* The record sizes up to which the page layouts are cached */
+    private static final int CACHED_RECORD_SIZES = 256;
+
+    /* The record offsets of the last page layout of every record size, reused across calls. A
+       slot may be overwritten by another thread at any time, which is harmless since a Layout
+       is immutable and its fields are final. */
+    private final Layout[] layouts = new Layout[CACHED_RECORD_SIZES];
+
+    @Override
+    public int indexOf(int key, byte[] page, int recordSize) {
+        Layout l = layout(page.length, recordSize);
+
+        byte k0 = (byte) (key >>> 24);
+        byte k1 = (byte) (key >>> 16);
+        byte k2 = (byte) (key >>> 8);
+        byte k3 = (byte) key;
+
+        for(int i = 0; i < l.keys; i += SPECIES.length()) {
+            VectorMask<Byte> lanes = SPECIES.indexInRange(i, l.keys);
+            VectorMask<Byte> match = ByteVector.fromArray(SPECIES, page, 0, l.offsets, i, lanes).compare(VectorOperators.EQ, k0, lanes);
+            if(!match.anyTrue()) continue;
+            match = match.and(ByteVector.fromArray(SPECIES, page, 1, l.offsets, i, match).compare(VectorOperators.EQ, k1, match));
+            match = match.and(ByteVector.fromArray(SPECIES, page, 2, l.offsets, i, match).compare(VectorOperators.EQ, k2, match));
+            match = match.and(ByteVector.fromArray(SPECIES, page, 3, l.offsets, i, match).compare(VectorOperators.EQ, k3, match));
+            if(match.anyTrue())
+                return l.offsets[i + match.firstTrue()];
+        }
+
+        return -1;
+    }
+
+    /* Returns the layout of a page, cached per record size so that the data file and its index
+       file, scanned in turns, do not evict each other's layout */
+    private Layout layout(int pageLength, int recordSize) {
+        if(recordSize <= 0 || recordSize >= CACHED_RECORD_SIZES)
+            return new Layout(pageLength, recordSize);
+
+        Layout l = layouts[recordSize];
+        if(l == null || l.pageLength != pageLength)
+            layouts[recordSize] = l = new Layout(pageLength, recordSize);
+        return l;
+    }
+
+    /**
+     * The offsets of the records in a page of a given length and record size,
+     * padded to a whole number of vectors so that the gathers never read past them.
+     */
+    private static final class Layout {
+        final int pageLength;
+        final int recordSize;
+        final int keys;
+        final int[] offsets;
+
+        Layout(int pageLength, int recordSize) {
+            this.pageLength = pageLength;
+            this.recordSize = recordSize;
+            this.keys = recordSize <= 0 ? 0 : PageScanner.keysInPage(pageLength, recordSize);
+            this.offsets = new int[(keys + SPECIES.length() - 1)/SPECIES.length()*SPECIES.length() + SPECIES.length()];
+            for(int i = 0; i < keys; ++i)
+                offsets[i] = i*recordSize;
+        }
+    }
+}
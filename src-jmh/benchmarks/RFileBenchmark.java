@@ -0,0 +1,261 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import model.DataClassConfiguration;
+import model.IndexBuffer;
+import model.Lookup;
+import model.RangeScan;
+import model.RFile;
+import model.Record;
+import modelTesting.DataGenerator;
+import modelTesting.KeyPermutation;
+import modelTesting.RandomString;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks of the hot paths of {@link RFile}: the searches of methods A to C and G, the
+ * point lookup {@link RFile#get(int) get} that reads the record as well, the range
+ * {@link RFile#scan(int, int) scan}, the index build ({@link RFile#split() split} and
+ * {@link RFile#sort() sort}, or both at once with
+ * {@link RFile#bulkLoad(java.util.Iterator) bulkLoad}) and the page parsers they are built on. Every benchmark runs for 31 and 59 byte records and for a
+ * small and a large file, generated once per fork by {@link DataGenerator}.
+ * <p>
+ * The searches look up keys drawn from {@code [1, 2n]} like {@link modelTesting.TestGenerator}
+ * does, so about half of them are misses. {@link RFile#binarySearch(int) binarySearch} probes
+ * the entries of fixed size index pages, so it runs in forks of its own with
+ * {@code -Drfile.compressedIndex=false}. The files are written under {@code files/}, so the
+ * benchmarks are run from a directory holding {@code files/IndexFiles}.
+ * </p>
+ *
+ * @author nr
+ * @since 2023-03
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class RFileBenchmark {
+
+    /* The number of keys drawn for the searches */
+    private static final int KEYS = 1 << 12;
+
+    /* The width of the key range of a range scan, about half of the keys are in the file */
+    private static final int SCAN_KEYS = 256;
+
+    /* A data file with its sorted index file. */
+    @State(Scope.Benchmark)
+    public static class FileState {
+
+        /* The length of the data string, 27 or 55 bytes for 31 or 59 byte records */
+        @Param({"27", "55"})
+        public int dataBytes;
+
+        /* The number of records of the file */
+        @Param({"1000", "100000"})
+        public int records;
+
+        RFile rf;
+        int[] keys;
+        byte[] dataPage;
+        byte[] indexPage;
+        int next;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            new File("files/IndexFiles").mkdirs();
+            rf = Generator.generate(dataBytes, records);
+            rf.split();
+            rf.sort();
+
+            SplittableRandom random = new SplittableRandom(42);
+            keys = new int[KEYS];
+            for(int i = 0; i < KEYS; ++i)
+                keys[i] = random.nextInt(1, 2*records + 1);
+
+            dataPage = new byte[rf.getPageSize()];
+            rf.getPageSource().read(rf.getHeader().position(1), dataPage);
+            indexPage = new byte[rf.getPageSize()];
+            rf.getIndexFile().getPageSource().read(rf.getIndexFile().getHeader().position(1), indexPage);
+        }
+
+        int nextKey() {
+            return keys[next++ & (KEYS - 1)];
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            Generator.delete(rf);
+        }
+    }
+
+    /* A data file whose index file is rebuilt before every invocation. */
+    @State(Scope.Benchmark)
+    public static class BuildState {
+
+        @Param({"27", "55"})
+        public int dataBytes;
+
+        @Param({"1000", "100000"})
+        public int records;
+
+        RFile rf;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            new File("files/IndexFiles").mkdirs();
+            rf = Generator.generate(dataBytes, records);
+        }
+
+        @Setup(Level.Invocation)
+        public void unsorted() throws IOException {
+            rf.split();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            Generator.delete(rf);
+        }
+    }
+
+    /* The records of a data file, bulk loaded into a file on every invocation. */
+    @State(Scope.Benchmark)
+    public static class LoadState {
+
+        @Param({"27", "55"})
+        public int dataBytes;
+
+        @Param({"1000", "100000"})
+        public int records;
+
+        RFile rf;
+        List<Record> recordList;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            new File("files/IndexFiles").mkdirs();
+            KeyPermutation keys = new KeyPermutation(2L*records, 42);
+            recordList = new ArrayList<>(records);
+            for(int i = 0; i < records; ++i)
+                recordList.add(new Record((int) keys.permute(i) + 1, RandomString.getAlphaNumericString(dataBytes)));
+            rf = new RFile("bulk_"+dataBytes+"-bytes_"+records+".bin", "rw", dataBytes + Integer.BYTES,
+                    DataClassConfiguration.PAGE_SIZE, DataClassConfiguration.PAGE_SOURCE);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            Generator.delete(rf);
+        }
+    }
+
+    @Benchmark
+    public int searchFile(FileState s) throws IOException {
+        return s.rf.searchFile(s.nextKey());
+    }
+
+    /* The entries are probed one by one, which only fixed size index pages allow */
+    @Benchmark
+    @Fork(value = 2, jvmArgsAppend = "-Drfile.compressedIndex=false")
+    public int binarySearch(FileState s) throws IOException {
+        return s.rf.binarySearch(s.nextKey());
+    }
+
+    @Benchmark
+    public int binarySearch2(FileState s) throws IOException {
+        return s.rf.binarySearch2(s.nextKey());
+    }
+
+    @Benchmark
+    public int fenceSearch(FileState s) throws IOException {
+        return s.rf.fenceSearch(s.nextKey());
+    }
+
+    @Benchmark
+    public int get(FileState s) throws IOException {
+        try(Lookup lookup = s.rf.get(s.nextKey())) {
+            return lookup.isFound() ? lookup.getRecord().getInt(0) : -1;
+        }
+    }
+
+    @Benchmark
+    public int scan(FileState s) throws IOException {
+        int key = s.nextKey();
+        int records = 0;
+        try(RangeScan scan = s.rf.scan(key, key + SCAN_KEYS - 1)) {
+            while(scan.hasNext()) {
+                scan.next();
+                records++;
+            }
+        }
+        return records;
+    }
+
+    @Benchmark
+    public boolean isInPage(FileState s) {
+        return s.rf.isInPage(s.nextKey(), s.dataPage);
+    }
+
+    @Benchmark
+    public int readPage(FileState s) {
+        IndexBuffer keys = s.rf.readPage(s.indexPage);
+        int size = keys.size();
+        keys.clear();
+        return size;
+    }
+
+    @Benchmark
+    public RFile split(BuildState s) throws IOException {
+        return s.rf.split();
+    }
+
+    @Benchmark
+    public RFile sort(BuildState s) throws IOException {
+        s.rf.sort();
+        return s.rf;
+    }
+
+    @Benchmark
+    public RFile bulkLoad(LoadState s) throws IOException {
+        return s.rf.bulkLoad(s.recordList.iterator());
+    }
+
+    /* Generates the data files, through the protected steps of DataGenerator. */
+    private static final class Generator extends DataGenerator {
+
+        private Generator(int dataBytes, int numOfRecords) throws IOException {
+            super(dataBytes, numOfRecords);
+            generateRecords();
+            fillFile();
+        }
+
+        static RFile generate(int dataBytes, int numOfRecords) throws IOException {
+            return new Generator(dataBytes, numOfRecords).getRf();
+        }
+
+        static void delete(RFile rf) throws IOException {
+            rf.close();
+            rf.getFile().delete();
+            if(rf.getIndexFile() != null)
+                rf.getIndexFile().getFile().delete();
+            rf.getFenceFile().delete();
+            rf.getBloomFile().delete();
+        }
+    }
+}
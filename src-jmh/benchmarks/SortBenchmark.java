@@ -0,0 +1,84 @@
+package benchmarks;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import model.IndexBuffer;
+import model.RadixSort;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks of the in-memory sort of packed index entries, {@link RadixSort} against the
+ * comparison sorts of {@link Arrays}, for entries with unique keys drawn from {@code [1, 2n]}
+ * like the keys of a generated file.
+ *
+ * @author nr
+ * @since 2023-03
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class SortBenchmark {
+
+    /* The number of entries */
+    @Param({"100000", "10000000"})
+    public int entries;
+
+    /* The entries in the order they are read from an unsorted index file */
+    private long[] unsorted;
+
+    /* The entries being sorted, a fresh copy for every invocation */
+    private long[] work;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(42);
+        unsorted = new long[entries];
+        for(int i = 0; i < entries; ++i)
+            unsorted[i] = IndexBuffer.pack(i + 1, i);
+        for(int i = entries - 1; i > 0; --i) {
+            int j = random.nextInt(i + 1);
+            long t = unsorted[i];
+            unsorted[i] = unsorted[j];
+            unsorted[j] = t;
+        }
+        work = new long[entries];
+    }
+
+    @Setup(Level.Invocation)
+    public void copy() {
+        System.arraycopy(unsorted, 0, work, 0, entries);
+    }
+
+    @Benchmark
+    public long[] radixSort() {
+        RadixSort.sort(work, 0, entries);
+        return work;
+    }
+
+    @Benchmark
+    public long[] arraysSort() {
+        Arrays.sort(work);
+        return work;
+    }
+
+    @Benchmark
+    public long[] parallelSort() {
+        Arrays.parallelSort(work);
+        return work;
+    }
+}
@@ -0,0 +1,63 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import utils.Utils;
+
+/**
+ * JMH benchmarks of the byte codecs of {@link Utils} every page parser is built on.
+ *
+ * @author nr
+ * @since 2023-03
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class UtilsBenchmark {
+
+    /* The value encoded, a field so that it is not constant folded */
+    private int value = 0x12345678;
+
+    /* An encoded value */
+    private final byte[] bytes = Utils.intToBytes(0x12345678);
+
+    /* A page the values are encoded into */
+    private final byte[] page = new byte[256];
+
+    @Benchmark
+    public byte[] intToBytes() {
+        return Utils.intToBytes(value);
+    }
+
+    @Benchmark
+    public byte[] intToBytesInPlace() {
+        Utils.intToBytes(value, page, 128);
+        return page;
+    }
+
+    @Benchmark
+    public int byteArrayToInt() {
+        return Utils.byteArrayToInt(bytes);
+    }
+
+    @Benchmark
+    public int byteArrayToIntAtOffset() {
+        return Utils.byteArrayToInt(page, 128);
+    }
+
+    @Benchmark
+    public byte[] intsToByteArray() {
+        return Utils.intsToByteArray(value, value + 1);
+    }
+}
@@ -0,0 +1,131 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.SplittableRandom;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Bulk loads a {@link BPlusTree} from sorted index files in the fixed and the compressed
+ * format and looks every key up again, as well as keys that are not in the tree.
+ *
+ * @author nr
+ * @since 2023-03
+ */
+class BPlusTreeTest {
+
+    private static final int PAGE_SIZE = 4096;
+    private static final int RECORD_SIZE = 31;
+
+    /* The page size of the trees, other than the default one so that reopening a tree reads it from the meta page */
+    private static final int TREE_PAGE_SIZE = 2*DataClassConfiguration.PAGE_SIZE;
+
+    @TempDir
+    File dir;
+
+    @Test
+    void findsEveryKeyOfAFixedIndex() throws IOException {
+        check(IndexPage.Format.FIXED, entries(30000, 1));
+    }
+
+    @Test
+    void findsEveryKeyOfACompressedIndex() throws IOException {
+        check(IndexPage.Format.compressed(RECORD_SIZE, PAGE_SIZE), entries(30000, 2));
+    }
+
+    @Test
+    void fillsEveryLevel() throws IOException {
+        int leafEntries;
+        int internalKeys;
+        try(BPlusTree empty = new BPlusTree(new File(dir, "empty"), TREE_PAGE_SIZE, PageSource.Kind.RAF)) {
+            leafEntries = empty.getLeafEntries();
+            internalKeys = empty.getInternalKeys();
+        }
+        assertEquals((TREE_PAGE_SIZE - 2*Integer.BYTES)/IndexBuffer.ENTRY_SIZE, leafEntries);
+
+        // one more entry than two full levels hold adds a third level
+        BPlusTree tree = check(IndexPage.Format.FIXED, entries(leafEntries*(internalKeys + 1) + 1, 3));
+        assertEquals(3, tree.getHeight());
+
+        tree = check(IndexPage.Format.FIXED, entries(leafEntries, 4));
+        assertEquals(1, tree.getHeight());
+    }
+
+    @Test
+    void emptyIndexGivesAnEmptyTree() throws IOException {
+        BPlusTree tree = check(IndexPage.Format.FIXED, new long[0]);
+        assertEquals(1, tree.getHeight());
+        try(BPlusTree reopened = reopen()) {
+            assertEquals(0, reopened.size());
+            assertEquals(-1, reopened.get(0));
+        }
+    }
+
+    @Test
+    void reopenedTreeFindsTheSameKeys() throws IOException {
+        long[] entries = entries(5000, 5);
+        check(IndexPage.Format.FIXED, entries);
+
+        try(BPlusTree tree = reopen()) {
+            assertEquals(TREE_PAGE_SIZE, tree.getPageSize());
+            assertEquals(entries.length, tree.size());
+            for(long entry : entries)
+                assertEquals(IndexBuffer.index(entry), tree.get(IndexBuffer.key(entry)));
+        }
+    }
+
+    /* Bulk loads the tree from the entries written in the given format, checks every lookup and returns the closed tree */
+    private BPlusTree check(IndexPage.Format format, long[] entries) throws IOException {
+        FileHeader header = new FileHeader(PAGE_SIZE, IndexBuffer.ENTRY_SIZE);
+        try(RandomAccessFile raf = new RandomAccessFile(new File(dir, "index"), "rw");
+            BPlusTree tree = new BPlusTree(new File(dir, "tree"), TREE_PAGE_SIZE, PageSource.Kind.RAF)) {
+            raf.setLength(0);
+            raf.seek(header.position(1));
+            IndexPage.Writer writer = new IndexPage.Writer(raf, PAGE_SIZE, format);
+            for(long entry : entries)
+                writer.add(entry);
+            header.setLastPage(writer.finish());
+            header.setRecordCount(entries.length);
+            header.setSorted(true);
+            header.setCompressed(format.isCompressed());
+            header.write(raf);
+
+            tree.bulkLoad(PageSource.open(PageSource.Kind.RAF, raf, null), header);
+
+            assertEquals(entries.length, tree.size());
+            for(long entry : entries)
+                assertEquals(IndexBuffer.index(entry), tree.get(IndexBuffer.key(entry)), "key " + IndexBuffer.key(entry));
+            for(int i = 1; i < entries.length; ++i)
+                if(IndexBuffer.key(entries[i]) - IndexBuffer.key(entries[i-1]) > 1)
+                    assertEquals(-1, tree.get(IndexBuffer.key(entries[i]) - 1));
+            if(entries.length > 0) {
+                assertEquals(-1, tree.get(IndexBuffer.key(entries[0]) - 1));
+                assertEquals(-1, tree.get(IndexBuffer.key(entries[entries.length-1]) + 1));
+                assertEquals(tree.getHeight(), tree.search(IndexBuffer.key(entries[0])));
+            }
+            return tree;
+        }
+    }
+
+    /* Opens the tree file again without giving its page size */
+    private BPlusTree reopen() throws IOException {
+        return new BPlusTree(new File(dir, "tree"), PageSource.Kind.RAF);
+    }
+
+    /* Sorted entries with keys one to three apart, in random slots of random data pages */
+    private static long[] entries(int n, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        long[] entries = new long[n];
+        int key = 0;
+        for(int i = 0; i < n; ++i) {
+            key += 1 + random.nextInt(3);
+            long index = (long) (1 + random.nextInt(5000))*PAGE_SIZE + (long) random.nextInt(PAGE_SIZE/RECORD_SIZE)*RECORD_SIZE;
+            entries[i] = IndexBuffer.pack(key, IndexBuffer.toIndex(index));
+        }
+        return entries;
+    }
+}
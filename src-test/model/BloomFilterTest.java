@@ -0,0 +1,167 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.SplittableRandom;
+import modelTesting.DataGenerator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import utils.Utils;
+
+/**
+ * Checks that a {@link BloomFilter} never misses a key it was given and stays close to its
+ * false positive rate, that it survives its file, and that an {@link RFile} ignores the
+ * sidecar of records it has since overwritten.
+ *
+ * @author nr
+ * @since 2023-03
+ */
+class BloomFilterTest {
+
+    @TempDir
+    File dir;
+
+    @Test
+    void findsEveryKeyAdded() {
+        SplittableRandom random = new SplittableRandom(1);
+        int[] keys = new int[20000];
+        BloomFilter filter = new BloomFilter(keys.length, 0.01);
+        for(int i = 0; i < keys.length; ++i)
+            filter.add(keys[i] = random.nextInt());
+
+        for(int key : keys)
+            assertTrue(filter.mightContain(key), "key " + key);
+    }
+
+    @Test
+    void staysCloseToItsFalsePositiveRate() {
+        for(double rate : new double[] {0.1, 0.01, 0.001}) {
+            IndexBuffer keys = new IndexBuffer();
+            for(int key = 0; key < 2*50000; key += 2)
+                keys.add(IndexBuffer.pack(key, 0));
+            BloomFilter filter = BloomFilter.of(keys, rate);
+            assertEquals(keys.size(), filter.getEntries());
+
+            // the odd keys were never added
+            int falsePositives = 0;
+            int tries = 200000;
+            for(int key = 1; key < 2*tries; key += 2)
+                if(filter.mightContain(key))
+                    falsePositives++;
+            assertTrue(falsePositives < 1.5*rate*tries, falsePositives + " false positives for a rate of " + rate);
+        }
+    }
+
+    @Test
+    void roundTripsThroughItsFile() throws IOException {
+        BloomFilter filter = new BloomFilter(1000, 0.01);
+        for(int key = 0; key < 1000; ++key)
+            filter.add(key*7919);
+        filter.setGeneration(0x5eed5eed5eedL);
+
+        File file = new File(dir, "bloom");
+        filter.write(file);
+        BloomFilter read = BloomFilter.read(file);
+
+        assertEquals(filter.getEntries(), read.getEntries());
+        assertEquals(filter.getHashes(), read.getHashes());
+        assertEquals(filter.getBits(), read.getBits());
+        assertEquals(filter.getGeneration(), read.getGeneration());
+        for(int key = -5000; key < 5000*7919; key += 997)
+            assertEquals(filter.mightContain(key), read.mightContain(key), "key " + key);
+    }
+
+    @Test
+    void rejectsAFileThatIsNotAFilter() throws IOException {
+        File file = new File(dir, "fence");
+        try(RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.writeInt(0x46454e43);
+            raf.writeLong(0);
+        }
+        assertThrows(IOException.class, () -> BloomFilter.read(file));
+    }
+
+    @Test
+    void rejectsBadArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new BloomFilter(-1, 0.01));
+        assertThrows(IllegalArgumentException.class, () -> new BloomFilter(10, 0));
+        assertThrows(IllegalArgumentException.class, () -> new BloomFilter(10, 1));
+    }
+
+    @Test
+    void anEmptyFilterContainsNothing() {
+        BloomFilter filter = BloomFilter.of(new IndexBuffer(), 0.01);
+        for(int key = -100; key < 100; ++key)
+            assertFalse(filter.mightContain(key));
+    }
+
+    @Test
+    void ignoresTheSidecarOfOverwrittenRecords() throws IOException {
+        new File("files/IndexFiles").mkdirs();
+        DataGenerator generator = new DataGenerator(27, 3000);
+        RFile rf = generator.getRf();
+        File bloom = rf.getBloomFile();
+        try {
+            generator.generateFile(1);
+            rf.split();
+            long generation = rf.getHeader().getGeneration();
+            assertNotNull(rf.getBloomFilter());
+            assertEquals(generation, rf.getBloomFilter().getGeneration());
+
+            // records with other keys, written over the same file: the filter no longer answers for it
+            generator.generateFile(2);
+            assertNotEquals(generation, rf.getHeader().getGeneration());
+            long shortCircuits = rf.getBloomShortCircuits();
+            long checks = rf.getBloomChecks();
+            int found = 0;
+            byte[] page = new byte[rf.getPageSize()];
+            for(long p = 1; p <= rf.getHeader().getLastPage(); ++p) {
+                rf.getPageSource().read(rf.getHeader().position(p), page);
+                for(int offset = 0; offset + rf.getRecordSize() <= page.length; offset += rf.getRecordSize()) {
+                    int key = Utils.byteArrayToInt(page, offset);
+                    if(key != 0 && rf.searchFile(key) > 0)
+                        found++;
+                }
+            }
+            assertEquals(3000, found);
+            assertEquals(shortCircuits, rf.getBloomShortCircuits());
+            assertEquals(checks, rf.getBloomChecks());
+            rf.close();
+
+            // reopened, the file leaves the stale sidecar alone until split() builds a new one
+            RFile reopened = new RFile(rf.getFilename(), "rw");
+            try {
+                assertNull(reopened.getBloomFilter());
+                reopened.split();
+            } finally {
+                reopened.close();
+            }
+            reopened = new RFile(rf.getFilename(), "rw");
+            try {
+                assertNotNull(reopened.getBloomFilter());
+                assertEquals(reopened.getHeader().getGeneration(), reopened.getBloomFilter().getGeneration());
+            } finally {
+                reopened.close();
+            }
+        } finally {
+            rf.close();
+            delete(rf);
+            bloom.delete();
+        }
+    }
+
+    private static void delete(RFile rf) {
+        rf.getFile().delete();
+        rf.getFenceFile().delete();
+        new File("files/IndexFiles/indexFile_" + rf.getFilename()).delete();
+    }
+}
@@ -0,0 +1,231 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Reads pages of in-memory files through a {@link BufferPool} and checks what it caches, what
+ * it evicts with either policy, that pinned frames stay put and that invalidated pages are
+ * read again, alone and with many threads missing and pinning pages at once.
+ *
+ * @author nr
+ * @since 2023-03
+ */
+class BufferPoolTest {
+
+    private static final int PAGE_SIZE = 64;
+
+    @Test
+    void countsHitsAndMisses() throws IOException {
+        BufferPool pool = new BufferPool(4, BufferPool.Policy.CLOCK);
+        MemoryPageSource file = MemoryPageSource.random(8, PAGE_SIZE, 1);
+        BufferedPageSource source = new BufferedPageSource(file, pool, PAGE_SIZE);
+
+        assertArrayEquals(file.page(3), read(source, 3));
+        assertArrayEquals(file.page(3), read(source, 3));
+
+        assertEquals(1, pool.getMisses());
+        assertEquals(1, pool.getHits());
+        assertEquals(1, file.reads.get());
+        assertEquals(1, source.getMisses());
+        assertEquals(1, source.getHits());
+    }
+
+    @Test
+    void lruEvictsTheLeastRecentlyUsedPage() throws IOException {
+        BufferPool pool = new BufferPool(2, BufferPool.Policy.LRU);
+        MemoryPageSource file = MemoryPageSource.random(8, PAGE_SIZE, 2);
+        BufferedPageSource source = new BufferedPageSource(file, pool, PAGE_SIZE);
+
+        read(source, 0);
+        read(source, 1);
+        read(source, 0);
+        read(source, 2);
+        assertEquals(3, file.reads.get());
+
+        // page 1 was evicted, page 0 was not
+        read(source, 0);
+        assertEquals(3, file.reads.get());
+        assertArrayEquals(file.page(1), read(source, 1));
+        assertEquals(4, file.reads.get());
+    }
+
+    @Test
+    void clockGivesReferencedPagesASecondChance() throws IOException {
+        BufferPool pool = new BufferPool(2, BufferPool.Policy.CLOCK);
+        MemoryPageSource file = MemoryPageSource.random(8, PAGE_SIZE, 3);
+        BufferedPageSource source = new BufferedPageSource(file, pool, PAGE_SIZE);
+
+        read(source, 0);
+        read(source, 1);
+        // the first sweep clears the reference bits of both pages, the second one evicts page 0
+        read(source, 2);
+        assertEquals(3, file.reads.get());
+
+        read(source, 1);
+        assertEquals(3, file.reads.get());
+        assertArrayEquals(file.page(0), read(source, 0));
+        assertEquals(4, file.reads.get());
+    }
+
+    @Test
+    void pinnedFramesAreNotEvicted() throws IOException {
+        BufferPool pool = new BufferPool(1, BufferPool.Policy.LRU);
+        MemoryPageSource file = MemoryPageSource.random(8, PAGE_SIZE, 4);
+        BufferedPageSource source = new BufferedPageSource(file, pool, PAGE_SIZE);
+
+        BufferedPageSource.Lease lease = source.lease(0, PAGE_SIZE);
+        assertEquals(ByteBuffer.wrap(file.page(0)), lease.getView());
+
+        // every frame is pinned, page 1 is read around the pool and not cached
+        assertArrayEquals(file.page(1), read(source, 1));
+        assertArrayEquals(file.page(1), read(source, 1));
+        assertEquals(3, file.reads.get());
+        read(source, 0);
+        assertEquals(3, file.reads.get());
+        assertEquals(ByteBuffer.wrap(file.page(0)), lease.getView());
+
+        lease.release();
+        lease.release();
+        read(source, 1);
+        read(source, 1);
+        assertEquals(4, file.reads.get());
+        assertArrayEquals(file.page(0), read(source, 0));
+        assertEquals(5, file.reads.get());
+    }
+
+    @Test
+    void unpinningAnUnpinnedFrameFails() throws IOException {
+        BufferPool pool = new BufferPool(2, BufferPool.Policy.CLOCK);
+        BufferedPageSource source = new BufferedPageSource(MemoryPageSource.random(2, PAGE_SIZE, 5), pool, PAGE_SIZE);
+
+        int frame = pool.pin(source, 0);
+        pool.unpin(frame);
+        assertThrows(IllegalStateException.class, () -> pool.unpin(frame));
+    }
+
+    @Test
+    void invalidateDropsThePagesOfOneFileOnly() throws IOException {
+        BufferPool pool = new BufferPool(8, BufferPool.Policy.LRU);
+        MemoryPageSource first = MemoryPageSource.random(4, PAGE_SIZE, 6);
+        MemoryPageSource second = MemoryPageSource.random(4, PAGE_SIZE, 7);
+        BufferedPageSource a = new BufferedPageSource(first, pool, PAGE_SIZE);
+        BufferedPageSource b = new BufferedPageSource(second, pool, PAGE_SIZE);
+
+        read(a, 2);
+        read(b, 2);
+        // the file is written under the pool, the cached page is stale until it is invalidated
+        first.bytes[2*PAGE_SIZE] ^= 0x7f;
+        assertEquals(first.page(2)[0] ^ 0x7f, read(a, 2)[0]);
+
+        a.invalidate();
+        assertArrayEquals(first.page(2), read(a, 2));
+        assertArrayEquals(second.page(2), read(b, 2));
+        assertEquals(2, first.reads.get());
+        assertEquals(1, second.reads.get());
+    }
+
+    @Test
+    void readsAPageOnceWhenManyThreadsMissIt() throws Exception {
+        BufferPool pool = new BufferPool(4, BufferPool.Policy.CLOCK);
+        MemoryPageSource file = MemoryPageSource.random(4, PAGE_SIZE, 8);
+        file.delayMillis = 20;
+        BufferedPageSource source = new BufferedPageSource(file, pool, PAGE_SIZE);
+
+        int threads = 16;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<byte[]>> pages = new ArrayList<>();
+            for(int t = 0; t < threads; ++t) {
+                pages.add(executor.submit(() -> {
+                    start.await();
+                    return read(source, 1);
+                }));
+            }
+            start.countDown();
+            for(Future<byte[]> page : pages)
+                assertArrayEquals(file.page(1), page.get());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, file.reads.get());
+        assertEquals(threads - 1, pool.getHits());
+    }
+
+    @Test
+    void racingReadersSeeTheirOwnPagesAndUnpinEveryFrame() throws Exception {
+        int capacity = 8;
+        BufferPool lru = new BufferPool(capacity, BufferPool.Policy.LRU);
+        BufferPool clock = new BufferPool(capacity, BufferPool.Policy.CLOCK);
+
+        for(BufferPool pool : new BufferPool[] {lru, clock}) {
+            MemoryPageSource[] files = new MemoryPageSource[3];
+            BufferedPageSource[] sources = new BufferedPageSource[files.length];
+            for(int f = 0; f < files.length; ++f) {
+                files[f] = MemoryPageSource.random(40, PAGE_SIZE, 10 + f);
+                sources[f] = new BufferedPageSource(files[f], pool, PAGE_SIZE);
+            }
+
+            int threads = 16;
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<?>> readers = new ArrayList<>();
+                for(int t = 0; t < threads; ++t) {
+                    long seed = t;
+                    readers.add(executor.submit(() -> {
+                        SplittableRandom random = new SplittableRandom(seed);
+                        for(int i = 0; i < 2000; ++i) {
+                            int f = random.nextInt(files.length);
+                            int page = random.nextInt(files[f].pages());
+                            if(random.nextInt(4) == 0) {
+                                BufferedPageSource.Lease lease = sources[f].lease((long) page*PAGE_SIZE, PAGE_SIZE);
+                                try {
+                                    assertEquals(ByteBuffer.wrap(files[f].page(page)), lease.getView());
+                                } finally {
+                                    lease.release();
+                                }
+                            } else {
+                                assertArrayEquals(files[f].page(page), read(sources[f], page));
+                            }
+                        }
+                        return null;
+                    }));
+                }
+                for(Future<?> reader : readers)
+                    reader.get();
+            } finally {
+                executor.shutdownNow();
+            }
+
+            // no pin leaked: every frame can be pinned at once
+            int[] pinned = new int[capacity];
+            for(int page = 0; page < capacity; ++page) {
+                pinned[page] = pool.pin(sources[0], page);
+                assertTrue(pinned[page] >= 0, "frame " + page + " of " + pool.getPolicy() + " is still pinned");
+            }
+            for(int frame : pinned)
+                pool.unpin(frame);
+        }
+    }
+
+    private static byte[] read(BufferedPageSource source, long page) throws IOException {
+        byte[] dst = new byte[PAGE_SIZE];
+        source.read(page*PAGE_SIZE, dst);
+        return dst;
+    }
+}
@@ -0,0 +1,194 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import utils.Utils;
+
+/**
+ * Loads records into an {@link RFile} with a {@link BulkLoader}, in random and in ascending
+ * key order and across more than one block of pages, and finds every record again through
+ * the index, the fences and the data pages written, also after the file is reopened.
+ *
+ * @author nr
+ * @since 2023-03
+ */
+class BulkLoaderTest {
+
+    private static final int DATA_BYTES = 27;
+    private static final int RECORD_SIZE = DATA_BYTES + DataClassConfiguration.KEY_SIZE;
+
+    /* The name of the file loaded by a test */
+    private String filename;
+
+    @BeforeEach
+    void createDirectories() {
+        new File("files/IndexFiles").mkdirs();
+        filename = "bulk-test-" + System.nanoTime() + ".bin";
+    }
+
+    @AfterEach
+    void deleteFiles() {
+        for(String directory : new String[] {"files", "files/IndexFiles"}) {
+            File[] files = new File(directory).listFiles((d, name) -> name.endsWith(filename));
+            for(File f : files == null ? new File[0] : files)
+                f.delete();
+        }
+    }
+
+    @Test
+    void loadsRecordsInRandomOrder() throws IOException {
+        List<Record> records = records(5000, 1);
+        Collections.shuffle(records, new Random(1));
+
+        try(RFile rf = open()) {
+            rf.bulkLoad(records.iterator());
+
+            assertEquals(records.size(), rf.getHeader().getRecordCount());
+            assertFalse(rf.getHeader().isSorted());
+            assertTrue(rf.getIndexFile().getHeader().isSorted());
+            checkPages(rf, records);
+            checkLookups(rf, records);
+        }
+    }
+
+    @Test
+    void ascendingRecordsGiveASortedFile() throws IOException {
+        List<Record> records = records(5000, 2);
+
+        try(RFile rf = open()) {
+            rf.bulkLoad(records.iterator());
+
+            assertTrue(rf.getHeader().isSorted());
+            assertTrue(rf.getIndexFile().getHeader().isSorted());
+            checkPages(rf, records);
+            checkLookups(rf, records);
+        }
+    }
+
+    @Test
+    void writesMoreThanOneBlock() throws IOException {
+        int recordsInPage = DataClassConfiguration.PAGE_SIZE/RECORD_SIZE;
+        // two blocks and part of a third, the last page half full
+        int n = 2*BulkLoader.BLOCK_BYTES/DataClassConfiguration.PAGE_SIZE*recordsInPage + 3*recordsInPage + recordsInPage/2;
+        List<Record> records = records(n, 3);
+        Collections.shuffle(records, new Random(3));
+
+        try(RFile rf = open()) {
+            rf.bulkLoad(records.iterator());
+
+            long pages = (n + recordsInPage - 1)/recordsInPage;
+            assertEquals(pages, rf.getHeader().getLastPage());
+            assertEquals(rf.getHeader().position(pages + 1), rf.getFile().length());
+            checkPages(rf, records);
+            checkLookups(rf, records.subList(records.size() - 2000, records.size()));
+        }
+    }
+
+    @Test
+    void reopenedFileFindsTheLoadedRecords() throws IOException {
+        List<Record> records = records(3000, 4);
+        Collections.shuffle(records, new Random(4));
+
+        try(RFile rf = open()) {
+            rf.bulkLoad(records.iterator());
+        }
+        try(RFile rf = new RFile(filename, "rw")) {
+            assertEquals(records.size(), rf.getHeader().getRecordCount());
+            checkLookups(rf, records);
+        }
+    }
+
+    @Test
+    void loadsNoRecords() throws IOException {
+        try(RFile rf = open()) {
+            rf.bulkLoad(new ArrayList<Record>().iterator());
+
+            assertEquals(0, rf.getHeader().getRecordCount());
+            assertEquals(0, rf.getHeader().getLastPage());
+            try(Lookup lookup = rf.get(1)) {
+                assertFalse(lookup.isFound());
+            }
+        }
+    }
+
+    @Test
+    void rejectsBadRecordsAndRecordsAfterClose() throws IOException {
+        try(RFile rf = open()) {
+            BulkLoader loader = rf.bulkLoader();
+            assertThrows(IllegalArgumentException.class, () -> loader.add(0, new byte[1]));
+            assertThrows(IllegalArgumentException.class, () -> loader.add(1, new byte[DATA_BYTES + 1]));
+            assertThrows(NullPointerException.class, () -> loader.add(1, null));
+
+            loader.add(1, data(1));
+            loader.close();
+            loader.close();
+            assertEquals(1, rf.getHeader().getRecordCount());
+            assertThrows(IllegalStateException.class, () -> loader.add(2, data(2)));
+        }
+    }
+
+    private RFile open() throws IOException {
+        return new RFile(filename, "rw", RECORD_SIZE, DataClassConfiguration.PAGE_SIZE, DataClassConfiguration.PAGE_SOURCE);
+    }
+
+    /* Checks that the records were written in the order they were added, page by page */
+    private static void checkPages(RFile rf, List<Record> records) throws IOException {
+        int recordsInPage = rf.getHeader().recordsInPage();
+        byte[] page = new byte[rf.getPageSize()];
+        for(int i = 0; i < records.size(); ++i) {
+            if(i % recordsInPage == 0)
+                rf.getPageSource().read(rf.getHeader().position(1 + i/recordsInPage), page);
+            int pos = (i % recordsInPage)*RECORD_SIZE;
+            assertEquals(records.get(i).getKey(), Utils.byteArrayToInt(page, pos), "record " + i);
+        }
+    }
+
+    /* Looks every record up through the index, with the fences and without */
+    private static void checkLookups(RFile rf, List<Record> records) throws IOException {
+        for(Record record : records) {
+            try(Lookup lookup = rf.get(record.getKey())) {
+                assertTrue(lookup.isFound(), "key " + record.getKey());
+                ByteBuffer data = lookup.getData();
+                byte[] bytes = new byte[DATA_BYTES];
+                data.get(bytes);
+                assertEquals(record.getData(), new String(bytes, StandardCharsets.US_ASCII));
+            }
+            assertEquals(1, rf.fenceSearch(record.getKey()));
+            assertTrue(rf.binarySearch2(record.getKey()) >= 1);
+        }
+        try(Lookup lookup = rf.get(0)) {
+            assertFalse(lookup.isFound());
+        }
+    }
+
+    /* Records with the keys 2, 4, 6, ... in ascending order and data strings drawn from their key and the seed */
+    private static List<Record> records(int n, long seed) {
+        List<Record> records = new ArrayList<>(n);
+        for(int i = 1; i <= n; ++i)
+            records.add(new Record(2*i, new String(data(2*i + (int) seed), StandardCharsets.US_ASCII)));
+        return records;
+    }
+
+    /* A data string of DATA_BYTES letters drawn from the value */
+    private static byte[] data(int value) {
+        byte[] data = new byte[DATA_BYTES];
+        Random random = new Random(value);
+        for(int i = 0; i < data.length; ++i)
+            data[i] = (byte) ('a' + random.nextInt(26));
+        return data;
+    }
+}
@@ -0,0 +1,136 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Sorts unsorted index files with an {@link ExternalIndexSorter} in memory, with spilled runs
+ * merged in one pass and with a budget so small the runs are merged in several passes, and
+ * reads the sorted pages back in both formats.
+ *
+ * @author nr
+ * @since 2023-03
+ */
+class ExternalIndexSorterTest {
+
+    private static final int PAGE_SIZE = DataClassConfiguration.PAGE_SIZE;
+    private static final int DATA_PAGE_SIZE = 4096;
+    private static final int RECORD_SIZE = 31;
+
+    @TempDir
+    File dir;
+
+    @Test
+    void sortsInMemoryWhenTheIndexFits() throws IOException {
+        ExternalIndexSorter sorter = check(64L << 20, IndexPage.Format.FIXED, entries(20000, 1));
+        assertEquals(0, sorter.getRuns());
+    }
+
+    @Test
+    void mergesSpilledRuns() throws IOException {
+        long[] entries = entries(20000, 2);
+        // a budget of about a tenth of the index, few enough runs for a single merge pass
+        ExternalIndexSorter sorter = check(entries.length*Long.BYTES/5, IndexPage.Format.FIXED, entries);
+        assertTrue(sorter.getRuns() > 1, "runs " + sorter.getRuns());
+    }
+
+    @Test
+    void mergesInSeveralPassesWithTheSmallestBudget() throws IOException {
+        ExternalIndexSorter sorter = check(3L*PAGE_SIZE, IndexPage.Format.FIXED, entries(5000, 3));
+        // two page cursors fit the budget, more runs than that take more than one pass
+        assertTrue(sorter.getRuns() > 2, "runs " + sorter.getRuns());
+    }
+
+    @Test
+    void writesCompressedPages() throws IOException {
+        IndexPage.Format compressed = IndexPage.Format.compressed(RECORD_SIZE, DATA_PAGE_SIZE);
+        check(64L << 20, compressed, entries(20000, 4));
+        ExternalIndexSorter sorter = check(4L*PAGE_SIZE, compressed, entries(20000, 5));
+        assertTrue(sorter.getRuns() > 2, "runs " + sorter.getRuns());
+    }
+
+    @Test
+    void sortsAnEmptyIndex() throws IOException {
+        ExternalIndexSorter sorter = check(3L*PAGE_SIZE, IndexPage.Format.FIXED, new long[0]);
+        assertEquals(0, sorter.getFences().length);
+    }
+
+    @Test
+    void rejectsABudgetSmallerThanThreePages() {
+        assertThrows(IllegalArgumentException.class, () -> new ExternalIndexSorter(3L*PAGE_SIZE - 1, dir));
+    }
+
+    /* Writes the entries as an unsorted index file, sorts it and checks the entries, the fences and the run files */
+    private ExternalIndexSorter check(long budget, IndexPage.Format format, long[] entries) throws IOException {
+        File runs = new File(dir, "runs");
+        runs.mkdir();
+        FileHeader header = new FileHeader(PAGE_SIZE, IndexBuffer.ENTRY_SIZE);
+        ExternalIndexSorter sorter = new ExternalIndexSorter(budget, runs);
+
+        try(RandomAccessFile raf = new RandomAccessFile(new File(dir, "index"), "rw")) {
+            raf.setLength(0);
+            raf.seek(header.position(1));
+            IndexPage.Writer writer = new IndexPage.Writer(raf, PAGE_SIZE, IndexPage.Format.FIXED);
+            for(long entry : entries)
+                writer.add(entry);
+            header.setLastPage(writer.finish());
+            header.setRecordCount(entries.length);
+            header.write(raf);
+
+            long pages;
+            try(PageSource in = PageSource.open(PageSource.Kind.RAF, raf, null)) {
+                pages = sorter.sort(in, raf, header, format);
+            }
+            header.setLastPage(pages);
+
+            IndexBuffer sorted = new IndexBuffer();
+            int[] fences = new int[(int) pages];
+            byte[] page = new byte[PAGE_SIZE];
+            for(long p = 1; p <= pages; ++p) {
+                raf.seek(header.position(p));
+                raf.readFully(page);
+                assertEquals(format.isCompressed(), IndexPage.isCompressed(page), "page " + p);
+                int first = sorted.size();
+                sorted.readIndexPage(page);
+                fences[(int) p - 1] = sorted.key(first);
+            }
+            assertArrayEquals(fences, sorter.getFences());
+
+            long[] got = new long[sorted.size()];
+            for(int i = 0; i < got.length; ++i) {
+                got[i] = sorted.get(i);
+                if(i > 0)
+                    assertTrue(sorted.key(i - 1) <= sorted.key(i), "entry " + i + " out of order");
+            }
+            // equal keys may come in any order, the entries are the same
+            long[] expected = entries.clone();
+            Arrays.sort(expected);
+            Arrays.sort(got);
+            assertArrayEquals(expected, got);
+        }
+
+        assertEquals(0, runs.list().length, "run files left behind");
+        return sorter;
+    }
+
+    /* Entries in random order with keys repeated about twice, in random slots of random data pages */
+    private static long[] entries(int n, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        long[] entries = new long[n];
+        for(int i = 0; i < n; ++i) {
+            long index = (long) (1 + random.nextInt(5000))*DATA_PAGE_SIZE + (long) random.nextInt(DATA_PAGE_SIZE/RECORD_SIZE)*RECORD_SIZE;
+            entries[i] = IndexBuffer.pack(1 + random.nextInt(n/2 + 1), IndexBuffer.toIndex(index));
+        }
+        return entries;
+    }
+}
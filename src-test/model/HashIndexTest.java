@@ -0,0 +1,127 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Builds a {@link HashIndex} over random keys and looks every key up again, as well as keys
+ * that are not in the index.
+ *
+ * @author nr
+ * @since 2023-03
+ */
+class HashIndexTest {
+
+    /* The page size of the indexes, other than the default one so that reopening an index reads it from the meta page */
+    private static final int PAGE_SIZE = 2*DataClassConfiguration.PAGE_SIZE;
+
+    @TempDir
+    File dir;
+
+    @Test
+    void findsEveryKeyBuilt() throws IOException {
+        Map<Integer, Integer> expected = entries(50000, 3);
+        try(HashIndex index = open(new File(dir, "hash"))) {
+            index.build(buffer(expected));
+
+            assertEquals(expected.size(), index.size());
+            assertTrue(index.getBuckets() >= expected.size()/index.getBucketEntries());
+            for(Map.Entry<Integer, Integer> e : expected.entrySet())
+                assertEquals(e.getValue(), index.get(e.getKey()), "key " + e.getKey());
+        }
+    }
+
+    @Test
+    void missesKeysNotBuilt() throws IOException {
+        Map<Integer, Integer> expected = entries(20000, 5);
+        try(HashIndex index = open(new File(dir, "hash"))) {
+            index.build(buffer(expected));
+
+            SplittableRandom random = new SplittableRandom(6);
+            for(int i = 0; i < 20000; ++i) {
+                int key = random.nextInt();
+                if(!expected.containsKey(key))
+                    assertEquals(-1, index.get(key));
+            }
+        }
+    }
+
+    @Test
+    void followsOverflowChains() throws IOException {
+        // keys that all fall into the same bucket spill over several overflow pages
+        Map<Integer, Integer> expected = new HashMap<>();
+        try(HashIndex index = open(new File(dir, "hash"))) {
+            int size = 3*index.getBucketEntries();
+            int buckets = (int) Math.ceil(size/(index.getBucketEntries()*HashIndex.LOAD_FACTOR));
+            for(int key = 0; expected.size() < size; ++key)
+                if(HashIndex.bucket(key, buckets) == 0)
+                    expected.put(key, expected.size());
+            index.build(buffer(expected));
+
+            assertEquals(buckets, index.getBuckets());
+            assertTrue(index.getOverflowPages() >= 2);
+            for(Map.Entry<Integer, Integer> e : expected.entrySet())
+                assertEquals(e.getValue(), index.get(e.getKey()), "key " + e.getKey());
+        }
+    }
+
+    @Test
+    void rebuildReplacesTheIndex() throws IOException {
+        Map<Integer, Integer> first = entries(10000, 7);
+        Map<Integer, Integer> second = entries(300, 8);
+        File file = new File(dir, "hash");
+        try(HashIndex index = open(file)) {
+            index.build(buffer(first));
+            index.build(buffer(second));
+        }
+
+        // reopened without its page size, which the meta page holds
+        try(HashIndex index = new HashIndex(file, PageSource.Kind.RAF)) {
+            assertEquals(PAGE_SIZE, index.getPageSize());
+            assertEquals(second.size(), index.size());
+            for(Map.Entry<Integer, Integer> e : second.entrySet())
+                assertEquals(e.getValue(), index.get(e.getKey()));
+            for(int key : first.keySet())
+                if(!second.containsKey(key))
+                    assertEquals(-1, index.get(key));
+        }
+    }
+
+    @Test
+    void emptyIndexFindsNothing() throws IOException {
+        try(HashIndex index = open(new File(dir, "hash"))) {
+            index.build(new IndexBuffer());
+
+            assertEquals(0, index.size());
+            assertEquals(-1, index.get(42));
+        }
+    }
+
+    private static HashIndex open(File file) throws IOException {
+        return new HashIndex(file, PAGE_SIZE, PageSource.Kind.RAF);
+    }
+
+    private static IndexBuffer buffer(Map<Integer, Integer> entries) {
+        IndexBuffer buffer = new IndexBuffer(entries.size());
+        for(Map.Entry<Integer, Integer> e : entries.entrySet())
+            buffer.add(e.getKey(), e.getValue());
+        return buffer;
+    }
+
+    /* Distinct random keys with distinct record positions */
+    private static Map<Integer, Integer> entries(int n, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        Map<Integer, Integer> entries = new HashMap<>();
+        while(entries.size() < n)
+            entries.putIfAbsent(random.nextInt(), 31*entries.size());
+        return entries;
+    }
+}
@@ -0,0 +1,135 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.SplittableRandom;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Round trips of the entries of a sorted index through the pages of {@link IndexPage}, in the
+ * fixed and the compressed (delta, zigzag and varint encoded) format.
+ *
+ * @author nr
+ * @since 2023-03
+ */
+class IndexPageTest {
+
+    private static final int PAGE_SIZE = 4096;
+    private static final int RECORD_SIZE = 31;
+
+    @TempDir
+    File dir;
+
+    /* The fences of the last pages written */
+    private int[] lastFences;
+
+    @Test
+    void compressedPagesDecodeToTheEntriesWritten() throws IOException {
+        roundTrip(IndexPage.Format.compressed(RECORD_SIZE, PAGE_SIZE), entries(20000, 1, 7));
+    }
+
+    @Test
+    void fixedPagesDecodeToTheEntriesWritten() throws IOException {
+        roundTrip(IndexPage.Format.FIXED, entries(20000, 1, 7));
+    }
+
+    @Test
+    void largeKeyGapsAndDataPagesTakeFullVarints() throws IOException {
+        // keys a billion apart and data pages jumping back and forth over the whole index range
+        long[] entries = new long[500];
+        SplittableRandom random = new SplittableRandom(11);
+        int maxPage = (int) (IndexBuffer.MAX_INDEX/PAGE_SIZE) - 1;
+        for(int i = 0; i < entries.length; ++i) {
+            int key = 1 + (int) ((long) i*(Integer.MAX_VALUE - 1)/entries.length);
+            long index = (long) random.nextInt(maxPage)*PAGE_SIZE + (long) random.nextInt(PAGE_SIZE/RECORD_SIZE)*RECORD_SIZE;
+            entries[i] = IndexBuffer.pack(key, IndexBuffer.toIndex(index));
+        }
+        roundTrip(IndexPage.Format.compressed(RECORD_SIZE, PAGE_SIZE), entries);
+    }
+
+    @Test
+    void findTellsWhereAMissingKeyLies() throws IOException {
+        long[] entries = entries(2000, 2, 5);
+        byte[][] pages = write(IndexPage.Format.compressed(RECORD_SIZE, PAGE_SIZE), entries);
+        byte[] page = pages[1];
+        IndexBuffer keys = new IndexBuffer().readIndexPage(page);
+
+        assertEquals(IndexPage.BELOW, IndexPage.find(page, keys.key(0) - 1));
+        assertEquals(IndexPage.ABOVE, IndexPage.find(page, keys.key(keys.size()-1) + 1));
+        assertEquals(IndexPage.ABSENT, IndexPage.find(page, keys.key(0) + 1));
+    }
+
+    @Test
+    void recordsOffTheirSlotsAreRejected() throws IOException {
+        try(RandomAccessFile raf = new RandomAccessFile(new File(dir, "index"), "rw")) {
+            IndexPage.Writer writer = new IndexPage.Writer(raf, PAGE_SIZE, IndexPage.Format.compressed(RECORD_SIZE, PAGE_SIZE));
+            assertThrows(IllegalArgumentException.class, () -> writer.add(IndexBuffer.pack(1, PAGE_SIZE + 1)));
+        }
+    }
+
+    private void roundTrip(IndexPage.Format format, long[] entries) throws IOException {
+        byte[][] pages = write(format, entries);
+        IndexBuffer decoded = new IndexBuffer();
+        int[] fences = new int[pages.length];
+
+        for(int p = 0; p < pages.length; ++p) {
+            assertEquals(format.isCompressed(), IndexPage.isCompressed(pages[p]));
+            int before = decoded.size();
+            decoded.readIndexPage(pages[p]);
+            assertTrue(decoded.size() > before, "page " + p + " is empty");
+            fences[p] = decoded.key(before);
+        }
+
+        assertEquals(entries.length, decoded.size());
+        for(int i = 0; i < entries.length; ++i)
+            assertEquals(entries[i], decoded.get(i), "entry " + i);
+        assertArrayEquals(fences, lastFences);
+
+        for(int p = 0; p < pages.length; ++p) {
+            IndexBuffer keys = new IndexBuffer().readIndexPage(pages[p]);
+            for(int i = 0; i < keys.size(); ++i)
+                assertEquals(keys.get(i), IndexPage.find(pages[p], keys.key(i)));
+        }
+    }
+
+    private byte[][] write(IndexPage.Format format, long[] entries) throws IOException {
+        File file = new File(dir, "index");
+        try(RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(0);
+            IndexPage.Writer writer = new IndexPage.Writer(raf, PAGE_SIZE, format);
+            for(long entry : entries)
+                writer.add(entry);
+            long pages = writer.finish();
+            lastFences = writer.getFences();
+            assertEquals(pages*PAGE_SIZE, raf.length());
+            assertFalse(pages == 0 && entries.length > 0);
+
+            byte[][] read = new byte[(int) pages][PAGE_SIZE];
+            raf.seek(0);
+            for(byte[] page : read)
+                raf.readFully(page);
+            return read;
+        }
+    }
+
+    /* Sorted entries with keys maxGap apart at most, in random slots of random data pages */
+    private static long[] entries(int n, int minGap, int maxGap) {
+        SplittableRandom random = new SplittableRandom(n);
+        long[] entries = new long[n];
+        int key = 0;
+        for(int i = 0; i < n; ++i) {
+            key += minGap + random.nextInt(maxGap - minGap + 1);
+            long index = (long) (1 + random.nextInt(5000))*PAGE_SIZE + (long) random.nextInt(PAGE_SIZE/RECORD_SIZE)*RECORD_SIZE;
+            entries[i] = IndexBuffer.pack(key, IndexBuffer.toIndex(index));
+        }
+        return entries;
+    }
+}
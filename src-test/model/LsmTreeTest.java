@@ -0,0 +1,240 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import utils.Utils;
+
+/**
+ * Inserts records into an {@link LsmTree} and checks that lookups see the memory table and
+ * the flushed {@link SortedRun runs} newest first, that compaction keeps the newest record of
+ * every key, that the runs survive the tree, and that lookups racing flushes and compactions
+ * never see a record older than one they have already seen.
+ *
+ * @author nr
+ * @since 2023-03
+ */
+class LsmTreeTest {
+
+    private static final int RECORD_SIZE = 31;
+    private static final int PAGE_SIZE = DataClassConfiguration.PAGE_SIZE;
+
+    /* The name of the data file the trees of a test are in front of */
+    private String filename;
+
+    @BeforeEach
+    void createDirectories() {
+        new File("files/IndexFiles").mkdirs();
+        filename = "lsm-test-" + System.nanoTime() + ".bin";
+    }
+
+    @AfterEach
+    void deleteRuns() {
+        for(String directory : new String[] {"files", "files/IndexFiles"}) {
+            File[] files = new File(directory).listFiles((d, name) -> name.endsWith(filename));
+            for(File f : files == null ? new File[0] : files)
+                f.delete();
+        }
+    }
+
+    @Test
+    void findsRecordsInTheMemTableAndInTheRuns() throws IOException {
+        try(LsmTree tree = open()) {
+            for(int key = 1; key <= 100; ++key)
+                tree.insert(key, data("v0 " + key));
+            assertEquals(100, tree.getMemTableSize());
+            assertEquals(0, tree.getRuns().size());
+            assertRecord(tree, 42, "v0 42");
+            assertEquals(0, tree.search(42));
+
+            tree.flush();
+            assertEquals(0, tree.getMemTableSize());
+            assertEquals(1, tree.getRuns().size());
+            assertEquals(100, tree.getRuns().get(0).size());
+            for(int key = 1; key <= 100; ++key)
+                assertRecord(tree, key, "v0 " + key);
+            // one page of the index of the run and one of its data
+            assertEquals(2, tree.search(42));
+            assertNull(tree.get(101));
+        }
+    }
+
+    @Test
+    void theNewestRecordOfAKeyWins() throws IOException {
+        try(LsmTree tree = open()) {
+            tree.insert(7, data("old"));
+            tree.insert(8, data("only"));
+            tree.flush();
+            tree.insert(7, data("newer"));
+            assertRecord(tree, 7, "newer");
+
+            tree.flush();
+            assertEquals(2, tree.getRuns().size());
+            assertTrue(tree.getRuns().get(0).getSequence() > tree.getRuns().get(1).getSequence());
+            assertRecord(tree, 7, "newer");
+            assertRecord(tree, 8, "only");
+            assertArrayEquals(record(7, "old"), tree.getRuns().get(1).get(7));
+
+            tree.insert(7, data("newest"));
+            assertRecord(tree, 7, "newest");
+        }
+    }
+
+    @Test
+    void compactionKeepsTheNewestRecordOfEveryKey() throws IOException {
+        try(LsmTree tree = open()) {
+            // three runs, the keys of each overlapping those of the one before
+            for(int run = 0; run < 3; ++run) {
+                for(int key = 1 + 50*run; key <= 100 + 50*run; ++key)
+                    tree.insert(key, data("v" + run + " " + key));
+                tree.flush();
+            }
+            assertEquals(3, tree.getRuns().size());
+
+            tree.compact();
+            assertEquals(1, tree.getRuns().size());
+            SortedRun merged = tree.getRuns().get(0);
+            assertEquals(200, merged.size());
+
+            int expected = 1;
+            for(Iterator<byte[]> records = merged.records(); records.hasNext(); ++expected) {
+                byte[] record = records.next();
+                int key = Utils.byteArrayToInt(record, 0);
+                assertEquals(expected, key);
+                assertArrayEquals(record(key, "v" + Math.min(2, (key - 1)/50) + " " + key), record);
+            }
+            assertEquals(201, expected);
+
+            // the merged runs are gone
+            String[] left = new File("files").list((d, name) -> name.startsWith("lsm_") && name.endsWith(filename));
+            assertEquals(1, left.length);
+        }
+    }
+
+    @Test
+    void reopenedTreeFindsItsRuns() throws IOException {
+        long sequence;
+        try(LsmTree tree = open()) {
+            for(int key = 1; key <= 300; ++key)
+                tree.insert(key, data("v0 " + key));
+            tree.flush();
+            tree.insert(5, data("v1 5"));
+            // closing flushes the memory table
+        }
+
+        try(LsmTree tree = open()) {
+            assertEquals(2, tree.getRuns().size());
+            assertRecord(tree, 5, "v1 5");
+            assertRecord(tree, 300, "v0 300");
+            sequence = tree.getRuns().get(0).getSequence();
+
+            tree.insert(6, data("v2 6"));
+            tree.flush();
+            assertTrue(tree.getRuns().get(0).getSequence() > sequence);
+        }
+    }
+
+    @Test
+    void rejectsBadRecords() throws IOException {
+        try(LsmTree tree = open()) {
+            assertThrows(IllegalArgumentException.class, () -> tree.insert(0, data("zero")));
+            assertThrows(IllegalArgumentException.class, () -> tree.insert(1, new byte[RECORD_SIZE]));
+            assertThrows(NullPointerException.class, () -> tree.insert(1, null));
+        }
+    }
+
+    @Test
+    void lookupsRacingRunSwapsNeverGoBack() throws Exception {
+        int keys = 200;
+        try(LsmTree tree = open()) {
+            for(int key = 1; key <= keys; ++key)
+                tree.insert(key, version(0));
+            tree.flush();
+
+            AtomicBoolean writing = new AtomicBoolean(true);
+            int readers = 4;
+            ExecutorService executor = Executors.newFixedThreadPool(readers + 1);
+            try {
+                List<Future<?>> tasks = new ArrayList<>();
+                tasks.add(executor.submit(() -> {
+                    try {
+                        SplittableRandom random = new SplittableRandom(1);
+                        // every round updates a few keys, flushes them and now and then merges the runs
+                        for(int round = 1; round <= 60; ++round) {
+                            for(int i = 0; i < 20; ++i)
+                                tree.insert(1 + random.nextInt(keys), version(round));
+                            tree.flush();
+                            if(round % 5 == 0)
+                                tree.compact();
+                        }
+                    } finally {
+                        writing.set(false);
+                    }
+                    return null;
+                }));
+                for(int r = 0; r < readers; ++r) {
+                    long seed = 10 + r;
+                    tasks.add(executor.submit(() -> {
+                        SplittableRandom random = new SplittableRandom(seed);
+                        int[] seen = new int[keys + 1];
+                        while(writing.get()) {
+                            int key = 1 + random.nextInt(keys);
+                            byte[] record = tree.get(key);
+                            assertNotNull(record, "key " + key);
+                            int version = Utils.byteArrayToInt(record, DataClassConfiguration.KEY_SIZE);
+                            assertTrue(version >= seen[key], "key " + key + " went back from version " + seen[key] + " to " + version);
+                            seen[key] = version;
+                        }
+                        return null;
+                    }));
+                }
+                for(Future<?> task : tasks)
+                    task.get();
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    private LsmTree open() throws IOException {
+        return new LsmTree(filename, RECORD_SIZE, PAGE_SIZE, PageSource.Kind.RAF);
+    }
+
+    private static void assertRecord(LsmTree tree, int key, String data) throws IOException {
+        assertArrayEquals(record(key, data), tree.get(key), "key " + key);
+    }
+
+    private static byte[] data(String data) {
+        return data.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] version(int version) {
+        return Utils.intToBytes(version);
+    }
+
+    /* The record of a key with the given data, padded with zeros */
+    private static byte[] record(int key, String data) {
+        byte[] record = new byte[RECORD_SIZE];
+        Utils.intToBytes(key, record, 0);
+        System.arraycopy(data(data), 0, record, DataClassConfiguration.KEY_SIZE, data.length());
+        return record;
+    }
+}
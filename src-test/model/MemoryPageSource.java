@@ -0,0 +1,100 @@
+package model;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import utils.Utils;
+
+/**
+ * A file held in memory for the tests, which counts the reads that reach it and can be made
+ * to read slowly or to fail.
+ *
+ * @author nr
+ * @since 2023-03
+ */
+class MemoryPageSource implements PageSource {
+
+    /* The bytes of the file */
+    final byte[] bytes;
+
+    /* The page size the pages of the file are numbered by */
+    final int pageSize;
+
+    /* The number of reads that reached the file */
+    final AtomicInteger reads = new AtomicInteger();
+
+    /* How long every read sleeps before it copies the bytes */
+    volatile long delayMillis;
+
+    /* Whether every read fails */
+    volatile boolean failing;
+
+    MemoryPageSource(byte[] bytes, int pageSize) {
+        this.bytes = bytes;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Creates a file of random bytes.
+     */
+    static MemoryPageSource random(int pages, int pageSize, long seed) {
+        byte[] bytes = new byte[pages*pageSize];
+        new SplittableRandom(seed).nextBytes(bytes);
+        return new MemoryPageSource(bytes, pageSize);
+    }
+
+    /**
+     * Creates a data file of the given number of records with the keys 1 to {@code records}
+     * in order, filling the pages described by {@code header} from page 1 on. The last page
+     * and record count of the header are set.
+     */
+    static MemoryPageSource dataFile(FileHeader header, int records) {
+        int perPage = header.recordsInPage();
+        long lastPage = (records + perPage - 1)/perPage;
+        byte[] bytes = new byte[(int) header.position(lastPage + 1)];
+        for(int i = 0; i < records; ++i)
+            Utils.intToBytes(i + 1, bytes, (int) header.position(1 + i/perPage) + (i % perPage)*header.getRecordSize());
+
+        header.setLastPage(lastPage);
+        header.setRecordCount(records);
+        return new MemoryPageSource(bytes, header.getPageSize());
+    }
+
+    @Override
+    public int read(long position, byte[] dst) throws IOException {
+        reads.incrementAndGet();
+        if(delayMillis > 0) {
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+        }
+        if(failing)
+            throw new IOException("The read of position " + position + " failed");
+
+        int n = (int) Math.max(0, Math.min(dst.length, bytes.length - position));
+        System.arraycopy(bytes, (int) position, dst, 0, n);
+        Arrays.fill(dst, n, dst.length, (byte) 0);
+        return n;
+    }
+
+    @Override
+    public long length() {
+        return bytes.length;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    int pages() {
+        return bytes.length/pageSize;
+    }
+
+    byte[] page(int page) {
+        return Arrays.copyOfRange(bytes, page*pageSize, (page + 1)*pageSize);
+    }
+}
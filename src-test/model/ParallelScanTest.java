@@ -0,0 +1,128 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Searches an in-memory data file of several chunks with a {@link ParallelScan}: an absent
+ * key reads every page once, a key found early stops the other chunks, and reads that fail
+ * fail the search, alone and with searches sharing the pool.
+ *
+ * @author nr
+ * @since 2023-03
+ */
+class ParallelScanTest {
+
+    private static final int PAGE_SIZE = 256;
+    private static final int RECORD_SIZE = 31;
+
+    /* 8 records a page, a little over four and a half chunks of pages */
+    private static final int RECORDS = 8*(4*ParallelScan.CHUNK_PAGES + 40);
+
+    /* A key that is not in the file */
+    private static final int ABSENT = RECORDS + 1000;
+
+    private ForkJoinPool pool;
+
+    @BeforeEach
+    void createPool() {
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterEach
+    void shutDownPool() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    void readsEveryPageOnceForAnAbsentKey() throws IOException {
+        FileHeader header = new FileHeader(PAGE_SIZE, RECORD_SIZE);
+        MemoryPageSource file = MemoryPageSource.dataFile(header, RECORDS);
+        ParallelScan scan = new ParallelScan(file, header, new ScalarPageScanner(), pool);
+
+        assertEquals(header.getLastPage(), scan.search(ABSENT));
+        assertEquals(header.getLastPage(), file.reads.get());
+    }
+
+    @Test
+    void stopsEveryChunkOnceTheKeyIsFound() throws IOException {
+        FileHeader header = new FileHeader(PAGE_SIZE, RECORD_SIZE);
+        MemoryPageSource file = MemoryPageSource.dataFile(header, RECORDS);
+        // slow reads, so the other chunks have read a few pages at most when the first page is checked
+        file.delayMillis = 2;
+        ParallelScan scan = new ParallelScan(file, header, new ScalarPageScanner(), pool);
+
+        int pages = scan.search(1);
+        assertTrue(pages >= 1 && pages < header.getLastPage()/2, pages + " pages read");
+        assertEquals(pages, file.reads.get());
+    }
+
+    @Test
+    void findsAKeyInAFileOfASingleChunk() throws IOException {
+        FileHeader header = new FileHeader(PAGE_SIZE, RECORD_SIZE);
+        MemoryPageSource file = MemoryPageSource.dataFile(header, 8*10);
+        ParallelScan scan = new ParallelScan(file, header, new ScalarPageScanner(), pool);
+
+        // a single task reads the pages in order
+        assertEquals(7, scan.search(8*6 + 1));
+        assertEquals(10, scan.search(ABSENT));
+    }
+
+    @Test
+    void searchesAnEmptyFileWithoutReading() throws IOException {
+        FileHeader header = new FileHeader(PAGE_SIZE, RECORD_SIZE);
+        MemoryPageSource file = MemoryPageSource.dataFile(header, 0);
+        ParallelScan scan = new ParallelScan(file, header, new ScalarPageScanner(), pool);
+
+        assertEquals(0, scan.search(1));
+        assertEquals(0, file.reads.get());
+    }
+
+    @Test
+    void aFailedReadFailsTheSearch() {
+        FileHeader header = new FileHeader(PAGE_SIZE, RECORD_SIZE);
+        MemoryPageSource file = MemoryPageSource.dataFile(header, RECORDS);
+        file.failing = true;
+        ParallelScan scan = new ParallelScan(file, header, new ScalarPageScanner(), pool);
+
+        assertThrows(IOException.class, () -> scan.search(ABSENT));
+    }
+
+    @Test
+    void concurrentSearchesShareThePool() throws Exception {
+        FileHeader header = new FileHeader(PAGE_SIZE, RECORD_SIZE);
+        MemoryPageSource file = MemoryPageSource.dataFile(header, RECORDS);
+        ParallelScan scan = new ParallelScan(file, header, new ScalarPageScanner(), pool);
+
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Integer>> searches = new ArrayList<>();
+            for(int t = 0; t < 4*threads; ++t) {
+                int key = t % 2 == 0 ? ABSENT : 1 + t*RECORDS/(4*threads);
+                searches.add(executor.submit(() -> scan.search(key)));
+            }
+            for(int t = 0; t < searches.size(); ++t) {
+                int pages = searches.get(t).get();
+                if(t % 2 == 0)
+                    assertEquals(header.getLastPage(), pages, "search " + t + " of an absent key");
+                else
+                    assertTrue(pages >= 1 && pages <= header.getLastPage(), "search " + t + " read " + pages + " pages");
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks {@link RadixSort} against {@link Arrays#sort(long[])}. The index of every entry is its
+ * position in the input, so a stable sort by key gives the same order as sorting the packed
+ * entries as longs.
+ *
+ * @author nr
+ * @since 2023-03
+ */
+class RadixSortTest {
+
+    @Test
+    void sortsRandomKeysLikeArraysSort() {
+        check(entries(2*RadixSort.THRESHOLD + 17, Integer.MAX_VALUE, 1));
+    }
+
+    @Test
+    void keepsEqualKeysInInputOrder() {
+        // a few hundred distinct keys, so every key is repeated many times
+        check(entries(RadixSort.THRESHOLD + 5, 300, 2));
+    }
+
+    @Test
+    void skipsDigitsAllKeysShare() {
+        // keys that differ in their lowest digit only, and keys that differ in their highest only
+        check(entries(RadixSort.THRESHOLD + 1, 1 << RadixSort.DIGIT_BITS, 3));
+        long[] high = entries(RadixSort.THRESHOLD + 1, 4, 4);
+        for(int i = 0; i < high.length; ++i)
+            high[i] = IndexBuffer.pack(IndexBuffer.key(high[i]) << 29, i);
+        check(high);
+    }
+
+    @Test
+    void sortsSmallInputs() {
+        check(new long[0]);
+        check(entries(1, 10, 5));
+        check(entries(1000, 100, 6));
+    }
+
+    @Test
+    void sortsOnlyTheGivenRange() {
+        long[] a = entries(RadixSort.THRESHOLD + 1000, Integer.MAX_VALUE, 7);
+        long[] expected = a.clone();
+        Arrays.sort(expected, 500, a.length - 500);
+
+        RadixSort.sort(a, 500, a.length - 500);
+        assertArrayEquals(expected, a);
+    }
+
+    @Test
+    void rejectsBadRanges() {
+        assertThrows(IllegalArgumentException.class, () -> RadixSort.sort(new long[4], 3, 1));
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> RadixSort.sort(new long[4], 0, 5));
+    }
+
+    private static void check(long[] a) {
+        long[] expected = a.clone();
+        Arrays.sort(expected);
+
+        RadixSort.sort(a, 0, a.length);
+        assertArrayEquals(expected, a);
+    }
+
+    /* Entries with keys in [0, keys), their position as index */
+    private static long[] entries(int n, int keys, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        long[] a = new long[n];
+        for(int i = 0; i < n; ++i)
+            a[i] = IndexBuffer.pack(random.nextInt(keys), i);
+        return a;
+    }
+}
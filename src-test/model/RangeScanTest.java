@@ -0,0 +1,209 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import utils.Utils;
+
+/**
+ * Scans ranges of a bulk loaded {@link RFile} with a {@link RangeScan} and compares them with
+ * the records of the file in a sorted map: random and edge ranges, with and without fences
+ * and reads ahead, scans closed early or run as streams, and scans on several threads at once.
+ *
+ * @author nr
+ * @since 2023-03
+ */
+class RangeScanTest {
+
+    private static final int DATA_BYTES = 27;
+    private static final int RECORD_SIZE = DATA_BYTES + DataClassConfiguration.KEY_SIZE;
+
+    /* The keys of the file are 3, 6, 9, ... up to 3*RECORDS */
+    private static final int RECORDS = 8000;
+
+    /* The name of the file scanned by a test */
+    private String filename;
+
+    /* The file and its records by key */
+    private RFile rf;
+    private final NavigableMap<Integer, byte[]> records = new TreeMap<>();
+
+    @BeforeEach
+    void loadFile() throws IOException {
+        new File("files/IndexFiles").mkdirs();
+        filename = "scan-test-" + System.nanoTime() + ".bin";
+
+        List<Integer> keys = new ArrayList<>();
+        for(int i = 1; i <= RECORDS; ++i)
+            keys.add(3*i);
+        Collections.shuffle(keys, new Random(1));
+
+        rf = new RFile(filename, "rw", RECORD_SIZE, DataClassConfiguration.PAGE_SIZE, DataClassConfiguration.PAGE_SOURCE);
+        try(BulkLoader loader = rf.bulkLoader()) {
+            SplittableRandom random = new SplittableRandom(2);
+            for(int key : keys) {
+                byte[] data = new byte[DATA_BYTES];
+                for(int i = 0; i < data.length; ++i)
+                    data[i] = (byte) ('a' + random.nextInt(26));
+                loader.add(key, data);
+
+                byte[] record = new byte[RECORD_SIZE];
+                Utils.intToBytes(key, record, 0);
+                System.arraycopy(data, 0, record, DataClassConfiguration.KEY_SIZE, data.length);
+                records.put(key, record);
+            }
+        }
+    }
+
+    @AfterEach
+    void deleteFiles() throws IOException {
+        rf.close();
+        for(String directory : new String[] {"files", "files/IndexFiles"}) {
+            File[] files = new File(directory).listFiles((d, name) -> name.endsWith(filename));
+            for(File f : files == null ? new File[0] : files)
+                f.delete();
+        }
+    }
+
+    @Test
+    void returnsTheRecordsOfRandomRangesInKeyOrder() throws IOException {
+        SplittableRandom random = new SplittableRandom(3);
+        for(int i = 0; i < 200; ++i) {
+            int lo = random.nextInt(-10, 3*RECORDS + 10);
+            int hi = lo + random.nextInt(0, i % 10 == 0 ? 3*RECORDS : 300);
+            try(RangeScan scan = rf.scan(lo, hi)) {
+                check(scan, lo, hi);
+            }
+        }
+    }
+
+    @Test
+    void returnsTheRecordsOfEdgeRanges() throws IOException {
+        int[][] ranges = {
+            {Integer.MIN_VALUE, Integer.MAX_VALUE}, {1, 3*RECORDS}, {3, 3}, {4, 5}, {-5, 2},
+            {3*RECORDS, 3*RECORDS + 100}, {3*RECORDS + 1, Integer.MAX_VALUE}, {100, 99}, {0, 0}
+        };
+        for(int[] range : ranges) {
+            try(RangeScan scan = rf.scan(range[0], range[1])) {
+                check(scan, range[0], range[1]);
+            }
+        }
+    }
+
+    @Test
+    void findsTheSameRecordsWithoutFencesOrReadsAhead() throws IOException {
+        RFile index = rf.getIndexFile();
+        FenceIndex fences = rf.getFenceIndex();
+        SplittableRandom random = new SplittableRandom(4);
+
+        for(int i = 0; i < 50; ++i) {
+            int lo = random.nextInt(0, 3*RECORDS);
+            int hi = lo + random.nextInt(0, 3000);
+            for(int readAhead : new int[] {0, 1, 8}) {
+                check(new RangeScan(rf, index, null, lo, hi, readAhead, Runnable::run), lo, hi);
+                check(new RangeScan(rf, index, fences, lo, hi, readAhead, RangeScan.readAheadPool()), lo, hi);
+            }
+        }
+    }
+
+    @Test
+    void readsNoIndexPagePastTheOneOfHi() throws IOException {
+        int key = 3*(RECORDS/2);
+        try(RangeScan scan = new RangeScan(rf, rf.getIndexFile(), rf.getFenceIndex(), key, key, 8, RangeScan.readAheadPool())) {
+            check(scan, key, key);
+            assertEquals(1, scan.getIndexPages());
+            assertEquals(1, scan.getDataPages());
+        }
+    }
+
+    @Test
+    void endsWhenClosedOrStreamed() throws IOException {
+        RangeScan scan = rf.scan(1, 3*RECORDS);
+        for(int i = 1; i <= 10; ++i)
+            assertEquals(3*i, scan.next().getInt(0));
+        scan.close();
+        assertFalse(scan.hasNext());
+        assertThrows(NoSuchElementException.class, scan::next);
+
+        try(Stream<ByteBuffer> stream = rf.scan(100, 2000).stream()) {
+            assertEquals(records.subMap(100, true, 2000, true).size(), stream.count());
+        }
+    }
+
+    @Test
+    void rejectsAnUnsortedIndex() throws IOException {
+        // the index file built again from the records in the order of the data file is not sorted
+        rf.close();
+        new File("files/IndexFiles/indexFile_" + filename).delete();
+        rf.getFenceFile().delete();
+        rf = new RFile(filename, "rw");
+        rf.split();
+        assertThrows(IOException.class, () -> rf.scan(1, 2));
+
+        rf.sort();
+        try(RangeScan scan = rf.scan(1, 3*RECORDS)) {
+            check(scan, 1, 3*RECORDS);
+        }
+    }
+
+    @Test
+    void scansOnSeveralThreadsAtOnce() throws Exception {
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> scans = new ArrayList<>();
+            for(int t = 0; t < threads; ++t) {
+                long seed = 10 + t;
+                scans.add(executor.submit(() -> {
+                    SplittableRandom random = new SplittableRandom(seed);
+                    for(int i = 0; i < 50; ++i) {
+                        int lo = random.nextInt(0, 3*RECORDS);
+                        try(RangeScan scan = rf.scan(lo, lo + random.nextInt(0, 2000))) {
+                            check(scan, scan.getLo(), scan.getHi());
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for(Future<?> scan : scans)
+                scan.get();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /* Reads the scan to the end and compares it with the records of the range */
+    private void check(RangeScan scan, int lo, int hi) {
+        List<byte[]> expected = lo > hi ? List.of() : new ArrayList<>(records.subMap(lo, true, hi, true).values());
+        int n = 0;
+        while(scan.hasNext()) {
+            ByteBuffer record = scan.next();
+            byte[] bytes = new byte[record.remaining()];
+            record.duplicate().get(bytes);
+            assertArrayEquals(expected.get(n), bytes, "record " + n + " of [" + lo + ", " + hi + "]");
+            n++;
+        }
+        assertEquals(expected.size(), n, "records of [" + lo + ", " + hi + "]");
+        assertEquals(expected.size(), scan.getDataPages());
+    }
+}
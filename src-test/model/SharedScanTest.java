@@ -0,0 +1,141 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntUnaryOperator;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Searches an in-memory data file with a {@link SharedScan}, one search at a time to check
+ * where every search starts and where it wraps around, and with many searches at once to
+ * check that they share the pages read and all fail together when a read fails.
+ *
+ * @author nr
+ * @since 2023-03
+ */
+class SharedScanTest {
+
+    private static final int PAGE_SIZE = 256;
+    private static final int RECORD_SIZE = 31;
+
+    /* 8 records a page, 10 pages */
+    private static final int RECORDS = 80;
+
+    /* A key that is not in the file */
+    private static final int ABSENT = RECORDS + 1000;
+
+    @Test
+    void readsThePagesUpToTheKey() throws IOException {
+        FileHeader header = new FileHeader(PAGE_SIZE, RECORD_SIZE);
+        SharedScan scan = new SharedScan(MemoryPageSource.dataFile(header, RECORDS), header, new ScalarPageScanner());
+
+        assertEquals(5, scan.search(page(5)));
+        assertEquals(5, scan.getPagesRead());
+    }
+
+    @Test
+    void wrapsAroundToThePageItStartedAt() throws IOException {
+        FileHeader header = new FileHeader(PAGE_SIZE, RECORD_SIZE);
+        SharedScan scan = new SharedScan(MemoryPageSource.dataFile(header, RECORDS), header, new ScalarPageScanner());
+
+        assertEquals(5, scan.search(page(5)));
+        // the next search starts at page 6, reads up to the last page and wraps to page 3
+        assertEquals(8, scan.search(page(3)));
+        // a key that is not there takes one whole lap, from page 4 back to page 3
+        assertEquals(10, scan.search(ABSENT));
+        // the lap ended with page 3 read, so the next search starts at page 4 again
+        assertEquals(1, scan.search(page(4)));
+        assertEquals(24, scan.getPagesRead());
+    }
+
+    @Test
+    void searchesAnEmptyFileWithoutReading() throws IOException {
+        FileHeader header = new FileHeader(PAGE_SIZE, RECORD_SIZE);
+        MemoryPageSource file = MemoryPageSource.dataFile(header, 0);
+        SharedScan scan = new SharedScan(file, header, new ScalarPageScanner());
+
+        assertEquals(0, scan.search(1));
+        assertEquals(0, file.reads.get());
+    }
+
+    @Test
+    void concurrentSearchesShareThePagesRead() throws Exception {
+        FileHeader header = new FileHeader(PAGE_SIZE, RECORD_SIZE);
+        MemoryPageSource file = MemoryPageSource.dataFile(header, RECORDS);
+        file.delayMillis = 5;
+        SharedScan scan = new SharedScan(file, header, new ScalarPageScanner());
+
+        int threads = 16;
+        List<Integer> pages = search(scan, threads, t -> t % 4 == 0 ? ABSENT : 1 + t*RECORDS/threads);
+
+        long total = 0;
+        for(int t = 0; t < threads; ++t) {
+            int seen = pages.get(t);
+            if(t % 4 == 0)
+                assertEquals(header.getLastPage(), seen, "search " + t + " of an absent key");
+            else
+                assertTrue(seen >= 1 && seen <= header.getLastPage(), "search " + t + " saw " + seen + " pages");
+            total += seen;
+        }
+        // the absent keys alone see four laps, read together they take little more than one
+        assertTrue(scan.getPagesRead() < total, scan.getPagesRead() + " pages read for " + total + " seen");
+        assertEquals(scan.getPagesRead(), file.reads.get());
+    }
+
+    @Test
+    void aFailedReadFailsEveryAttachedSearch() throws Exception {
+        FileHeader header = new FileHeader(PAGE_SIZE, RECORD_SIZE);
+        MemoryPageSource file = MemoryPageSource.dataFile(header, RECORDS);
+        file.delayMillis = 20;
+        file.failing = true;
+        SharedScan scan = new SharedScan(file, header, new ScalarPageScanner());
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> search(scan, 8, t -> ABSENT));
+        assertInstanceOf(IOException.class, e.getCause());
+
+        // the scan is left usable once the file reads again
+        file.failing = false;
+        file.delayMillis = 0;
+        assertEquals(header.getLastPage(), scan.search(ABSENT));
+    }
+
+    /* Runs the searches on threads of their own, started together, and returns the pages every one of them saw */
+    private static List<Integer> search(SharedScan scan, int threads, IntUnaryOperator key) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Integer>> searches = new ArrayList<>();
+            for(int t = 0; t < threads; ++t) {
+                int k = key.applyAsInt(t);
+                searches.add(executor.submit(() -> {
+                    start.await();
+                    return scan.search(k);
+                }));
+            }
+            start.countDown();
+
+            List<Integer> pages = new ArrayList<>();
+            for(Future<Integer> search : searches)
+                pages.add(search.get());
+            return pages;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /* The first key of a page of the file */
+    private static int page(int page) {
+        return (page - 1)*(PAGE_SIZE/RECORD_SIZE) + 1;
+    }
+}
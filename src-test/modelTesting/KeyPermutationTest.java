@@ -0,0 +1,74 @@
+package modelTesting;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.BitSet;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that a {@link KeyPermutation} is a bijection of its range for ranges of every size.
+ *
+ * @author nr
+ * @since 2023-03
+ */
+class KeyPermutationTest {
+
+    @Test
+    void permutesEveryRange() {
+        for(long range : new long[] {1, 2, 3, 4, 5, 1000, 4096, 4097, 100003, 1 << 20})
+            for(long seed = 0; seed < 3; ++seed)
+                checkBijection(range, seed);
+    }
+
+    @Test
+    void seedsDrawDifferentPermutations() {
+        KeyPermutation a = new KeyPermutation(100000, 1);
+        KeyPermutation b = new KeyPermutation(100000, 2);
+        int same = 0;
+        for(long i = 0; i < 1000; ++i)
+            if(a.permute(i) == b.permute(i))
+                same++;
+        assertTrue(same < 10, same + " positions map to the same value");
+    }
+
+    @Test
+    void doesNotKeepTheOrder() {
+        KeyPermutation permutation = new KeyPermutation(1 << 20, 7);
+        int ascending = 0;
+        for(long i = 1; i < 1000; ++i)
+            if(permutation.permute(i) > permutation.permute(i-1))
+                ascending++;
+        assertTrue(ascending > 300 && ascending < 700, ascending + " ascending pairs");
+    }
+
+    @Test
+    void coversTheLargestRange() {
+        KeyPermutation permutation = new KeyPermutation(1L << 31, 3);
+        for(long i : new long[] {0, 1, (1L << 31) - 1})
+            assertTrue(permutation.permute(i) >= 0 && permutation.permute(i) < 1L << 31);
+        assertNotEquals(permutation.permute(0), permutation.permute(1));
+    }
+
+    @Test
+    void rejectsPositionsAndRangesOutOfBounds() {
+        KeyPermutation permutation = new KeyPermutation(10, 1);
+        assertThrows(IndexOutOfBoundsException.class, () -> permutation.permute(-1));
+        assertThrows(IndexOutOfBoundsException.class, () -> permutation.permute(10));
+        assertThrows(IllegalArgumentException.class, () -> new KeyPermutation(0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new KeyPermutation((1L << 31) + 1, 1));
+    }
+
+    private static void checkBijection(long range, long seed) {
+        KeyPermutation permutation = new KeyPermutation(range, seed);
+        BitSet seen = new BitSet((int) range);
+        for(long i = 0; i < range; ++i) {
+            long v = permutation.permute(i);
+            assertTrue(v >= 0 && v < range, "value " + v + " out of range " + range);
+            assertFalse(seen.get((int) v), "value " + v + " drawn twice in range " + range);
+            seen.set((int) v);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package modelTesting;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the percentiles of a {@link LatencyHistogram} against the exact percentiles of the
+ * values recorded.
+ *
+ * @author nr
+ * @since 2023-03
+ */
+class LatencyHistogramTest {
+
+    private static final double[] PERCENTILES = {0, 1, 10, 25, 50, 75, 90, 99, 99.9, 100};
+
+    @Test
+    void smallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for(int v = 0; v < 128; ++v)
+            histogram.record(v);
+
+        for(int v = 0; v < 128; ++v)
+            assertEquals(v, histogram.percentile(100.0*(v + 1)/128));
+    }
+
+    @Test
+    void largeValuesAreWithinTheRelativeError() {
+        SplittableRandom random = new SplittableRandom(1);
+        long[] values = new long[100000];
+        for(int i = 0; i < values.length; ++i)
+            // uniform over the powers of two, so every bucket size is hit
+            values[i] = (random.nextLong() >>> 1) >>> random.nextInt(63);
+        values[0] = Long.MAX_VALUE;
+        check(values);
+    }
+
+    @Test
+    void bucketBoundariesAreWithinTheRelativeError() {
+        long[] values = new long[3*62];
+        for(int shift = 1; shift < 63; ++shift) {
+            values[3*(shift-1)] = (1L << shift) - 1;
+            values[3*(shift-1) + 1] = 1L << shift;
+            values[3*(shift-1) + 2] = (1L << shift) + 1;
+        }
+        check(values);
+    }
+
+    @Test
+    void addGivesTheSameAsRecordingInOne() {
+        SplittableRandom random = new SplittableRandom(2);
+        LatencyHistogram all = new LatencyHistogram();
+        LatencyHistogram a = new LatencyHistogram();
+        LatencyHistogram b = new LatencyHistogram();
+        for(int i = 0; i < 10000; ++i) {
+            long v = random.nextLong(1L << 40);
+            all.record(v);
+            (i%3 == 0 ? a : b).record(v);
+        }
+        a.add(b);
+
+        assertEquals(all.getCount(), a.getCount());
+        assertEquals(all.getMin(), a.getMin());
+        assertEquals(all.getMax(), a.getMax());
+        assertEquals(all.getMean(), a.getMean(), all.getMean()*1e-12);
+        for(double p : PERCENTILES)
+            assertEquals(all.percentile(p), a.percentile(p));
+    }
+
+    @Test
+    void keepsCountMinMaxAndMean() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.percentile(50));
+
+        histogram.record(1000);
+        histogram.record(10);
+        histogram.record(4000);
+        assertEquals(3, histogram.getCount());
+        assertEquals(10, histogram.getMin());
+        assertEquals(4000, histogram.getMax());
+        assertEquals(1670, histogram.getMean(), 1e-9);
+        assertEquals(10, histogram.percentile(0));
+        assertEquals(4000, histogram.percentile(100));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.percentile(100));
+    }
+
+    @Test
+    void rejectsNegativeValuesAndPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertThrows(IllegalArgumentException.class, () -> histogram.record(-1));
+        assertThrows(IllegalArgumentException.class, () -> histogram.percentile(-0.5));
+        assertThrows(IllegalArgumentException.class, () -> histogram.percentile(100.5));
+        assertThrows(IllegalArgumentException.class, () -> histogram.percentile(Double.NaN));
+    }
+
+    /* Every percentile is at least the exact one and less than 1/64 above it */
+    private static void check(long[] values) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for(long v : values)
+            histogram.record(v);
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+
+        for(double p : PERCENTILES) {
+            long rank = Math.max(1, (long) Math.ceil(p/100*sorted.length));
+            long exact = sorted[(int) rank - 1];
+            long reported = histogram.percentile(p);
+            assertTrue(reported >= exact && reported - exact <= exact/64,
+                       "percentile " + p + ": " + reported + " for " + exact);
+        }
+    }
+}
@@ -0,0 +1,346 @@
+package model;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import utils.Utils;
+
+/**
+ * The {@code BPlusTree} class is a static, bulk loaded, on-disk B+-tree over the
+ * (key, index) entries of a sorted index file. Every node is one page, so a lookup costs
+ * as many disk accesses as the height of the tree.
+ * <p>
+ * Page 0 of the tree file is a meta page holding the root page, the height, the number of
+ * entries and the page size of the tree; it is read once when the tree is opened, so a tree
+ * is read with the page size it was written with. Every other page is a node starting with a
+ * {@link #HEADER_SIZE}-byte header (the node type and the number of keys):
+ * </p>
+ * <ul>
+ *  <li>an internal node holds up to {@link #getInternalKeys()} (31 in 256-byte pages) keys
+ *      followed by one more child page number than keys; child {@code i} holds the keys in
+ *      [key(i-1), key(i)).</li>
+ *  <li>a leaf holds up to {@link #getLeafEntries()} (31 in 256-byte pages) (key, index) pairs
+ *      followed by the page number of the next leaf.</li>
+ * </ul>
+ *
+ * @author nr
+ * @since 2023-03
+ */
+public class BPlusTree implements Closeable {
+
+    /* The size of the header of a node */
+    public static final int HEADER_SIZE = Integer.BYTES;
+
+    /* Identifies a tree file in its meta page */
+    private static final int MAGIC = 0x42505452;
+
+    /* The number of bytes of the meta page used */
+    private static final int META_SIZE = 6*Integer.BYTES;
+
+    /* Node types */
+    private static final byte LEAF = 0;
+    private static final byte INTERNAL = 1;
+
+    /* The page size of the tree, the size of a node */
+    private final int pageSize;
+
+    /* The maximum number of keys of an internal node */
+    private final int internalKeys;
+
+    /* The maximum number of entries of a leaf */
+    private final int leafEntries;
+
+    /* The position of the children in an internal node */
+    private final int children;
+
+    /* The tree file */
+    private final File file;
+
+    /* The RandomAccessFile of the tree file */
+    private final RandomAccessFile raf;
+
+    /* The page source nodes are read through */
+    private final PageSource pageSource;
+
+    /* The page number of the root */
+    private int root;
+
+    /* The number of levels of the tree */
+    private int height;
+
+    /* The number of entries in the leaves */
+    private long size;
+
+    /**
+     * Opens the tree stored in the given file, or an empty tree with pages of the
+     * {@link DataClassConfiguration#PAGE_SIZE default size} if the file is empty.
+     *
+     * @param file the tree file
+     * @param pageSourceKind the kind of page source the nodes are read through
+     * @throws IOException if an I/O error occurs or the file is not a tree file
+     */
+    public BPlusTree(File file, PageSource.Kind pageSourceKind) throws IOException {
+        this(file, DataClassConfiguration.PAGE_SIZE, pageSourceKind);
+    }
+
+    /**
+     * Opens the tree stored in the given file, with the page size recorded in its meta page. An
+     * empty file is an empty tree with pages of the given size until
+     * {@link #bulkLoad(PageSource, FileHeader)} is called.
+     *
+     * @param file the tree file
+     * @param pageSize the page size of the tree if the file is empty
+     * @param pageSourceKind the kind of page source the nodes are read through
+     * @throws IOException if an I/O error occurs or the file is not a tree file
+     * @throws IllegalArgumentException if the page size is smaller than the meta page
+     */
+    public BPlusTree(File file, int pageSize, PageSource.Kind pageSourceKind) throws IOException {
+        if(file == null) throw new NullPointerException("file should not be null");
+
+        this.file = file;
+        this.raf = new RandomAccessFile(file, "rw");
+        // the meta page is read unbuffered, the frames of the tree in the pool take its page size
+        PageSource source = PageSource.open(pageSourceKind, raf, null);
+        try {
+            if(source.length() > 0)
+                pageSize = readMeta(source);
+            else if(pageSize < META_SIZE)
+                throw new IllegalArgumentException("The page size should be at least " + META_SIZE + " bytes");
+        } catch (IOException | RuntimeException e) {
+            raf.close();
+            throw e;
+        }
+
+        this.pageSize = pageSize;
+        this.internalKeys = (pageSize - HEADER_SIZE - Integer.BYTES)/(2*Integer.BYTES);
+        this.leafEntries = (pageSize - HEADER_SIZE - Integer.BYTES)/IndexBuffer.ENTRY_SIZE;
+        this.children = HEADER_SIZE + internalKeys*Integer.BYTES;
+        this.pageSource = BufferPool.getDefault() == null ? source : new BufferedPageSource(source, BufferPool.getDefault(), pageSize);
+    }
+
+    /**
+     * Builds the tree bottom-up from a sorted index file, replacing whatever the tree
+     * file held. Leaves are written first, in key order, then each level of internal
+     * nodes over the one below until a single root is left.
+     *
+     * @param sortedIndex the page source of an index file sorted by {@link RFile#sort()}
+     * @param header the header of the index file
+     * @throws IOException if an I/O error occurs
+     */
+    public void bulkLoad(PageSource sortedIndex, FileHeader header) throws IOException {
+        byte[] in = new byte[header.getPageSize()];
+        byte[] node = new byte[pageSize];
+        IndexBuffer entries = new IndexBuffer();
+        IndexBuffer level = new IndexBuffer();
+        int page = 1;
+        int count = 0;
+
+        raf.setLength(0);
+        raf.seek(pageSize);
+        size = 0;
+
+        // leaves: (first key, page) of every leaf is kept for the level above
+        for(long p = 1; p <= header.getLastPage(); ++p) {
+            sortedIndex.read(header.position(p), in);
+            entries.clear();
+            entries.readIndexPage(in);
+            for(int i = 0; i < entries.size(); ++i) {
+                int key = entries.key(i);
+                if(count == leafEntries) {
+                    writeLeaf(node, count, page + 1);
+                    page++;
+                    count = 0;
+                }
+                if(count == 0)
+                    level.add(key, page);
+                Utils.intToBytes(key, node, HEADER_SIZE + count*IndexBuffer.ENTRY_SIZE);
+                Utils.intToBytes(entries.index(i), node, HEADER_SIZE + count*IndexBuffer.ENTRY_SIZE + Integer.BYTES);
+                count++;
+                size++;
+            }
+        }
+        if(level.isEmpty())
+            level.add(0, page);
+        writeLeaf(node, count, 0);
+        height = 1;
+
+        // internal levels
+        while(level.size() > 1) {
+            IndexBuffer upper = new IndexBuffer(level.size()/(internalKeys + 1) + 1);
+            for(int first = 0; first < level.size(); first += internalKeys + 1) {
+                int fanOut = Math.min(internalKeys + 1, level.size() - first);
+                page++;
+                upper.add(level.key(first), page);
+                writeInternal(node, level, first, fanOut);
+            }
+            level = upper;
+            height++;
+        }
+
+        root = level.index(0);
+        writeMeta();
+        pageSource.invalidate();
+    }
+
+    /**
+     * Searches the tree for a key, reading one node per level.
+     *
+     * @param key the key to search for
+     * @return the position of the record in the data file, or -1 if the key is not in the tree
+     * @throws IOException if an I/O error occurs
+     */
+    public int get(int key) throws IOException {
+        return search(key, null);
+    }
+
+    /**
+     * Searches the tree for a key and returns the number of disk accesses it took,
+     * which is the height of the tree.
+     *
+     * @param key the key to search for
+     * @return the number of disk accesses
+     * @throws IOException if an I/O error occurs
+     */
+    public int search(int key) throws IOException {
+        int[] diskAccesses = new int[1];
+        search(key, diskAccesses);
+        return diskAccesses[0];
+    }
+
+    private int search(int key, int[] diskAccesses) throws IOException {
+        byte[] node = new byte[pageSize];
+        int page = root;
+
+        if(height == 0)
+            return -1;
+
+        while(true) {
+            pageSource.read((long) page*pageSize, node);
+            if(diskAccesses != null)
+                diskAccesses[0]++;
+
+            int count = Utils.byteArrayToInt(node, 0) & 0xffffff;
+            if(node[0] == LEAF)
+                return searchLeaf(node, count, key);
+
+            // the number of keys less than or equal to the key is the child to follow
+            int left = 0;
+            int right = count;
+            while(left < right) {
+                int mid = (left + right) >>> 1;
+                if(Utils.byteArrayToInt(node, HEADER_SIZE + mid*Integer.BYTES) <= key)
+                    left = mid + 1;
+                else
+                    right = mid;
+            }
+            page = Utils.byteArrayToInt(node, children + left*Integer.BYTES);
+        }
+    }
+
+    private static int searchLeaf(byte[] node, int count, int key) {
+        int left = 0;
+        int right = count - 1;
+
+        while(left <= right) {
+            int mid = (left + right) >>> 1;
+            int pos = HEADER_SIZE + mid*IndexBuffer.ENTRY_SIZE;
+            int k = Utils.byteArrayToInt(node, pos);
+            if(k == key)
+                return Utils.byteArrayToInt(node, pos + Integer.BYTES);
+            else if(k < key)
+                left = mid + 1;
+            else
+                right = mid - 1;
+        }
+
+        return -1;
+    }
+
+    private void writeLeaf(byte[] node, int count, int next) throws IOException {
+        node[0] = LEAF;
+        node[1] = (byte) (count >>> 16);
+        node[2] = (byte) (count >>> 8);
+        node[3] = (byte) count;
+        Arrays.fill(node, HEADER_SIZE + count*IndexBuffer.ENTRY_SIZE, node.length - Integer.BYTES, (byte) 0);
+        Utils.intToBytes(next, node, node.length - Integer.BYTES);
+        raf.write(node);
+    }
+
+    private void writeInternal(byte[] node, IndexBuffer level, int first, int count) throws IOException {
+        Arrays.fill(node, (byte) 0);
+        node[0] = INTERNAL;
+        node[1] = (byte) ((count - 1) >>> 16);
+        node[2] = (byte) ((count - 1) >>> 8);
+        node[3] = (byte) (count - 1);
+        for(int i = 0; i < count; ++i) {
+            if(i > 0)
+                Utils.intToBytes(level.key(first + i), node, HEADER_SIZE + (i - 1)*Integer.BYTES);
+            Utils.intToBytes(level.index(first + i), node, children + i*Integer.BYTES);
+        }
+        raf.write(node);
+    }
+
+    private void writeMeta() throws IOException {
+        byte[] meta = new byte[pageSize];
+
+        Utils.intToBytes(MAGIC, meta, 0);
+        Utils.intToBytes(root, meta, Integer.BYTES);
+        Utils.intToBytes(height, meta, 2*Integer.BYTES);
+        Utils.intToBytes((int) (size >>> 32), meta, 3*Integer.BYTES);
+        Utils.intToBytes((int) size, meta, 4*Integer.BYTES);
+        Utils.intToBytes(pageSize, meta, 5*Integer.BYTES);
+        raf.seek(0);
+        raf.write(meta);
+    }
+
+    /* Reads the meta page and returns the page size of the tree */
+    private int readMeta(PageSource source) throws IOException {
+        byte[] meta = new byte[META_SIZE];
+
+        source.read(0, meta);
+        int treePageSize = Utils.byteArrayToInt(meta, 5*Integer.BYTES);
+        if(Utils.byteArrayToInt(meta, 0) != MAGIC || treePageSize < META_SIZE)
+            throw new IOException(file + " is not a B+-tree file");
+
+        root = Utils.byteArrayToInt(meta, Integer.BYTES);
+        height = Utils.byteArrayToInt(meta, 2*Integer.BYTES);
+        size = ((long) Utils.byteArrayToInt(meta, 3*Integer.BYTES) << 32) | (Utils.byteArrayToInt(meta, 4*Integer.BYTES) & 0xffffffffL);
+        return treePageSize;
+    }
+
+    public PageSource getPageSource() {
+        return pageSource;
+    }
+
+    @Override
+    public void close() throws IOException {
+        pageSource.close();
+        raf.close();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public int getInternalKeys() {
+        return internalKeys;
+    }
+
+    public int getLeafEntries() {
+        return leafEntries;
+    }
+
+    public long size() {
+        return size;
+    }
+}
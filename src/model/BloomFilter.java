@@ -0,0 +1,204 @@
+package model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * The {@code BloomFilter} class is a Bloom filter over the keys of a data file, checked
+ * before a lookup reads any page: a key the filter does not contain is certainly not in the
+ * file, while a key it contains is in the file except with the false positive probability
+ * the filter was sized for.
+ * <p>
+ * The filter has {@code m = -n ln(p) / ln(2)^2} bits and {@code k = m/n ln(2)} hash functions
+ * for {@code n} keys and a false positive probability {@code p}. The {@code k} bits of a key
+ * are derived from two mixes of the key by double hashing. It is built by {@link RFile#split()}
+ * and persisted in a sidecar file next to the index file:
+ * </p>
+ * <blockquote>
+ * <pre>
+ *  offset  size  field
+ *       0     4  magic ("BLOM")
+ *       4     8  the number of keys
+ *      12     8  the generation of the data file
+ *      20     4  the number of hash functions
+ *      24     4  the number of 64-bit words
+ *      28   8*w  the bits
+ * </pre>
+ * </blockquote>
+ * <p>
+ * The filter is only used while the {@link FileHeader#getGeneration() generation} of the data
+ * file is the one it was built for.
+ * </p>
+ *
+ * @author nr
+ * @since 2023-03
+ */
+public class BloomFilter {
+
+    /* Identifies a Bloom filter file */
+    private static final int MAGIC = 0x424c4f4d;
+
+    /* The bits of the filter */
+    private final long[] bits;
+
+    /* The number of hash functions */
+    private final int hashes;
+
+    /* The number of keys the filter was built for */
+    private final long entries;
+
+    /* The generation of the data file the filter was built for */
+    private long generation;
+
+    /**
+     * Creates an empty filter sized for the given number of keys and false positive probability.
+     *
+     * @param entries the number of keys
+     * @param falsePositiveRate the false positive probability
+     * @throws IllegalArgumentException if the number of keys is negative or the probability is not in (0, 1)
+     */
+    public BloomFilter(long entries, double falsePositiveRate) {
+        if(entries < 0)
+            throw new IllegalArgumentException("The number of keys should not be negative");
+        if(!(falsePositiveRate > 0 && falsePositiveRate < 1))
+            throw new IllegalArgumentException("The false positive rate should be between 0 and 1");
+
+        long n = Math.max(1, entries);
+        long m = Math.max(Long.SIZE, (long) Math.ceil(-n*Math.log(falsePositiveRate)/(Math.log(2)*Math.log(2))));
+        this.bits = new long[(int) Math.min(Integer.MAX_VALUE - 8L, (m + Long.SIZE - 1)/Long.SIZE)];
+        this.hashes = (int) Math.max(1, Math.round((double) bits.length*Long.SIZE/n*Math.log(2)));
+        this.entries = entries;
+    }
+
+    private BloomFilter(long[] bits, int hashes, long entries) {
+        this.bits = bits;
+        this.hashes = hashes;
+        this.entries = entries;
+    }
+
+    /**
+     * Builds a filter over the keys of a buffer.
+     *
+     * @param keys the (key, index) entries
+     * @param falsePositiveRate the false positive probability
+     * @return the filter
+     */
+    public static BloomFilter of(IndexBuffer keys, double falsePositiveRate) {
+        BloomFilter filter = new BloomFilter(keys.size(), falsePositiveRate);
+        for(int i = 0; i < keys.size(); ++i)
+            filter.add(keys.key(i));
+        return filter;
+    }
+
+    /**
+     * Adds a key to the filter.
+     *
+     * @param key the key
+     */
+    public void add(int key) {
+        long m = (long) bits.length*Long.SIZE;
+        long h1 = mix(key) & 0xffffffffL;
+        long h2 = mix(key ^ 0x9e3779b9) & 0xffffffffL | 1;
+
+        for(int i = 0; i < hashes; ++i) {
+            long bit = (h1 + i*h2) % m;
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    /**
+     * Checks whether the key may be in the filter.
+     *
+     * @param key the key
+     * @return false if the key is certainly not in the filter
+     */
+    public boolean mightContain(int key) {
+        long m = (long) bits.length*Long.SIZE;
+        long h1 = mix(key) & 0xffffffffL;
+        long h2 = mix(key ^ 0x9e3779b9) & 0xffffffffL | 1;
+
+        for(int i = 0; i < hashes; ++i) {
+            long bit = (h1 + i*h2) % m;
+            if((bits[(int) (bit >>> 6)] & (1L << bit)) == 0)
+                return false;
+        }
+        return true;
+    }
+
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /**
+     * Reads a filter from its sidecar file.
+     *
+     * @param file the sidecar file
+     * @return the filter
+     * @throws IOException if an I/O error occurs or the file is not a Bloom filter file
+     */
+    public static BloomFilter read(File file) throws IOException {
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if(in.readInt() != MAGIC)
+                throw new IOException(file + " is not a Bloom filter file");
+
+            long entries = in.readLong();
+            long generation = in.readLong();
+            int hashes = in.readInt();
+            long[] bits = new long[in.readInt()];
+            for(int i = 0; i < bits.length; ++i)
+                bits[i] = in.readLong();
+            BloomFilter filter = new BloomFilter(bits, hashes, entries);
+            filter.generation = generation;
+            return filter;
+        }
+    }
+
+    /**
+     * Writes the filter to its sidecar file, replacing it.
+     *
+     * @param file the sidecar file
+     * @throws IOException if an I/O error occurs
+     */
+    public void write(File file) throws IOException {
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeLong(entries);
+            out.writeLong(generation);
+            out.writeInt(hashes);
+            out.writeInt(bits.length);
+            for(long word : bits)
+                out.writeLong(word);
+        }
+    }
+
+    public int getHashes() {
+        return hashes;
+    }
+
+    public long getBits() {
+        return (long) bits.length*Long.SIZE;
+    }
+
+    public long getEntries() {
+        return entries;
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    public void setGeneration(long generation) {
+        this.generation = generation;
+    }
+}
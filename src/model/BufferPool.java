@@ -0,0 +1,361 @@
+package model;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code BufferPool} class is a fixed size pool of page frames shared by all the files
+ * read through a {@link BufferedPageSource}. A frame holds one page, keyed by the file it
+ * belongs to and its page number, and is as large as the pages of that file.
+ * <p>
+ * A page is pinned while it is copied out of its frame, so that it cannot be evicted in
+ * the meantime, and unpinned right after. When a page is not in the pool, an unpinned
+ * frame is evicted with the {@link Policy#CLOCK CLOCK} or {@link Policy#LRU LRU} policy
+ * and the page is read into it. If every frame is pinned the page is read without being
+ * cached.
+ * </p>
+ * <p>
+ * There is no pool-wide lock. The frames of the cached pages are found in a concurrent table,
+ * and every frame is locked on its own while it is pinned, unpinned or given to another page,
+ * so readers of different pages do not wait for each other. Readers of a page being read into
+ * its frame wait for that frame only.
+ * </p>
+ * <p>
+ * The pool counts hits and misses; the misses are the physical page reads, as opposed to
+ * the logical "disk accesses" counted by {@link RFile}.
+ * </p>
+ *
+ * @author nr
+ * @since 2023-03
+ */
+public class BufferPool {
+
+    /**
+     * The eviction policies of the pool.
+     */
+    public enum Policy {
+        /* second chance: a frame is evicted when the clock hand finds it unreferenced */
+        CLOCK,
+        /* the least recently used frame is evicted */
+        LRU
+    }
+
+    /* The pool shared by RFile objects, created lazily */
+    private static BufferPool defaultPool = null;
+
+    /* Marks a frame that holds no page */
+    private static final long EMPTY = -1;
+
+    /* The results of tryClaim */
+    private static final int CLAIMED = 0;
+    private static final int SKIPPED = 1;
+    private static final int TAKEN = 2;
+
+    /* Generates the ids of the files using the pool */
+    private final AtomicInteger fileIds = new AtomicInteger();
+
+    /* The eviction policy */
+    private final Policy policy;
+
+    /* The frames */
+    private final Frame[] frames;
+
+    /* The frame of every cached (file, page) key */
+    private final ConcurrentHashMap<Long, Frame> table;
+
+    /* The CLOCK hand */
+    private final AtomicInteger hand = new AtomicInteger();
+
+    /* Pool statistics */
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Creates a pool with the given number of frames.
+     *
+     * @param capacity the number of frames
+     * @param policy the eviction policy
+     * @throws IllegalArgumentException if the capacity is not positive
+     */
+    public BufferPool(int capacity, Policy policy) {
+        if(capacity <= 0)
+            throw new IllegalArgumentException("The pool should have at least one frame");
+        if(policy == null) throw new NullPointerException("policy should not be null");
+
+        this.policy = policy;
+        frames = new Frame[capacity];
+        for(int i = 0; i < capacity; ++i)
+            frames[i] = new Frame(i);
+        table = new ConcurrentHashMap<>(2*capacity);
+    }
+
+    /**
+     * Returns the pool shared by RFile objects, sized by {@link DataClassConfiguration#BUFFER_POOL_FRAMES}.
+     *
+     * @return the shared pool, or null if it is disabled
+     */
+    public static synchronized BufferPool getDefault() {
+        if(defaultPool == null && DataClassConfiguration.BUFFER_POOL_FRAMES > 0)
+            defaultPool = new BufferPool(DataClassConfiguration.BUFFER_POOL_FRAMES, DataClassConfiguration.BUFFER_POOL_POLICY);
+        return defaultPool;
+    }
+
+    /**
+     * Returns a new id for a file using the pool.
+     *
+     * @return the file id
+     */
+    int register() {
+        return fileIds.getAndIncrement();
+    }
+
+    /**
+     * Pins the frame holding the given page, reading it through {@code source} if it is not
+     * in the pool. The page is {@link BufferedPageSource#getPageSize()} bytes long. The caller
+     * must {@link #unpin(int) unpin} the frame once it is done with it.
+     *
+     * @param source the page source of the file
+     * @param page the page number
+     * @return the pinned frame, or -1 if every frame is pinned
+     * @throws IOException if an I/O error occurs
+     */
+    int pin(BufferedPageSource source, long page) throws IOException {
+        long key = key(source.getFileId(), page);
+        Frame frame;
+
+        while(true) {
+            Frame cached = table.get(key);
+            if(cached != null) {
+                if(pinCached(cached, key)) {
+                    hits.increment();
+                    source.hit();
+                    return cached.index;
+                }
+                // the frame was given to another page, or its read failed, meanwhile
+                continue;
+            }
+
+            frame = claim(key, source.getPageSize());
+            if(frame != null)
+                break;
+            if(!table.containsKey(key)) {
+                misses.increment();
+                source.miss();
+                return -1;
+            }
+        }
+
+        misses.increment();
+        source.miss();
+
+        // the page is read outside the lock of the frame, other readers of it wait for loading to be cleared
+        int n = -1;
+        try {
+            n = source.getDelegate().read(page*source.getPageSize(), frame.bytes);
+        } finally {
+            synchronized(frame) {
+                if(n < 0) {
+                    if(frame.key == key) {
+                        table.remove(key, frame);
+                        frame.key = EMPTY;
+                    }
+                    frame.pins--;
+                }
+                frame.valid = Math.max(n, 0);
+                frame.loading = false;
+                frame.notifyAll();
+            }
+        }
+        return frame.index;
+    }
+
+    /**
+     * Pins a frame found in the table, once it is loaded, if it still holds the page.
+     *
+     * @return false if the frame holds another page by now
+     */
+    private boolean pinCached(Frame frame, long key) throws IOException {
+        synchronized(frame) {
+            while(frame.loading)
+                awaitLoad(frame);
+            if(frame.key != key)
+                return false;
+            frame.pins++;
+        }
+        touch(frame);
+        return true;
+    }
+
+    /**
+     * Finds an unpinned frame with the eviction policy and gives it to the page with the
+     * given key, pinned and marked as loading.
+     *
+     * @return the frame, or null if every frame is pinned or another thread is loading the page
+     */
+    private Frame claim(long key, int pageSize) {
+        if(policy == Policy.LRU) {
+            // the frame picked without locking may be pinned by the time it is locked, then look again
+            for(int attempt = 0; attempt < frames.length; ++attempt) {
+                Frame victim = null;
+                for(Frame frame : frames) {
+                    if(frame.pins > 0) continue;
+                    if(frame.key == EMPTY) {
+                        victim = frame;
+                        break;
+                    }
+                    if(victim == null || frame.lastUsed < victim.lastUsed)
+                        victim = frame;
+                }
+                if(victim == null)
+                    return null;
+
+                int claimed = tryClaim(victim, key, pageSize, false);
+                if(claimed == CLAIMED)
+                    return victim;
+                if(claimed == TAKEN)
+                    return null;
+            }
+            return null;
+        }
+
+        // CLOCK: at most two sweeps, the first one clears the reference bits
+        for(int i = 0; i < 2*frames.length; ++i) {
+            Frame frame = frames[Math.floorMod(hand.getAndIncrement(), frames.length)];
+            int claimed = tryClaim(frame, key, pageSize, true);
+            if(claimed == CLAIMED)
+                return frame;
+            if(claimed == TAKEN)
+                return null;
+        }
+        return null;
+    }
+
+    /**
+     * Gives a frame to a page if it is not pinned and, for CLOCK, not referenced since the
+     * hand last passed it.
+     *
+     * @return CLAIMED, SKIPPED if the frame cannot be evicted, or TAKEN if another thread is
+     *         loading the page into a frame of its own
+     */
+    private int tryClaim(Frame frame, long key, int pageSize, boolean clock) {
+        synchronized(frame) {
+            if(frame.pins > 0 || frame.loading)
+                return SKIPPED;
+            if(clock && frame.key != EMPTY && frame.referenced) {
+                frame.referenced = false;
+                return SKIPPED;
+            }
+            if(table.putIfAbsent(key, frame) != null)
+                return TAKEN;
+
+            if(frame.key != EMPTY)
+                table.remove(frame.key, frame);
+            if(frame.bytes == null || frame.bytes.length != pageSize)
+                frame.bytes = new byte[pageSize];
+            frame.key = key;
+            frame.pins = 1;
+            frame.loading = true;
+        }
+        touch(frame);
+        return CLAIMED;
+    }
+
+    /**
+     * Unpins a frame pinned by {@link #pin(BufferedPageSource, long)}.
+     *
+     * @param frame the frame
+     */
+    void unpin(int frame) {
+        Frame f = frames[frame];
+        synchronized(f) {
+            if(f.pins <= 0)
+                throw new IllegalStateException("The frame is not pinned");
+            f.pins--;
+        }
+    }
+
+    /**
+     * Drops every page of a file from the pool, e.g. after the file has been written.
+     *
+     * @param fileId the id of the file
+     */
+    void invalidate(int fileId) {
+        for(Frame frame : frames) {
+            synchronized(frame) {
+                if(frame.key != EMPTY && (int) (frame.key >>> 40) == fileId) {
+                    table.remove(frame.key, frame);
+                    frame.key = EMPTY;
+                    frame.referenced = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the bytes of a frame, which the caller has pinned.
+     */
+    byte[] frame(int frame) {
+        return frames[frame].bytes;
+    }
+
+    /**
+     * Returns the number of bytes of the page read from the file into a frame the caller has
+     * pinned. The pin was taken after the read, so no lock is needed.
+     */
+    int validBytes(int frame) {
+        return frames[frame].valid;
+    }
+
+    private static void touch(Frame frame) {
+        frame.referenced = true;
+        frame.lastUsed = System.nanoTime();
+    }
+
+    private static void awaitLoad(Frame frame) throws IOException {
+        try {
+            frame.wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a page", e);
+        }
+    }
+
+    private static long key(int fileId, long page) {
+        return ((long) fileId << 40) | page;
+    }
+
+    public int getCapacity() {
+        return frames.length;
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /* A frame of the pool. Its key, pins and loading flag are guarded by the frame itself;
+       pins and key are volatile so the LRU policy can look for a victim without locking. */
+    private static final class Frame {
+        private final int index;
+        private volatile long key = EMPTY;
+        private volatile int pins;
+        private boolean loading;
+        private byte[] bytes;
+        private int valid;
+        private volatile boolean referenced;
+        private volatile long lastUsed;
+
+        Frame(int index) {
+            this.index = index;
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link PageSource} that reads pages through a {@link BufferPool}, falling back to the
+ * page source it wraps on a miss. The pages are those of the file, of the page size given
+ * by its header. Reads that are not page aligned, such as the byte offsets probed by
+ * {@link RFile#binarySearch(int)}, are served from the frames of every page they overlap.
+ * <p>
+ * Writes do not go through the pool, so whoever writes the file calls {@link #invalidate()}
+ * afterwards to drop its cached pages.
+ * </p>
+ * <p>
+ * A {@link #view(long, int) view} is a copy: a frame is given to another page as soon as it is
+ * unpinned. A {@link #lease(long, int) lease} is a view of the frame itself, which keeps the
+ * frame pinned until it is released.
+ * </p>
+ *
+ * @author nr
+ * @since 2023-03
+ */
+public class BufferedPageSource implements PageSource {
+
+    /* The page source the pages are read from on a miss */
+    private final PageSource delegate;
+
+    /* The pool the pages are cached in */
+    private final BufferPool pool;
+
+    /* The id of the file in the pool */
+    private final int fileId;
+
+    /* The page size of the file */
+    private final int pageSize;
+
+    /* The number of reads asked of the page source */
+    private final LongAdder reads = new LongAdder();
+
+    /* The number of pages found in the pool */
+    private final LongAdder hits = new LongAdder();
+
+    /* The number of pages read from the file */
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Creates a page source that caches the pages of {@code delegate} in {@code pool}, in
+     * pages of the {@link DataClassConfiguration#PAGE_SIZE default size}.
+     *
+     * @param delegate the page source to read from on a miss
+     * @param pool the buffer pool
+     */
+    public BufferedPageSource(PageSource delegate, BufferPool pool) {
+        this(delegate, pool, DataClassConfiguration.PAGE_SIZE);
+    }
+
+    /**
+     * Creates a page source that caches the pages of {@code delegate} in {@code pool}.
+     *
+     * @param delegate the page source to read from on a miss
+     * @param pool the buffer pool
+     * @param pageSize the page size of the file
+     * @throws IllegalArgumentException if the page size is not positive
+     */
+    public BufferedPageSource(PageSource delegate, BufferPool pool, int pageSize) {
+        if(delegate == null) throw new NullPointerException("delegate should not be null");
+        if(pool == null) throw new NullPointerException("pool should not be null");
+        if(pageSize <= 0)
+            throw new IllegalArgumentException("The page size should be positive");
+
+        this.delegate = delegate;
+        this.pool = pool;
+        this.pageSize = pageSize;
+        this.fileId = pool.register();
+    }
+
+    @Override
+    public int read(long position, byte[] dst) throws IOException {
+        reads.increment();
+        int total = 0;
+        int done = 0;
+
+        while(done < dst.length) {
+            long pos = position + done;
+            long page = pos/pageSize;
+            int offset = (int) (pos % pageSize);
+            int n = Math.min(pageSize - offset, dst.length - done);
+
+            int frame = pool.pin(this, page);
+            if(frame < 0) {
+                // every frame is pinned, read around the pool
+                byte[] tmp = new byte[n];
+                total += delegate.read(pos, tmp);
+                System.arraycopy(tmp, 0, dst, done, n);
+            } else {
+                try {
+                    System.arraycopy(pool.frame(frame), offset, dst, done, n);
+                    total += Math.max(0, Math.min(n, pool.validBytes(frame) - offset));
+                } finally {
+                    pool.unpin(frame);
+                }
+            }
+            done += n;
+        }
+
+        return total;
+    }
+
+    /**
+     * Returns a read-only copy of the bytes, taken from their frames while they are pinned.
+     * Unlike a view of a mapped file it never sees the file change.
+     */
+    @Override
+    public ByteBuffer view(long position, int length) throws IOException {
+        byte[] dst = new byte[length];
+        read(position, dst);
+        return ByteBuffer.wrap(dst).asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns a read-only view of bytes of one page over the frame of the page itself, without
+     * copying them. The frame stays pinned, and the view valid, until the lease is released.
+     * Bytes spanning two pages, or a page read while every frame is pinned, are copied.
+     *
+     * @param position the absolute position in the file
+     * @param length the number of bytes
+     * @return the lease of the view
+     * @throws IOException if an I/O error occurs
+     */
+    Lease lease(long position, int length) throws IOException {
+        int offset = (int) (position % pageSize);
+        if(offset + length > pageSize)
+            return new Lease(pool, -1, view(position, length));
+
+        reads.increment();
+        int frame = pool.pin(this, position/pageSize);
+        if(frame < 0) {
+            // every frame is pinned, read around the pool
+            byte[] dst = new byte[length];
+            delegate.read(position, dst);
+            return new Lease(pool, -1, ByteBuffer.wrap(dst).asReadOnlyBuffer());
+        }
+        return new Lease(pool, frame, ByteBuffer.wrap(pool.frame(frame), offset, length).slice().asReadOnlyBuffer());
+    }
+
+    @Override
+    public long length() throws IOException {
+        return delegate.length();
+    }
+
+    @Override
+    public void invalidate() {
+        pool.invalidate(fileId);
+        delegate.invalidate();
+    }
+
+    @Override
+    public long getHits() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public long getLogicalReads() {
+        return reads.sum();
+    }
+
+    /**
+     * Returns the read calls the misses made on the page source this one wraps.
+     */
+    @Override
+    public long getPhysicalReads() {
+        return delegate.getPhysicalReads();
+    }
+
+    @Override
+    public long getBytesRead() {
+        return delegate.getBytesRead();
+    }
+
+    void hit() {
+        hits.increment();
+    }
+
+    void miss() {
+        misses.increment();
+    }
+
+    PageSource getDelegate() {
+        return delegate;
+    }
+
+    int getFileId() {
+        return fileId;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    @Override
+    public void close() throws IOException {
+        pool.invalidate(fileId);
+        delegate.close();
+    }
+
+    /* A view of the frame of a page, which stays pinned until the lease is released, or a
+       copy of the bytes when the frame is -1. Releasing it more than once is harmless. */
+    static final class Lease {
+        private final BufferPool pool;
+        private final int frame;
+        private final ByteBuffer view;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        Lease(BufferPool pool, int frame, ByteBuffer view) {
+            this.pool = pool;
+            this.frame = frame;
+            this.view = view;
+        }
+
+        void release() {
+            if(frame >= 0 && released.compareAndSet(false, true))
+                pool.unpin(frame);
+        }
+
+        ByteBuffer getView() {
+            return view;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import utils.Utils;
+
+/**
+ * The {@code BulkLoader} class replaces the records of an {@link RFile} in one pass: the
+ * records added are packed into data pages, which are written with positional channel writes
+ * of {@link #BLOCK_BYTES} bytes, and the (key, position) entry of every record is collected on
+ * the way. Closing the loader writes the header of the file and builds the sorted index file,
+ * its {@link FenceIndex} and the {@link BloomFilter} of the file from the entries, without
+ * reading the data file back.
+ * <p>
+ * If the records are added in ascending key order the data file is marked sorted and the
+ * entries are not sorted at all. The entries take 8 bytes per record until the loader is closed.
+ * </p>
+ *
+ * @author nr
+ * @since 2023-03
+ */
+public class BulkLoader implements Closeable {
+
+    /* The number of bytes of data pages written with a single write call */
+    public static final int BLOCK_BYTES = 1 << 20;
+
+    /* The file being loaded */
+    private final RFile file;
+
+    /* The header of the file */
+    private final FileHeader header;
+
+    /* The channel the pages are written to */
+    private final FileChannel channel;
+
+    /* The data pages not written yet */
+    private final byte[] block;
+
+    /* The (key, position) entries of the records added */
+    private final IndexBuffer entries = new IndexBuffer();
+
+    /* The number of records added */
+    private long count;
+
+    /* The number of pages written */
+    private long pages;
+
+    /* The number of full pages in the block */
+    private int pagesInBlock;
+
+    /* The slot of the next record in its page */
+    private int slot;
+
+    /* The key of the last record added */
+    private int lastKey;
+
+    /* Whether the records were added in ascending key order */
+    private boolean ascending = true;
+
+    /* Whether the loader was closed */
+    private boolean closed;
+
+    BulkLoader(RFile file) {
+        if(file == null) throw new NullPointerException("file should not be null");
+
+        this.file = file;
+        this.header = file.getHeader();
+        this.channel = file.getRaf().getChannel();
+        this.block = new byte[Math.max(1, BLOCK_BYTES/header.getPageSize())*header.getPageSize()];
+    }
+
+    /**
+     * Adds a record, its data string written as US-ASCII bytes.
+     *
+     * @param record the record
+     * @throws IOException if an I/O error occurs
+     */
+    public void add(Record record) throws IOException {
+        if(record == null) throw new NullPointerException("record should not be null");
+
+        add(record.getKey(), record.getData().getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Adds a record.
+     *
+     * @param key the key of the record, positive
+     * @param data the data of the record, zero padded to the record size
+     * @throws IOException if an I/O error occurs
+     * @throws IllegalArgumentException if the key is not positive, the data does not fit in a record
+     *         or the record would lie past {@link IndexBuffer#MAX_INDEX}, which an index entry cannot hold
+     * @throws IllegalStateException if the loader was closed
+     */
+    public void add(int key, byte[] data) throws IOException {
+        if(data == null) throw new NullPointerException("data should not be null");
+        if(closed)
+            throw new IllegalStateException("The bulk loader is closed");
+        if(key <= 0)
+            throw new IllegalArgumentException("The key should be positive");
+        if(data.length > header.getRecordSize() - DataClassConfiguration.KEY_SIZE)
+            throw new IllegalArgumentException("The data should not be longer than " + (header.getRecordSize() - DataClassConfiguration.KEY_SIZE) + " bytes");
+
+        int index = IndexBuffer.toIndex(header.position(pages + pagesInBlock + 1) + (long) slot*header.getRecordSize());
+        int pos = pagesInBlock*header.getPageSize() + slot*header.getRecordSize();
+        Utils.intToBytes(key, block, pos);
+        System.arraycopy(data, 0, block, pos + DataClassConfiguration.KEY_SIZE, data.length);
+        entries.add(key, index);
+        ascending &= key > lastKey;
+        lastKey = key;
+        count++;
+
+        if(++slot < header.recordsInPage())
+            return;
+        slot = 0;
+        if(++pagesInBlock*header.getPageSize() == block.length)
+            writeBlock();
+    }
+
+    private void writeBlock() throws IOException {
+        int length = pagesInBlock*header.getPageSize();
+        ByteBuffer bb = ByteBuffer.wrap(block, 0, length);
+        long position = header.position(pages + 1);
+
+        while(bb.hasRemaining())
+            channel.write(bb, position + bb.position());
+        Arrays.fill(block, 0, length, (byte) 0);
+        pages += pagesInBlock;
+        pagesInBlock = 0;
+    }
+
+    /**
+     * Writes the last pages and the header of the file, and builds its sorted index file.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        if(closed)
+            return;
+        closed = true;
+
+        if(slot > 0)
+            pagesInBlock++;
+        writeBlock();
+
+        header.setRecordCount(count);
+        header.setLastPage(pages);
+        header.setSorted(ascending);
+        file.getRaf().setLength(header.position(pages + 1));
+        file.writeHeader();
+        file.loadIndex(entries, ascending);
+    }
+
+    public RFile getFile() {
+        return file;
+    }
+
+    public long getRecordCount() {
+        return count;
+    }
+}
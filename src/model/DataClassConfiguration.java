@@ -4,8 +4,50 @@ package model;
  */
 public class DataClassConfiguration {
     
-    /* Defining the size of a page. */
-    public static final int PAGE_SIZE = 256;
+    /* Defining the size of a page, the default for new files and the size of a buffer pool frame, overridden with -Drfile.pageSize=<bytes> */
+    public static final int PAGE_SIZE = Integer.getInteger("rfile.pageSize", 256);
+
+    /* The page source RFile objects are read through, overridden with -Drfile.pageSource=RAF|MAPPED */
+    public static final PageSource.Kind PAGE_SOURCE = PageSource.Kind.valueOf(System.getProperty("rfile.pageSource", "MAPPED"));
+
+    /* The bytes read at once when a read follows the previous one, 0 disables it, overridden with -Drfile.extentBytes=<bytes> */
+    public static final int EXTENT_BYTES = Integer.getInteger("rfile.extentBytes", 64 << 10);
+
+    /* The number of frames of the shared buffer pool, 0 disables it, overridden with -Drfile.bufferPoolFrames=<frames> */
+    public static final int BUFFER_POOL_FRAMES = Integer.getInteger("rfile.bufferPoolFrames", 1024);
+
+    /* The eviction policy of the shared buffer pool, overridden with -Drfile.bufferPoolPolicy=CLOCK|LRU */
+    public static final BufferPool.Policy BUFFER_POOL_POLICY = BufferPool.Policy.valueOf(System.getProperty("rfile.bufferPoolPolicy", "CLOCK"));
+
+    /* Whether concurrent linear searches of a file share one circular scan, enabled with -Drfile.sharedScan=true */
+    public static final boolean SHARED_SCAN = Boolean.getBoolean("rfile.sharedScan");
+
+    /* Whether method A of the tests scans the data file on a fork-join pool, enabled with -Drfile.parallelScan=true */
+    public static final boolean PARALLEL_SCAN = Boolean.getBoolean("rfile.parallelScan");
+
+    /* Whether get, lookup and scan find the index page of a key with the fence index of the sorted index file, disabled with -Drfile.fenceIndex=false */
+    public static final boolean FENCE_INDEX = Boolean.parseBoolean(System.getProperty("rfile.fenceIndex", "true"));
+
+    /* Whether sorted index files are written in compressed pages, see IndexPage, disabled with -Drfile.compressedIndex=false */
+    public static final boolean COMPRESSED_INDEX = Boolean.parseBoolean(System.getProperty("rfile.compressedIndex", "true"));
+
+    /* The false positive rate of the Bloom filter built by split(), 0 disables it, overridden with -Drfile.bloomFpp=<rate> */
+    public static final double BLOOM_FALSE_POSITIVE_RATE = Double.parseDouble(System.getProperty("rfile.bloomFpp", "0.01"));
+
+    /* The memory budget of the index sort in bytes, overridden with -Drfile.sortMemory=<bytes> */
+    public static final long SORT_MEMORY_BUDGET = Long.getLong("rfile.sortMemory", 64L << 20);
+
+    /* The bytes of records the memory table of the insert path holds before it is flushed as a sorted run, overridden with -Drfile.memTableBytes=<bytes> */
+    public static final long MEMTABLE_BYTES = Long.getLong("rfile.memTableBytes", 1L << 20);
+
+    /* The number of sorted runs of the insert path that start a background compaction, overridden with -Drfile.compactionRuns=<runs> */
+    public static final int COMPACTION_RUNS = Integer.getInteger("rfile.compactionRuns", 4);
+
+    /* The number of index pages a range scan reads ahead, overridden with -Drfile.scanReadAhead=<pages> */
+    public static final int SCAN_READ_AHEAD = Integer.getInteger("rfile.scanReadAhead", 8);
+
+    /* The number of threads range scans read ahead on, overridden with -Drfile.scanIoThreads=<threads> */
+    public static final int SCAN_IO_THREADS = Integer.getInteger("rfile.scanIoThreads", Math.max(2, Runtime.getRuntime().availableProcessors()));
 
     /* A constant that is used to define the size of a record. */
     public int RECORD_SIZE;
@@ -0,0 +1,165 @@
+package model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link PageSource} that coalesces adjacent page reads into extents and counts the I/O
+ * done on the page source it wraps. It sits right above the {@link RafPageSource} or
+ * {@link MappedPageSource} of every file, under its {@link BufferedPageSource} if it has one.
+ * <p>
+ * A read that starts where the previous one ended, as the reads of a scan do, reads a whole
+ * extent of {@link DataClassConfiguration#EXTENT_BYTES} bytes from that position in one call,
+ * and the reads that follow are served from the extent until they leave it. Any other read is
+ * passed on as it is, so the point lookups of the searches transfer no more than they ask for.
+ * </p>
+ * <p>
+ * Three things are counted apart: the logical reads asked of the page source, the physical
+ * read calls made on the page source it wraps, and the bytes those calls transferred. For a
+ * mapped file a physical read is a copy out of the mapping. The page source is safe to read
+ * from several threads; the extent is replaced as a whole, never written in place.
+ * </p>
+ *
+ * @author nr
+ * @since 2023-03
+ */
+public class ExtentPageSource implements PageSource {
+
+    /* The page source the extents are read from */
+    private final PageSource delegate;
+
+    /* The size of an extent in bytes, 0 to pass every read on */
+    private final int extentBytes;
+
+    /* The last extent read, null if there is none */
+    private volatile Extent extent;
+
+    /* The position the last read ended at */
+    private volatile long lastEnd = -1;
+
+    /* The number of reads asked of the page source */
+    private final LongAdder logicalReads = new LongAdder();
+
+    /* The number of read calls made on the delegate */
+    private final LongAdder physicalReads = new LongAdder();
+
+    /* The number of bytes the read calls on the delegate transferred */
+    private final LongAdder bytesRead = new LongAdder();
+
+    /**
+     * Creates a page source that reads {@code delegate} in extents of the given size.
+     *
+     * @param delegate the page source to read from
+     * @param extentBytes the size of an extent in bytes, 0 to pass every read on
+     * @throws IllegalArgumentException if the extent size is negative
+     */
+    public ExtentPageSource(PageSource delegate, int extentBytes) {
+        if(delegate == null) throw new NullPointerException("delegate should not be null");
+        if(extentBytes < 0)
+            throw new IllegalArgumentException("The extent size should not be negative");
+
+        this.delegate = delegate;
+        this.extentBytes = extentBytes;
+    }
+
+    @Override
+    public int read(long position, byte[] dst) throws IOException {
+        logicalReads.increment();
+        Extent e = extent;
+        if(e != null && e.covers(position, dst.length)) {
+            lastEnd = position + dst.length;
+            System.arraycopy(e.bytes, (int) (position - e.start), dst, 0, dst.length);
+            return dst.length;
+        }
+
+        boolean sequential = position == lastEnd;
+        lastEnd = position + dst.length;
+        if(!sequential || dst.length >= extentBytes)
+            return physicalRead(position, dst);
+
+        byte[] bytes = new byte[extentBytes];
+        int n = physicalRead(position, bytes);
+        extent = new Extent(position, bytes, n);
+        System.arraycopy(bytes, 0, dst, 0, dst.length);
+        return Math.min(n, dst.length);
+    }
+
+    private int physicalRead(long position, byte[] dst) throws IOException {
+        int n = delegate.read(position, dst);
+        physicalReads.increment();
+        bytesRead.add(n);
+        return n;
+    }
+
+    /**
+     * Returns a view from the extent if it holds the bytes, and the view of the page source it
+     * wraps otherwise, which for a mapped file is a slice of the mapping.
+     */
+    @Override
+    public ByteBuffer view(long position, int length) throws IOException {
+        logicalReads.increment();
+        Extent e = extent;
+        if(e != null && e.covers(position, length))
+            return ByteBuffer.wrap(e.bytes, (int) (position - e.start), length).slice().asReadOnlyBuffer();
+
+        ByteBuffer view = delegate.view(position, length);
+        physicalReads.increment();
+        bytesRead.add(Math.max(0, Math.min(length, delegate.length() - position)));
+        return view;
+    }
+
+    @Override
+    public long length() throws IOException {
+        return delegate.length();
+    }
+
+    @Override
+    public void invalidate() {
+        extent = null;
+        lastEnd = -1;
+        delegate.invalidate();
+    }
+
+    @Override
+    public long getLogicalReads() {
+        return logicalReads.sum();
+    }
+
+    @Override
+    public long getPhysicalReads() {
+        return physicalReads.sum();
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    @Override
+    public void close() throws IOException {
+        extent = null;
+        delegate.close();
+    }
+
+    public int getExtentBytes() {
+        return extentBytes;
+    }
+
+    /* The bytes of an extent read from the file, of which the first length were in the file. */
+    private static final class Extent {
+        private final long start;
+        private final byte[] bytes;
+        private final int length;
+
+        Extent(long start, byte[] bytes, int length) {
+            this.start = start;
+            this.bytes = bytes;
+            this.length = length;
+        }
+
+        boolean covers(long position, int n) {
+            return position >= start && position + n <= start + length;
+        }
+    }
+}
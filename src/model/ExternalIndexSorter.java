@@ -0,0 +1,363 @@
+package model;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import utils.Utils;
+
+/**
+ * The {@code ExternalIndexSorter} class sorts an index file whose entries do not fit in memory.
+ * <p>
+ * The entries of the index file are read page by page into a run whose size is bounded by
+ * the memory budget, half of which is left to the scratch array of the {@link RadixSort} the
+ * run is sorted with. Every full run is sorted and spilled to a temporary file next to the
+ * index file. The runs are then merged with a heap of page cursors, one page of every run
+ * in memory at a time, and the result is written back from page 1 of the index file on by an
+ * {@link IndexPage.Writer}, in {@link IndexPage.Format#FIXED fixed} size entries, the format
+ * {@link RFile#putInts()} produces, or in compressed pages. Index pages of either format are read.
+ * If the whole index fits in a single run nothing is spilled.
+ * </p>
+ * <p>
+ * The first key of every page written is collected on the way, see {@link #getFences()}.
+ * </p>
+ *
+ * @author nr
+ * @since 2023-03
+ */
+public class ExternalIndexSorter {
+
+    /* The maximum number of bytes the sorter keeps in memory. */
+    private final long memoryBudget;
+
+    /* The directory the runs are spilled to. */
+    private final File directory;
+
+    /* The number of runs spilled by the last sort. */
+    private int runs;
+
+    /* The first key of every page written by the last sort. */
+    private int[] fences = new int[0];
+
+    /**
+     * Creates a new sorter with the given memory budget.
+     *
+     * @param memoryBudget the maximum number of bytes kept in memory
+     * @param directory the directory the runs are spilled to
+     * @throws IllegalArgumentException if the budget does not hold a page of entries and two page cursors
+     */
+    public ExternalIndexSorter(long memoryBudget, File directory) {
+        if(memoryBudget < 3L*DataClassConfiguration.PAGE_SIZE)
+            throw new IllegalArgumentException("The memory budget should hold at least three pages");
+
+        this.memoryBudget = memoryBudget;
+        this.directory = directory;
+    }
+
+    /**
+     * Sorts the index file read through {@code in} by key and writes it back through {@code out}.
+     * The pages described by {@code header} are read and the sorted entries are written from
+     * page 1 on; the header itself is left to the caller to update.
+     *
+     * @param in the page source of the index file
+     * @param out the index file to write the sorted entries to
+     * @param header the header of the index file
+     * @return the number of pages written
+     * @throws IOException if an I/O error occurs
+     */
+    public long sort(PageSource in, RandomAccessFile out, FileHeader header) throws IOException {
+        return sort(in, out, header, IndexPage.Format.FIXED);
+    }
+
+    /**
+     * Sorts the index file read through {@code in} by key and writes it back through {@code out}
+     * in the given page format. The pages described by {@code header} are read and the sorted
+     * entries are written from page 1 on; the header itself is left to the caller to update.
+     *
+     * @param in the page source of the index file
+     * @param out the index file to write the sorted entries to
+     * @param header the header of the index file
+     * @param format the format of the pages written
+     * @return the number of pages written
+     * @throws IOException if an I/O error occurs
+     */
+    public long sort(PageSource in, RandomAccessFile out, FileHeader header, IndexPage.Format format) throws IOException {
+        if(format == null) throw new NullPointerException("format should not be null");
+
+        int entriesInPage = header.isCompressed() ? IndexPage.maxEntries(header.getPageSize()) : header.getPageSize()/IndexBuffer.ENTRY_SIZE;
+        // the run never needs more room than the index has entries, plus a page, and its sort
+        // needs as much scratch space as the run
+        long entries = header.getRecordCount() + entriesInPage;
+        int capacity = (int) Math.min(Integer.MAX_VALUE - 8L, Math.max(entriesInPage, Math.min(entries, memoryBudget/(2*Long.BYTES))));
+        IndexBuffer run = new IndexBuffer(capacity);
+        byte[] page = new byte[header.getPageSize()];
+        List<File> files = new ArrayList<>();
+
+        runs = 0;
+        fences = new int[0];
+        try {
+            for(long p = 1; p <= header.getLastPage(); ++p) {
+                in.read(header.position(p), page);
+                if(run.capacity() - run.size() < entriesInPage)
+                    files.add(spill(run));
+                run.readIndexPage(page);
+            }
+
+            if(files.isEmpty()) {
+                run.sort();
+                return write(new ArrayCursor(run), out, header, format);
+            }
+
+            files.add(spill(run));
+            run = null;
+            return merge(files, out, header, format);
+        } finally {
+            for(File f : files)
+                f.delete();
+        }
+    }
+
+    /**
+     * Merges the runs, in more than one pass if there are more runs than page cursors
+     * fit in the memory budget, and writes the last pass to the index file.
+     *
+     * @param files the run files
+     * @param out the index file
+     * @param header the header of the index file
+     * @param format the format of the pages written
+     * @return the number of pages written
+     * @throws IOException if an I/O error occurs
+     */
+    private long merge(List<File> files, RandomAccessFile out, FileHeader header, IndexPage.Format format) throws IOException {
+        int fanIn = (int) Math.min(Integer.MAX_VALUE, Math.max(2, memoryBudget/DataClassConfiguration.PAGE_SIZE - 1));
+
+        while(files.size() > fanIn) {
+            List<File> merged = new ArrayList<>();
+            for(int i = 0; i < files.size(); i += fanIn) {
+                List<File> group = files.subList(i, Math.min(i + fanIn, files.size()));
+                File f = File.createTempFile("run", ".tmp", directory);
+                merged.add(f);
+                try(RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+                    writeRun(mergeCursor(group), raf);
+                } finally {
+                    for(File g : group)
+                        g.delete();
+                }
+            }
+            files.clear();
+            files.addAll(merged);
+        }
+
+        MergeCursor cursor = mergeCursor(files);
+        try {
+            return write(cursor, out, header, format);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Sorts a run and writes it to a new temporary file.
+     *
+     * @param run the entries of the run, cleared once they are spilled
+     * @return the run file
+     * @throws IOException if an I/O error occurs
+     */
+    private File spill(IndexBuffer run) throws IOException {
+        run.sort();
+
+        File f = File.createTempFile("run", ".tmp", directory);
+        try(RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+            writeRun(new ArrayCursor(run), raf);
+        }
+        run.clear();
+        runs++;
+        return f;
+    }
+
+    /**
+     * Writes the entries of a cursor densely, without padding, to a run file.
+     *
+     * @param cursor the entries
+     * @param raf the run file
+     * @throws IOException if an I/O error occurs
+     */
+    private void writeRun(Cursor cursor, RandomAccessFile raf) throws IOException {
+        byte[] page = new byte[DataClassConfiguration.PAGE_SIZE];
+        int index = 0;
+
+        try {
+            while(cursor.hasNext()) {
+                putEntry(cursor.next(), page, index);
+                index += IndexBuffer.ENTRY_SIZE;
+                if(index == page.length) {
+                    raf.write(page);
+                    index = 0;
+                }
+            }
+        } finally {
+            if(cursor instanceof MergeCursor)
+                ((MergeCursor) cursor).close();
+        }
+
+        raf.write(page, 0, index);
+    }
+
+    /**
+     * Writes the entries of a cursor in index file pages of the given format, from page 1 on,
+     * and keeps the first key of every page as the fences.
+     *
+     * @param cursor the entries
+     * @param out the index file
+     * @param header the header of the index file
+     * @param format the format of the pages
+     * @return the number of pages written
+     * @throws IOException if an I/O error occurs
+     */
+    private long write(Cursor cursor, RandomAccessFile out, FileHeader header, IndexPage.Format format) throws IOException {
+        IndexPage.Writer writer = new IndexPage.Writer(out, header.getPageSize(), format);
+
+        out.seek(header.position(1));
+        while(cursor.hasNext())
+            writer.add(cursor.next());
+
+        long pages = writer.finish();
+        fences = writer.getFences();
+        return pages;
+    }
+
+    private MergeCursor mergeCursor(List<File> files) throws IOException {
+        MergeCursor cursor = new MergeCursor();
+        try {
+            for(File f : files)
+                cursor.add(new RunCursor(new RandomAccessFile(f, "r")));
+        } catch (IOException e) {
+            cursor.close();
+            throw e;
+        }
+        return cursor;
+    }
+
+    private static void putEntry(long entry, byte[] page, int pos) {
+        Utils.intToBytes(IndexBuffer.key(entry), page, pos);
+        Utils.intToBytes(IndexBuffer.index(entry), page, pos + Integer.BYTES);
+    }
+
+    /**
+     * Returns the number of runs spilled to disk by the last sort, 0 if it was sorted in memory.
+     *
+     * @return the number of runs
+     */
+    public int getRuns() {
+        return runs;
+    }
+
+    /**
+     * Returns the first key of every page written by the last sort, in page order.
+     *
+     * @return the fences of the sorted index file
+     */
+    public int[] getFences() {
+        return Arrays.copyOf(fences, fences.length);
+    }
+
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /* A sorted sequence of packed (key, index) entries. */
+    private interface Cursor {
+        boolean hasNext() throws IOException;
+        long next() throws IOException;
+    }
+
+    /* A cursor over a sorted buffer. */
+    private static final class ArrayCursor implements Cursor {
+        private final IndexBuffer entries;
+        private int i;
+
+        ArrayCursor(IndexBuffer entries) {
+            this.entries = entries;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return i < entries.size();
+        }
+
+        @Override
+        public long next() {
+            return entries.get(i++);
+        }
+    }
+
+    /* A cursor over a run file, holding one page of it in memory. */
+    private static final class RunCursor implements Cursor {
+        private final RandomAccessFile raf;
+        private final byte[] page = new byte[DataClassConfiguration.PAGE_SIZE];
+        private int limit;
+        private int pos;
+        private long head;
+
+        RunCursor(RandomAccessFile raf) {
+            this.raf = raf;
+        }
+
+        @Override
+        public boolean hasNext() throws IOException {
+            if(pos < limit) return true;
+
+            limit = 0;
+            pos = 0;
+            int n;
+            while(limit < page.length && (n = raf.read(page, limit, page.length - limit)) > 0)
+                limit += n;
+            return limit >= IndexBuffer.ENTRY_SIZE;
+        }
+
+        @Override
+        public long next() {
+            head = IndexBuffer.pack(Utils.byteArrayToInt(page, pos), Utils.byteArrayToInt(page, pos + Integer.BYTES));
+            pos += IndexBuffer.ENTRY_SIZE;
+            return head;
+        }
+    }
+
+    /* A k-way merge of run cursors, ordered by a heap on their current entry. */
+    private static final class MergeCursor implements Cursor {
+        private final PriorityQueue<RunCursor> heap = new PriorityQueue<>((c1, c2) -> Long.compare(c1.head, c2.head));
+        private final List<RunCursor> cursors = new ArrayList<>();
+
+        void add(RunCursor cursor) throws IOException {
+            cursors.add(cursor);
+            if(cursor.hasNext()) {
+                cursor.next();
+                heap.add(cursor);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !heap.isEmpty();
+        }
+
+        @Override
+        public long next() throws IOException {
+            RunCursor cursor = heap.poll();
+            long entry = cursor.head;
+            if(cursor.hasNext()) {
+                cursor.next();
+                heap.add(cursor);
+            }
+            return entry;
+        }
+
+        void close() throws IOException {
+            for(RunCursor cursor : cursors)
+                cursor.raf.close();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * The {@code FenceIndex} class is a sparse, in-memory index over the pages of a sorted
+ * index file: it holds the first key of every page, so the page of a key is found with a
+ * binary search in memory and a lookup reads exactly one index page.
+ * <p>
+ * The fences are collected by {@link ExternalIndexSorter} while it writes the sorted pages
+ * and are persisted in a small sidecar file:
+ * </p>
+ * <blockquote>
+ * <pre>
+ *  offset  size  field
+ *       0     4  magic ("FNCE")
+ *       4     8  the number of entries of the index file
+ *      12     4  the number of fences
+ *      16   4*n  the first key of pages 1..n
+ * </pre>
+ * </blockquote>
+ *
+ * @author nr
+ * @since 2023-03
+ */
+public class FenceIndex {
+
+    /* Identifies a fence file */
+    private static final int MAGIC = 0x464e4345;
+
+    /* The first key of every page, fences[i] is the first key of page i + 1 */
+    private final int[] fences;
+
+    /* The number of entries of the index file the fences were built for */
+    private final long entries;
+
+    /**
+     * Creates a fence index.
+     *
+     * @param fences the first key of every page of the index file, in page order
+     * @param entries the number of entries of the index file
+     */
+    public FenceIndex(int[] fences, long entries) {
+        if(fences == null) throw new NullPointerException("fences should not be null");
+
+        this.fences = fences;
+        this.entries = entries;
+    }
+
+    /**
+     * Reads a fence index from its sidecar file.
+     *
+     * @param file the sidecar file
+     * @return the fence index
+     * @throws IOException if an I/O error occurs or the file is not a fence file
+     */
+    public static FenceIndex read(File file) throws IOException {
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if(in.readInt() != MAGIC)
+                throw new IOException(file + " is not a fence file");
+
+            long entries = in.readLong();
+            int[] fences = new int[in.readInt()];
+            for(int i = 0; i < fences.length; ++i)
+                fences[i] = in.readInt();
+            return new FenceIndex(fences, entries);
+        }
+    }
+
+    /**
+     * Writes the fence index to its sidecar file, replacing it.
+     *
+     * @param file the sidecar file
+     * @throws IOException if an I/O error occurs
+     */
+    public void write(File file) throws IOException {
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeLong(entries);
+            out.writeInt(fences.length);
+            for(int fence : fences)
+                out.writeInt(fence);
+        }
+    }
+
+    /**
+     * Returns the page of the index file that holds the key, if any: the last page whose
+     * first key is not greater than the key.
+     *
+     * @param key the key to search for
+     * @return the page number, or 0 if the key is smaller than every key of the index
+     */
+    public long page(int key) {
+        int left = 0;
+        int right = fences.length - 1;
+
+        while(left <= right) {
+            int mid = (left+right) >>> 1;
+            if(fences[mid] <= key)
+                left = mid + 1;
+            else
+                right = mid - 1;
+        }
+
+        return left;
+    }
+
+    /**
+     * Checks whether the fences describe the given index file, i.e. it is sorted and has not
+     * been rewritten since they were built.
+     *
+     * @param header the header of the index file
+     * @return true if the fences can be used to search the index file
+     */
+    public boolean matches(FileHeader header) {
+        return header.isSorted() && header.getRecordCount() == entries && header.getLastPage() == fences.length;
+    }
+
+    public int size() {
+        return fences.length;
+    }
+
+    public long getEntries() {
+        return entries;
+    }
+}
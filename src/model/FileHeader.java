@@ -0,0 +1,232 @@
+package model;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.ThreadLocalRandom;
+import utils.Utils;
+
+/**
+ * The {@code FileHeader} class describes the layout of a data or index file. It is stored
+ * at the start of page 0 of the file, so an {@link RFile} can be opened from the file alone.
+ * The records (or index entries) start at page 1.
+ * <blockquote>
+ * <pre>
+ *  offset  size  field
+ *       0     4  magic ("RFIL")
+ *       4     4  version
+ *       8     4  page size
+ *      12     4  record size (the entry size for index files)
+ *      16     8  record count
+ *      24     4  flags (bit 0: sorted, bit 1: compressed index pages)
+ *      28     8  last used page
+ *      36     8  generation
+ * </pre>
+ * </blockquote>
+ * Readers stop at the last used page, so trailing empty pages are never read. The generation
+ * is a random id drawn anew by every {@link RFile#writeHeader()}, so the sidecar files built for
+ * the records of the file can tell whether they are still up to date, even after the file was
+ * deleted and written again. Headers written before it existed read generation 0 from the zero
+ * padding of page 0, which is never drawn.
+ *
+ * @author nr
+ * @since 2023-03
+ */
+public class FileHeader {
+
+    /* Identifies an RFile in its header */
+    public static final int MAGIC = 0x5246494c;
+
+    /* The version of the header layout */
+    public static final int VERSION = 1;
+
+    /* The number of bytes of page 0 used by the header */
+    public static final int SIZE = 44;
+
+    /* The smallest page size a file can have */
+    public static final int MIN_PAGE_SIZE = 64;
+
+    /* The sorted flag */
+    private static final int SORTED = 1;
+
+    /* The flag of an index file written in compressed pages, see IndexPage */
+    private static final int COMPRESSED = 2;
+
+    /* The size of a page of the file */
+    private final int pageSize;
+
+    /* The size of a record of the file */
+    private final int recordSize;
+
+    /* The number of records in the file */
+    private long recordCount;
+
+    /* Whether the records are sorted by key */
+    private boolean sorted;
+
+    /* Whether the pages of an index file are compressed */
+    private boolean compressed;
+
+    /* The number of the last page holding records, 0 if there is none */
+    private long lastPage;
+
+    /* The random id of the records last written, never 0 */
+    private long generation;
+
+    /**
+     * Creates the header of an empty file.
+     *
+     * @param pageSize the size of a page
+     * @param recordSize the size of a record
+     * @throws IllegalArgumentException if the page size is smaller than {@link #MIN_PAGE_SIZE} or not a
+     *         multiple of an index entry, or if a record does not fit in a page
+     */
+    public FileHeader(int pageSize, int recordSize) {
+        if(pageSize < MIN_PAGE_SIZE || pageSize % IndexBuffer.ENTRY_SIZE != 0)
+            throw new IllegalArgumentException("The page size should be a multiple of " + IndexBuffer.ENTRY_SIZE
+                                               + " of at least " + MIN_PAGE_SIZE + " bytes");
+        if(recordSize < DataClassConfiguration.KEY_SIZE || recordSize > pageSize)
+            throw new IllegalArgumentException("The record size should fit a key and fit in a page");
+
+        this.pageSize = pageSize;
+        this.recordSize = recordSize;
+        newGeneration();
+    }
+
+    /**
+     * Reads the header of a file.
+     *
+     * @param source the page source of the file
+     * @return the header of the file
+     * @throws IOException if an I/O error occurs or the file has no valid header
+     */
+    public static FileHeader read(PageSource source) throws IOException {
+        byte[] bytes = new byte[SIZE];
+
+        if(source.read(0, bytes) < SIZE || Utils.byteArrayToInt(bytes, 0) != MAGIC)
+            throw new IOException("The file has no RFile header");
+        if(Utils.byteArrayToInt(bytes, 4) != VERSION)
+            throw new IOException("Unsupported RFile header version " + Utils.byteArrayToInt(bytes, 4));
+
+        FileHeader header;
+        try {
+            header = new FileHeader(Utils.byteArrayToInt(bytes, 8), Utils.byteArrayToInt(bytes, 12));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Corrupt RFile header", e);
+        }
+        header.recordCount = readLong(bytes, 16);
+        header.sorted = (Utils.byteArrayToInt(bytes, 24) & SORTED) != 0;
+        header.compressed = (Utils.byteArrayToInt(bytes, 24) & COMPRESSED) != 0;
+        header.lastPage = readLong(bytes, 28);
+        header.generation = readLong(bytes, 36);
+        return header;
+    }
+
+    /**
+     * Writes the header at the start of the file. The caller invalidates the page source
+     * of the file afterwards.
+     *
+     * @param raf the file
+     * @throws IOException if an I/O error occurs
+     */
+    public void write(RandomAccessFile raf) throws IOException {
+        byte[] bytes = new byte[SIZE];
+
+        Utils.intToBytes(MAGIC, bytes, 0);
+        Utils.intToBytes(VERSION, bytes, 4);
+        Utils.intToBytes(pageSize, bytes, 8);
+        Utils.intToBytes(recordSize, bytes, 12);
+        writeLong(recordCount, bytes, 16);
+        Utils.intToBytes((sorted ? SORTED : 0) | (compressed ? COMPRESSED : 0), bytes, 24);
+        writeLong(lastPage, bytes, 28);
+        writeLong(generation, bytes, 36);
+
+        raf.seek(0);
+        raf.write(bytes);
+        if(raf.length() < pageSize)
+            raf.setLength(pageSize);
+    }
+
+    /**
+     * Draws a new generation for the records about to be written, different from the current
+     * one and from 0.
+     */
+    public void newGeneration() {
+        long next;
+        do {
+            next = ThreadLocalRandom.current().nextLong();
+        } while(next == 0 || next == generation);
+        generation = next;
+    }
+
+    private static long readLong(byte[] bytes, int pos) {
+        return ((long) Utils.byteArrayToInt(bytes, pos) << 32) | (Utils.byteArrayToInt(bytes, pos + 4) & 0xffffffffL);
+    }
+
+    private static void writeLong(long value, byte[] bytes, int pos) {
+        Utils.intToBytes((int) (value >>> 32), bytes, pos);
+        Utils.intToBytes((int) value, bytes, pos + 4);
+    }
+
+    /**
+     * Returns the position of a page in the file.
+     *
+     * @param page the page number
+     * @return the position of the first byte of the page
+     */
+    public long position(long page) {
+        return page*pageSize;
+    }
+
+    /**
+     * Returns the number of whole records that fit in a page.
+     *
+     * @return the number of records in a page
+     */
+    public int recordsInPage() {
+        return pageSize/recordSize;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public int getRecordSize() {
+        return recordSize;
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    public void setRecordCount(long recordCount) {
+        this.recordCount = recordCount;
+    }
+
+    public boolean isSorted() {
+        return sorted;
+    }
+
+    public void setSorted(boolean sorted) {
+        this.sorted = sorted;
+    }
+
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    public void setCompressed(boolean compressed) {
+        this.compressed = compressed;
+    }
+
+    public long getLastPage() {
+        return lastPage;
+    }
+
+    public void setLastPage(long lastPage) {
+        this.lastPage = lastPage;
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+}
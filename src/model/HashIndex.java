@@ -0,0 +1,314 @@
+package model;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import utils.Utils;
+
+/**
+ * The {@code HashIndex} class is a static, disk resident hash index over the keys of a data
+ * file, for exact key lookups.
+ * <p>
+ * Page 0 of the index file is a meta page holding the number of buckets and entries and the
+ * page size of the index; it is read once when the index is opened and is the directory of
+ * the index: bucket {@code b} starts at page {@code 1 + b}. Every bucket page starts with a
+ * {@link #HEADER_SIZE}-byte header (the number of entries in the page and the page number of
+ * the next overflow page, 0 if there is none) followed by up to {@link #getBucketEntries()}
+ * (31 in 256-byte pages) (key, index) pairs.
+ * Overflow pages are stored after the last bucket.
+ * </p>
+ * <p>
+ * The number of buckets is chosen when the index is built so that buckets are filled to
+ * {@link #LOAD_FACTOR} on average, so a lookup reads a single page unless its bucket has
+ * overflowed.
+ * </p>
+ *
+ * @author nr
+ * @since 2023-03
+ */
+public class HashIndex implements Closeable {
+
+    /* The size of the header of a bucket page */
+    public static final int HEADER_SIZE = 2*Integer.BYTES;
+
+    /* The average fill of a bucket the index is built for */
+    public static final double LOAD_FACTOR = 0.75;
+
+    /* Identifies a hash index file in its meta page */
+    private static final int MAGIC = 0x48494458;
+
+    /* The number of bytes of the meta page used */
+    private static final int META_SIZE = 5*Integer.BYTES;
+
+    /* The index file */
+    private final File file;
+
+    /* The RandomAccessFile of the index file */
+    private final RandomAccessFile raf;
+
+    /* The page source bucket pages are read through */
+    private final PageSource pageSource;
+
+    /* The page size of the index, the size of a bucket page */
+    private final int pageSize;
+
+    /* The maximum number of entries in a bucket page */
+    private final int bucketEntries;
+
+    /* The number of buckets */
+    private int buckets;
+
+    /* The number of entries in the index */
+    private int size;
+
+    /* The number of overflow pages */
+    private int overflowPages;
+
+    /**
+     * Opens the hash index stored in the given file, or an empty index with pages of the
+     * {@link DataClassConfiguration#PAGE_SIZE default size} if the file is empty.
+     *
+     * @param file the index file
+     * @param pageSourceKind the kind of page source the buckets are read through
+     * @throws IOException if an I/O error occurs or the file is not a hash index file
+     */
+    public HashIndex(File file, PageSource.Kind pageSourceKind) throws IOException {
+        this(file, DataClassConfiguration.PAGE_SIZE, pageSourceKind);
+    }
+
+    /**
+     * Opens the hash index stored in the given file, with the page size recorded in its meta
+     * page. An empty file is an empty index with pages of the given size until
+     * {@link #build(IndexBuffer)} is called.
+     *
+     * @param file the index file
+     * @param pageSize the page size of the index if the file is empty
+     * @param pageSourceKind the kind of page source the buckets are read through
+     * @throws IOException if an I/O error occurs or the file is not a hash index file
+     * @throws IllegalArgumentException if the page size is smaller than the meta page
+     */
+    public HashIndex(File file, int pageSize, PageSource.Kind pageSourceKind) throws IOException {
+        if(file == null) throw new NullPointerException("file should not be null");
+
+        this.file = file;
+        this.raf = new RandomAccessFile(file, "rw");
+        // the meta page is read unbuffered, the frames of the index in the pool take its page size
+        PageSource source = PageSource.open(pageSourceKind, raf, null);
+        try {
+            if(source.length() > 0)
+                pageSize = readMeta(source);
+            else if(pageSize < META_SIZE)
+                throw new IllegalArgumentException("The page size should be at least " + META_SIZE + " bytes");
+        } catch (IOException | RuntimeException e) {
+            raf.close();
+            throw e;
+        }
+
+        this.pageSize = pageSize;
+        this.bucketEntries = (pageSize - HEADER_SIZE)/IndexBuffer.ENTRY_SIZE;
+        this.pageSource = BufferPool.getDefault() == null ? source : new BufferedPageSource(source, BufferPool.getDefault(), pageSize);
+    }
+
+    /**
+     * Returns the bucket of a key. The key is mixed first so that dense keys spread
+     * evenly over the buckets.
+     *
+     * @param key the key
+     * @param buckets the number of buckets
+     * @return the bucket of the key
+     */
+    public static int bucket(int key, int buckets) {
+        int h = key;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return Integer.remainderUnsigned(h, buckets);
+    }
+
+    /**
+     * Builds the index from the (key, index) entries of a data file, replacing whatever
+     * the index file held. The entries are grouped by bucket with a counting sort and the
+     * buckets are written in order, followed by their overflow pages.
+     *
+     * @param entries the entries of the data file, as collected by {@link RFile#split()}
+     * @throws IOException if an I/O error occurs
+     */
+    public void build(IndexBuffer entries) throws IOException {
+        size = entries.size();
+        buckets = (int) Math.max(1, Math.ceil(size/(bucketEntries*LOAD_FACTOR)));
+        overflowPages = 0;
+
+        // counting sort of the entries by bucket
+        int[] start = new int[buckets + 1];
+        for(int i = 0; i < size; ++i)
+            start[bucket(entries.key(i), buckets) + 1]++;
+        for(int b = 0; b < buckets; ++b)
+            start[b + 1] += start[b];
+
+        int[] fill = Arrays.copyOf(start, buckets);
+        long[] sorted = new long[size];
+        for(int i = 0; i < size; ++i)
+            sorted[fill[bucket(entries.key(i), buckets)]++] = entries.get(i);
+
+        raf.setLength(0);
+        byte[] block = new byte[IndexBuffer.PAGES_PER_WRITE*pageSize];
+        byte[] page = new byte[pageSize];
+        long overflow = 1L + buckets;
+        int pages = 0;
+
+        for(int b = 0; b < buckets; ++b) {
+            int count = start[b + 1] - start[b];
+            int extra = Math.max(0, (count - 1)/bucketEntries);
+
+            // primary page, buffered in the block
+            putBucket(block, pages*pageSize, sorted, start[b], Math.min(count, bucketEntries),
+                      extra > 0 ? (int) overflow : 0);
+            if(++pages == IndexBuffer.PAGES_PER_WRITE) {
+                write(block, pages*pageSize, (1L + b + 1 - pages)*pageSize);
+                pages = 0;
+            }
+
+            // overflow chain
+            for(int o = 1; o <= extra; ++o) {
+                int from = start[b] + o*bucketEntries;
+                putBucket(page, 0, sorted, from, Math.min(bucketEntries, start[b + 1] - from), o < extra ? (int) overflow + 1 : 0);
+                write(page, page.length, overflow*pageSize);
+                overflow++;
+                overflowPages++;
+            }
+        }
+        write(block, pages*pageSize, (1L + buckets - pages)*pageSize);
+
+        writeMeta();
+        pageSource.invalidate();
+    }
+
+    /**
+     * Searches the index for a key.
+     *
+     * @param key the key to search for
+     * @return the position of the record in the data file, or -1 if the key is not in the index
+     * @throws IOException if an I/O error occurs
+     */
+    public int get(int key) throws IOException {
+        return search(key, null);
+    }
+
+    /**
+     * Searches the index for a key and returns the number of disk accesses it took: one for
+     * the bucket and one more for every overflow page of the bucket that had to be read.
+     *
+     * @param key the key to search for
+     * @return the number of disk accesses
+     * @throws IOException if an I/O error occurs
+     */
+    public int search(int key) throws IOException {
+        int[] diskAccesses = new int[1];
+        search(key, diskAccesses);
+        return diskAccesses[0];
+    }
+
+    private int search(int key, int[] diskAccesses) throws IOException {
+        byte[] page = new byte[pageSize];
+
+        if(buckets == 0)
+            return -1;
+
+        long next = 1L + bucket(key, buckets);
+        while(next != 0) {
+            pageSource.read(next*pageSize, page);
+            if(diskAccesses != null)
+                diskAccesses[0]++;
+
+            int count = Utils.byteArrayToInt(page, 0);
+            for(int i = 0, pos = HEADER_SIZE; i < count; ++i, pos += IndexBuffer.ENTRY_SIZE)
+                if(Utils.byteArrayToInt(page, pos) == key)
+                    return Utils.byteArrayToInt(page, pos + Integer.BYTES);
+
+            next = Utils.byteArrayToInt(page, Integer.BYTES);
+        }
+
+        return -1;
+    }
+
+    private void putBucket(byte[] dst, int offset, long[] sorted, int from, int count, int next) {
+        Arrays.fill(dst, offset, offset + pageSize, (byte) 0);
+        Utils.intToBytes(count, dst, offset);
+        Utils.intToBytes(next, dst, offset + Integer.BYTES);
+        for(int i = 0, pos = offset + HEADER_SIZE; i < count; ++i, pos += IndexBuffer.ENTRY_SIZE) {
+            Utils.intToBytes(IndexBuffer.key(sorted[from + i]), dst, pos);
+            Utils.intToBytes(IndexBuffer.index(sorted[from + i]), dst, pos + Integer.BYTES);
+        }
+    }
+
+    private void write(byte[] src, int length, long position) throws IOException {
+        ByteBuffer bb = ByteBuffer.wrap(src, 0, length);
+        while(bb.hasRemaining())
+            raf.getChannel().write(bb, position + bb.position());
+    }
+
+    private void writeMeta() throws IOException {
+        byte[] meta = new byte[pageSize];
+
+        Utils.intToBytes(MAGIC, meta, 0);
+        Utils.intToBytes(buckets, meta, Integer.BYTES);
+        Utils.intToBytes(size, meta, 2*Integer.BYTES);
+        Utils.intToBytes(overflowPages, meta, 3*Integer.BYTES);
+        Utils.intToBytes(pageSize, meta, 4*Integer.BYTES);
+        write(meta, meta.length, 0);
+    }
+
+    /* Reads the meta page and returns the page size of the index */
+    private int readMeta(PageSource source) throws IOException {
+        byte[] meta = new byte[META_SIZE];
+
+        source.read(0, meta);
+        int indexPageSize = Utils.byteArrayToInt(meta, 4*Integer.BYTES);
+        if(Utils.byteArrayToInt(meta, 0) != MAGIC || indexPageSize < META_SIZE)
+            throw new IOException(file + " is not a hash index file");
+
+        buckets = Utils.byteArrayToInt(meta, Integer.BYTES);
+        size = Utils.byteArrayToInt(meta, 2*Integer.BYTES);
+        overflowPages = Utils.byteArrayToInt(meta, 3*Integer.BYTES);
+        return indexPageSize;
+    }
+
+    public PageSource getPageSource() {
+        return pageSource;
+    }
+
+    @Override
+    public void close() throws IOException {
+        pageSource.close();
+        raf.close();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public int getBuckets() {
+        return buckets;
+    }
+
+    public int getOverflowPages() {
+        return overflowPages;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public int getBucketEntries() {
+        return bucketEntries;
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,293 @@
+package model;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import utils.Utils;
+
+/**
+ * The {@code IndexBuffer} class is a growable buffer of (key, index) pairs of the index file.
+ * <p>
+ * Each pair is packed into one {@code long}, the key in the high and the index in the low
+ * 32 bits, so no {@link FIndex} object is created per entry. Since keys are non-negative,
+ * sorting the packed values sorts the entries by key. Entries are written to the index file
+ * as whole pages in bulk, in the same format {@link RFile#putInts()} always had:
+ * {@link #ENTRY_SIZE}-byte entries, {@code pageSize/ENTRY_SIZE} entries per zero padded page.
+ * Sorted index files are written in the compressed pages of {@link IndexPage}, unless
+ * {@link DataClassConfiguration#COMPRESSED_INDEX} is turned off.
+ * </p>
+ *
+ * @author nr
+ * @since 2023-03
+ */
+public class IndexBuffer {
+
+    /* The size of a (key, index) entry in the index file. */
+    public static final int ENTRY_SIZE = 2*Integer.BYTES;
+
+    /* The number of entries in an index page of the default page size. */
+    public static final int ENTRIES_IN_PAGE = DataClassConfiguration.PAGE_SIZE/ENTRY_SIZE;
+
+    /* The largest position in the data file an entry can hold, its index is read back unsigned. */
+    public static final long MAX_INDEX = 0xffffffffL;
+
+    /* The number of pages written with a single write call. */
+    public static final int PAGES_PER_WRITE = 64;
+
+    /* The packed entries */
+    private long[] entries;
+
+    /* The number of entries in the buffer */
+    private int size;
+
+    /**
+     * Creates an empty buffer with room for a page of entries.
+     */
+    public IndexBuffer() {
+        this(ENTRIES_IN_PAGE);
+    }
+
+    /**
+     * Creates an empty buffer with room for the given number of entries.
+     *
+     * @param capacity the initial capacity
+     * @throws IllegalArgumentException if the capacity is negative
+     */
+    public IndexBuffer(int capacity) {
+        if(capacity < 0)
+            throw new IllegalArgumentException("The capacity should not be negative");
+
+        entries = new long[capacity];
+    }
+
+    /**
+     * Packs a key and an index into a single long.
+     *
+     * @param key the key
+     * @param index the index of the key in the data file
+     * @return the packed entry
+     */
+    public static long pack(int key, int index) {
+        return ((long) key << 32) | (index & 0xffffffffL);
+    }
+
+    /**
+     * Returns a position in the data file as the index of an entry, which holds 32 bits.
+     *
+     * @param position the position in the data file
+     * @return the index, to be read back with {@code index & 0xffffffffL}
+     * @throws IllegalArgumentException if the position is negative or past {@link #MAX_INDEX}
+     */
+    public static int toIndex(long position) {
+        if(position < 0 || position > MAX_INDEX)
+            throw new IllegalArgumentException("The position " + position + " does not fit in an index entry");
+        return (int) position;
+    }
+
+    /**
+     * Returns the key of a packed entry.
+     *
+     * @param entry the packed entry
+     * @return the key
+     */
+    public static int key(long entry) {
+        return (int) (entry >>> 32);
+    }
+
+    /**
+     * Returns the index of a packed entry.
+     *
+     * @param entry the packed entry
+     * @return the index
+     */
+    public static int index(long entry) {
+        return (int) entry;
+    }
+
+    /**
+     * Appends an entry to the buffer.
+     *
+     * @param key the key
+     * @param index the index of the key in the data file
+     */
+    public void add(int key, int index) {
+        add(pack(key, index));
+    }
+
+    /**
+     * Appends a packed entry to the buffer.
+     *
+     * @param entry the packed entry
+     */
+    public void add(long entry) {
+        if(size == entries.length)
+            entries = Arrays.copyOf(entries, Math.max(ENTRIES_IN_PAGE, entries.length + (entries.length >> 1)));
+        entries[size++] = entry;
+    }
+
+    /**
+     * Returns the packed entry at the given position.
+     *
+     * @param i the position of the entry
+     * @return the packed entry
+     * @throws IndexOutOfBoundsException if the position is out of bounds
+     */
+    public long get(int i) {
+        if(i < 0 || i >= size)
+            throw new IndexOutOfBoundsException("Array index out of bounds");
+
+        return entries[i];
+    }
+
+    /**
+     * Returns the key of the entry at the given position.
+     *
+     * @param i the position of the entry
+     * @return the key
+     */
+    public int key(int i) {
+        return key(get(i));
+    }
+
+    /**
+     * Returns the index of the entry at the given position.
+     *
+     * @param i the position of the entry
+     * @return the index
+     */
+    public int index(int i) {
+        return index(get(i));
+    }
+
+    /**
+     * Returns the entry at the given position as an {@link FIndex} object.
+     *
+     * @param i the position of the entry
+     * @return the entry
+     */
+    public FIndex toFIndex(int i) {
+        return new FIndex(key(i), index(i));
+    }
+
+    /**
+     * Sorts the entries by key in place, with a {@link RadixSort}.
+     */
+    public void sort() {
+        RadixSort.sort(entries, 0, size);
+    }
+
+    /**
+     * Performs binary search for a key in the sorted buffer.
+     *
+     * @param key the key to search for
+     * @return the position of the key, or -1 if it is not in the buffer
+     */
+    public int binarySearch(int key) {
+        int left = 0;
+        int right = size-1;
+
+        while(left <= right) {
+            int mid = (left+right) >>> 1;
+            int k = key(entries[mid]);
+            if(k == key)
+                return mid;
+            else if(k < key)
+                left = mid + 1;
+            else
+                right = mid - 1;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Appends the (non empty) entries of an index file page to the buffer. Pages written
+     * {@link IndexPage compressed} are decoded.
+     *
+     * @param page the index page
+     * @return this buffer
+     */
+    public IndexBuffer readIndexPage(byte[] page) {
+        if(page == null) throw new NullPointerException("page should not be null");
+        if(IndexPage.isCompressed(page))
+            return IndexPage.decode(page, this);
+
+        for(int pos = 0; pos + ENTRY_SIZE <= page.length; pos += ENTRY_SIZE) {
+            int key = Utils.byteArrayToInt(page, pos);
+            if(key != 0)
+                add(key, Utils.byteArrayToInt(page, pos + Integer.BYTES));
+        }
+        return this;
+    }
+
+    /**
+     * Appends the keys of the records of a data file page, together with their
+     * position in the data file, to the buffer.
+     *
+     * @param page the data page
+     * @param recordSize the size of a record
+     * @param fileIndex the position of the page in the data file
+     * @return this buffer
+     * @throws IllegalArgumentException if a record lies past {@link #MAX_INDEX}
+     */
+    public IndexBuffer readDataPage(byte[] page, int recordSize, long fileIndex) {
+        if(page == null) throw new NullPointerException("page should not be null");
+
+        for(int pos = 0; pos + recordSize <= page.length; pos += recordSize) {
+            int key = Utils.byteArrayToInt(page, pos);
+            if(key != 0)
+                add(key, toIndex(pos + fileIndex));
+        }
+        return this;
+    }
+
+    /**
+     * Writes the entries to the index file from its current position and clears the buffer.
+     * Up to {@link #PAGES_PER_WRITE} pages are written with a single write call. The last page
+     * is zero padded.
+     *
+     * @param raf the index file
+     * @param pageSize the page size of the index file
+     * @return the number of pages written
+     * @throws IOException if an I/O error occurs
+     */
+    public int write(RandomAccessFile raf, int pageSize) throws IOException {
+        int entriesInPage = pageSize/ENTRY_SIZE;
+        int pages = (size + entriesInPage - 1)/entriesInPage;
+        byte[] block = new byte[Math.min(pages, PAGES_PER_WRITE)*pageSize];
+        int i = 0;
+
+        for(int written = 0; written < pages; ) {
+            int n = Math.min(pages - written, PAGES_PER_WRITE);
+            Arrays.fill(block, (byte) 0);
+            for(int p = 0; p < n; ++p) {
+                int pos = p*pageSize;
+                for(int e = 0; e < entriesInPage && i < size; ++e, ++i, pos += ENTRY_SIZE) {
+                    Utils.intToBytes(key(entries[i]), block, pos);
+                    Utils.intToBytes(index(entries[i]), block, pos + Integer.BYTES);
+                }
+            }
+            raf.write(block, 0, n*pageSize);
+            written += n;
+        }
+
+        clear();
+        return pages;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return entries.length;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+}
@@ -0,0 +1,452 @@
+package model;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import utils.Utils;
+
+/**
+ * The {@code IndexPage} class reads and writes the pages of an index file, in either of its two
+ * formats, and looks keys up in a page without decoding it into an {@link IndexBuffer}.
+ * <p>
+ * A fixed page holds {@link IndexBuffer#ENTRY_SIZE}-byte (key, index) entries, zero padded, as
+ * {@link IndexBuffer#write(RandomAccessFile, int)} writes them. A compressed page holds the
+ * entries of a sorted index file in far fewer bytes. Its first key and the geometry of the data
+ * file are stored once, in a 12-byte page header:
+ * </p>
+ * <pre>
+ *  offset  size  field
+ *       0     2  0x8000 | number of entries
+ *       2     2  record size of the data file
+ *       4     4  page size of the data file
+ *       8     4  first key
+ * </pre>
+ * <p>
+ * followed by the data page and slot of the first record, as varints, and then for every
+ * following entry the difference to the previous key, the difference to the previous data page,
+ * zigzag encoded since the data pages of sorted keys need not be ascending, and the slot of the
+ * record in its page, all as varints. The index of a record is rebuilt as
+ * {@code page*pageSize + slot*recordSize}. Dense keys in a file of a few thousand pages take
+ * 3 to 5 bytes an entry instead of 8.
+ * </p>
+ * <p>
+ * The high bit of the first byte tells the formats apart: the first byte of a fixed page is the
+ * high byte of a positive key, or 0. The format of every page is recognized when it is read, so
+ * index files written before are still read as they are.
+ * </p>
+ *
+ * @author nr
+ * @since 2023-03
+ */
+public final class IndexPage {
+
+    /* The size of the header of a compressed page */
+    public static final int HEADER_SIZE = 12;
+
+    /* The largest record size a compressed page can describe */
+    public static final int MAX_RECORD_SIZE = 0xffff;
+
+    /* The largest number of entries of a compressed page */
+    private static final int MAX_COUNT = 0x7fff;
+
+    /* The mark of a compressed page in its first two bytes */
+    private static final int COMPRESSED = 0x8000;
+
+    /* The largest size of an encoded entry, three 5-byte varints */
+    private static final int MAX_ENTRY_SIZE = 15;
+
+    /* Returned by find if the key is smaller than the first key of the page */
+    public static final long BELOW = -1;
+
+    /* Returned by find if the key is larger than the last key of the page */
+    public static final long ABOVE = -2;
+
+    /* Returned by find if the key is within the keys of the page but not in it, or the page is empty */
+    public static final long ABSENT = -3;
+
+    private IndexPage() {
+    }
+
+    /**
+     * Returns whether a page of an index file is compressed.
+     *
+     * @param page the index page
+     * @return true if the page is compressed, false if it holds fixed size entries
+     */
+    public static boolean isCompressed(byte[] page) {
+        return (page[0] & 0x80) != 0;
+    }
+
+    /**
+     * Returns the largest number of entries a compressed page of the given size can hold, an
+     * upper bound for readers that size their buffers by page.
+     *
+     * @param pageSize the page size of the index file
+     * @return the largest number of entries in a page
+     */
+    public static int maxEntries(int pageSize) {
+        return Math.min(MAX_COUNT, 1 + (pageSize - HEADER_SIZE - 2)/3);
+    }
+
+    /**
+     * Appends the entries of a compressed page to a buffer.
+     *
+     * @param page the compressed index page
+     * @param entries the buffer to append the entries to
+     * @return the buffer
+     */
+    public static IndexBuffer decode(byte[] page, IndexBuffer entries) {
+        int count = count(page);
+        int recordSize = recordSize(page);
+        int dataPageSize = Utils.byteArrayToInt(page, 4);
+        int key = Utils.byteArrayToInt(page, 8);
+        long v = readVarint(page, HEADER_SIZE);
+        int dataPage = (int) (v >>> 32);
+        v = readVarint(page, (int) v);
+        entries.add(key, index(dataPage, (int) (v >>> 32), recordSize, dataPageSize));
+
+        for(int i = 1; i < count; ++i) {
+            v = readVarint(page, (int) v);
+            key += (int) (v >>> 32);
+            v = readVarint(page, (int) v);
+            dataPage += unzigzag((int) (v >>> 32));
+            v = readVarint(page, (int) v);
+            entries.add(key, index(dataPage, (int) (v >>> 32), recordSize, dataPageSize));
+        }
+        return entries;
+    }
+
+    /**
+     * Looks a key up in an index page of either format, in place and without allocating: a
+     * binary search over a fixed page, a decode up to the key of a compressed one.
+     *
+     * @param page the index page
+     * @param key the key to search for
+     * @return the packed entry of the key, see {@link IndexBuffer#pack(int, int)}, or one of
+     *         {@link #BELOW}, {@link #ABOVE} and {@link #ABSENT} if it is not in the page
+     */
+    public static long find(byte[] page, int key) {
+        return isCompressed(page) ? findCompressed(page, key) : findFixed(page, key);
+    }
+
+    private static long findFixed(byte[] page, int key) {
+        // the zero padding after the last entry sorts after every key
+        int left = 0;
+        int right = page.length/IndexBuffer.ENTRY_SIZE;
+
+        while(left < right) {
+            int mid = (left + right) >>> 1;
+            int k = Utils.byteArrayToInt(page, mid*IndexBuffer.ENTRY_SIZE);
+            if(k == 0 || k > key)
+                right = mid;
+            else if(k < key)
+                left = mid + 1;
+            else
+                return IndexBuffer.pack(k, Utils.byteArrayToInt(page, mid*IndexBuffer.ENTRY_SIZE + Integer.BYTES));
+        }
+
+        if(Utils.byteArrayToInt(page, 0) == 0)
+            return ABSENT;
+        if(left == 0)
+            return BELOW;
+        if(left == page.length/IndexBuffer.ENTRY_SIZE || Utils.byteArrayToInt(page, left*IndexBuffer.ENTRY_SIZE) == 0)
+            return ABOVE;
+        return ABSENT;
+    }
+
+    private static long findCompressed(byte[] page, int key) {
+        int count = count(page);
+        int k = Utils.byteArrayToInt(page, 8);
+        if(key < k)
+            return BELOW;
+
+        long v = readVarint(page, HEADER_SIZE);
+        int dataPage = (int) (v >>> 32);
+        v = readVarint(page, (int) v);
+        for(int i = 1; k < key && i < count; ++i) {
+            v = readVarint(page, (int) v);
+            k += (int) (v >>> 32);
+            v = readVarint(page, (int) v);
+            dataPage += unzigzag((int) (v >>> 32));
+            v = readVarint(page, (int) v);
+        }
+
+        if(k == key)
+            return IndexBuffer.pack(k, index(dataPage, (int) (v >>> 32), recordSize(page), Utils.byteArrayToInt(page, 4)));
+        return k < key ? ABOVE : ABSENT;
+    }
+
+    private static int count(byte[] page) {
+        return ((page[0] & 0x7f) << 8) | (page[1] & 0xff);
+    }
+
+    private static int recordSize(byte[] page) {
+        return ((page[2] & 0xff) << 8) | (page[3] & 0xff);
+    }
+
+    private static int index(int dataPage, int slot, int recordSize, int dataPageSize) {
+        return (int) ((dataPage & 0xffffffffL)*dataPageSize + (long) slot*recordSize);
+    }
+
+    /**
+     * Reads an unsigned varint, 7 bits a byte, low bits first.
+     *
+     * @return the value in the high and the position after it in the low 32 bits
+     */
+    private static long readVarint(byte[] page, int pos) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = page[pos++];
+            value |= (b & 0x7f) << shift;
+            shift += 7;
+        } while(b < 0);
+        return ((long) value << 32) | pos;
+    }
+
+    private static int writeVarint(int value, byte[] dst, int pos) {
+        while((value & ~0x7f) != 0) {
+            dst[pos++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        dst[pos++] = (byte) value;
+        return pos;
+    }
+
+    private static int zigzag(int n) {
+        return (n << 1) ^ (n >> 31);
+    }
+
+    private static int unzigzag(int n) {
+        return (n >>> 1) ^ -(n & 1);
+    }
+
+    /**
+     * The format the pages of an index file are written in: {@link #FIXED} size entries, or
+     * {@link #compressed(int, int) compressed} pages for the records of a given data file.
+     */
+    public static final class Format {
+
+        /* Fixed size entries, the only format of an unsorted index file */
+        public static final Format FIXED = new Format(0, 0);
+
+        /* The record size of the data file, 0 for fixed size entries */
+        private final int recordSize;
+
+        /* The page size of the data file */
+        private final int dataPageSize;
+
+        private Format(int recordSize, int dataPageSize) {
+            this.recordSize = recordSize;
+            this.dataPageSize = dataPageSize;
+        }
+
+        /**
+         * Returns the compressed format of the index of a data file. The records of the file
+         * should start at whole slots of its pages, as every file of the tree lays them out.
+         *
+         * @param recordSize the record size of the data file
+         * @param dataPageSize the page size of the data file
+         * @return the format
+         * @throws IllegalArgumentException if the record size is out of range or larger than the page size
+         */
+        public static Format compressed(int recordSize, int dataPageSize) {
+            if(recordSize <= 0 || recordSize > MAX_RECORD_SIZE)
+                throw new IllegalArgumentException("The record size should be between 1 and " + MAX_RECORD_SIZE);
+            if(dataPageSize < recordSize)
+                throw new IllegalArgumentException("The page size should hold a record");
+
+            return new Format(recordSize, dataPageSize);
+        }
+
+        public boolean isCompressed() {
+            return recordSize > 0;
+        }
+
+        public int getRecordSize() {
+            return recordSize;
+        }
+
+        public int getDataPageSize() {
+            return dataPageSize;
+        }
+    }
+
+    /**
+     * Writes index pages in a given format from the current position of the index file, up to
+     * {@link IndexBuffer#PAGES_PER_WRITE} pages with a single write call. The first key of every
+     * page is collected on the way, see {@link #getFences()}.
+     */
+    public static final class Writer {
+
+        /* The index file */
+        private final RandomAccessFile raf;
+
+        /* The page size of the index file */
+        private final int pageSize;
+
+        /* The format of the pages */
+        private final Format format;
+
+        /* The pages not written yet */
+        private final byte[] block;
+
+        /* The encoding of the entry being added */
+        private final byte[] scratch = new byte[MAX_ENTRY_SIZE];
+
+        /* The page of the block being filled */
+        private int pageInBlock;
+
+        /* The next byte of the page being filled */
+        private int pos;
+
+        /* The number of entries of the page being filled */
+        private int count;
+
+        /* The last key and data page added to the page being filled */
+        private int lastKey;
+        private int lastDataPage;
+
+        /* The number of pages written */
+        private long pages;
+
+        /* The first key of every page */
+        private int[] fences = new int[16];
+        private int fenceCount;
+
+        /**
+         * Creates a writer of the pages of an index file.
+         *
+         * @param raf the index file, positioned at the first page to write
+         * @param pageSize the page size of the index file
+         * @param format the format of the pages
+         */
+        public Writer(RandomAccessFile raf, int pageSize, Format format) {
+            if(raf == null) throw new NullPointerException("raf should not be null");
+            if(format == null) throw new NullPointerException("format should not be null");
+
+            this.raf = raf;
+            this.pageSize = pageSize;
+            this.format = format;
+            this.block = new byte[IndexBuffer.PAGES_PER_WRITE*pageSize];
+        }
+
+        /**
+         * Adds an entry to the index, after the entries added before. The entries of a
+         * compressed index should be added in key order.
+         *
+         * @param entry the packed entry
+         * @throws IllegalArgumentException if the entry does not fit the compressed format
+         * @throws IOException if an I/O error occurs
+         */
+        public void add(long entry) throws IOException {
+            if(format.isCompressed())
+                addCompressed(IndexBuffer.key(entry), IndexBuffer.index(entry) & 0xffffffffL);
+            else
+                addFixed(entry);
+        }
+
+        private void addFixed(long entry) throws IOException {
+            if(count == pageSize/IndexBuffer.ENTRY_SIZE)
+                endPage();
+            if(count == 0)
+                startPage(IndexBuffer.key(entry));
+
+            int offset = pageInBlock*pageSize + pos;
+            Utils.intToBytes(IndexBuffer.key(entry), block, offset);
+            Utils.intToBytes(IndexBuffer.index(entry), block, offset + Integer.BYTES);
+            pos += IndexBuffer.ENTRY_SIZE;
+            count++;
+        }
+
+        private void addCompressed(int key, long index) throws IOException {
+            int recordSize = format.getRecordSize();
+            int dataPage = (int) (index/format.getDataPageSize());
+            int offset = (int) (index%format.getDataPageSize());
+            if(offset%recordSize != 0)
+                throw new IllegalArgumentException("The index " + index + " is not the start of a record");
+            if(count > 0 && key < lastKey)
+                throw new IllegalArgumentException("The entries of a compressed index should be in key order");
+
+            int n = 0;
+            if(count > 0) {
+                n = writeVarint(key - lastKey, scratch, n);
+                n = writeVarint(zigzag(dataPage - lastDataPage), scratch, n);
+                n = writeVarint(offset/recordSize, scratch, n);
+            }
+            if(count > 0 && (count == MAX_COUNT || pos + n > pageSize))
+                endPage();
+
+            if(count == 0) {
+                startPage(key);
+                int start = pageInBlock*pageSize;
+                block[start + 2] = (byte) (recordSize >>> 8);
+                block[start + 3] = (byte) recordSize;
+                Utils.intToBytes(format.getDataPageSize(), block, start + 4);
+                Utils.intToBytes(key, block, start + 8);
+                n = writeVarint(dataPage, scratch, 0);
+                n = writeVarint(offset/recordSize, scratch, n);
+                pos = HEADER_SIZE;
+            }
+
+            System.arraycopy(scratch, 0, block, pageInBlock*pageSize + pos, n);
+            pos += n;
+            count++;
+            lastKey = key;
+            lastDataPage = dataPage;
+        }
+
+        private void startPage(int key) {
+            if(fenceCount == fences.length)
+                fences = Arrays.copyOf(fences, 2*fences.length);
+            fences[fenceCount++] = key;
+        }
+
+        private void endPage() throws IOException {
+            if(format.isCompressed()) {
+                int start = pageInBlock*pageSize;
+                block[start] = (byte) ((COMPRESSED | count) >>> 8);
+                block[start + 1] = (byte) count;
+            }
+            count = 0;
+            pos = 0;
+            if(++pageInBlock == IndexBuffer.PAGES_PER_WRITE)
+                flush();
+        }
+
+        private void flush() throws IOException {
+            raf.write(block, 0, pageInBlock*pageSize);
+            Arrays.fill(block, 0, pageInBlock*pageSize, (byte) 0);
+            pages += pageInBlock;
+            pageInBlock = 0;
+        }
+
+        /**
+         * Writes the last, zero padded page and the pages still in memory.
+         *
+         * @return the number of pages written
+         * @throws IOException if an I/O error occurs
+         */
+        public long finish() throws IOException {
+            if(count > 0)
+                endPage();
+            flush();
+            return pages;
+        }
+
+        /**
+         * Returns the first key of every page written, in page order, which are the fences of
+         * the index file if the entries were added in key order.
+         *
+         * @return the first key of every page
+         */
+        public int[] getFences() {
+            return Arrays.copyOf(fences, fenceCount);
+        }
+
+        public Format getFormat() {
+            return format;
+        }
+    }
+}
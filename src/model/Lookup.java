@@ -0,0 +1,133 @@
+package model;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The {@code Lookup} class is the result of a point lookup with {@link RFile#get(int)}: a
+ * read-only view of the record of the key, if there is one, and what it cost to find it, in
+ * index pages and data pages read.
+ * <p>
+ * Index pages are pages of an index file, of the file itself or of a {@link SortedRun} of its
+ * {@link LsmTree}. Data pages are the positional reads of the records, and the pages read by a
+ * scan of the data file when the file has no sorted index. A record found in the memory table
+ * of the tree, or a key rejected by a Bloom filter, costs no page at all.
+ * </p>
+ * <p>
+ * A record read through the {@link BufferPool} is a view of the frame of its page, which stays
+ * pinned until the lookup is {@link #close() closed}, so a lookup should be closed as soon as
+ * the record has been read.
+ * </p>
+ *
+ * @author nr
+ * @since 2023-03
+ */
+public class Lookup implements AutoCloseable {
+
+    /* The key looked up */
+    private final int key;
+
+    /* A read-only view of the record, key first, null if the key was not found */
+    private ByteBuffer record;
+
+    /* The number of index pages read */
+    private int indexPages;
+
+    /* The number of data pages read */
+    private int dataPages;
+
+    /* The lease of the frame the record is a view of, null if the record is not in a frame */
+    private BufferedPageSource.Lease lease;
+
+    /* Whether the lookup was closed */
+    private boolean closed;
+
+    Lookup(int key) {
+        this.key = key;
+    }
+
+    void indexPageRead() {
+        indexPages++;
+    }
+
+    void dataPageRead() {
+        dataPages++;
+    }
+
+    void setRecord(ByteBuffer record) {
+        this.record = record;
+    }
+
+    void setLease(BufferedPageSource.Lease lease) {
+        this.lease = lease;
+    }
+
+    /**
+     * Releases the frame of the buffer pool the record is a view of, if any. The record of a
+     * closed lookup cannot be read any more, but whether it was found and what it cost can.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        if(lease != null)
+            lease.release();
+    }
+
+    /**
+     * Returns whether the key was found.
+     *
+     * @return true if there is a record of the key
+     */
+    public boolean isFound() {
+        return record != null;
+    }
+
+    /**
+     * Returns a read-only view of the data of the record, the bytes after the key, zero padded
+     * to the record size.
+     *
+     * @return the data of the record, or null if the key was not found
+     * @throws IllegalStateException if the record was released by {@link #close()}
+     */
+    public ByteBuffer getData() {
+        ByteBuffer r = getRecord();
+        if(r == null)
+            return null;
+        return r.duplicate().position(DataClassConfiguration.KEY_SIZE).slice();
+    }
+
+    /**
+     * Returns the number of pages the lookup read, index and data pages together.
+     *
+     * @return the number of disk accesses
+     */
+    public int getDiskAccesses() {
+        return indexPages + dataPages;
+    }
+
+    public int getKey() {
+        return key;
+    }
+
+    /**
+     * Returns a read-only view of the record, the key followed by the data. The record of a data
+     * file read through the buffer pool is a view of the frame of its page, valid until the lookup
+     * is closed. Without the pool the record of a mapped data file is a view of the mapping, and
+     * sees the file change if it is rewritten. A record found in the {@link LsmTree} is a copy.
+     *
+     * @return the record, positioned at its first byte, or null if the key was not found
+     * @throws IllegalStateException if the record was released by {@link #close()}
+     */
+    public ByteBuffer getRecord() {
+        if(closed && lease != null)
+            throw new IllegalStateException("The record was released when the lookup was closed");
+        return record;
+    }
+
+    public int getIndexPages() {
+        return indexPages;
+    }
+
+    public int getDataPages() {
+        return dataPages;
+    }
+}
@@ -0,0 +1,427 @@
+package model;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import utils.Utils;
+
+/**
+ * The {@code LsmTree} class is the insert path of an {@link RFile}, a log-structured merge
+ * tree in front of its data file, which itself is never rewritten.
+ * <p>
+ * Inserted records are kept in a sorted memory table. Once it holds
+ * {@link DataClassConfiguration#MEMTABLE_BYTES} bytes of records it is flushed as a
+ * {@link SortedRun}. A lookup checks the memory table and then the runs from the newest to the
+ * oldest, so the last record inserted for a key wins. Once
+ * {@link DataClassConfiguration#COMPACTION_RUNS} runs have piled up a background thread merges
+ * them into one, keeping the newest record of every key.
+ * </p>
+ * <p>
+ * The runs of {@code <filename>} are stored as {@code files/lsm_<n>_<filename>}, where
+ * {@code n} grows with every run written, and are opened again with the file. Records still in
+ * the memory table are lost if the process stops before {@link #flush()} or {@link #close()}.
+ * </p>
+ * <p>
+ * Inserts are serialized, lookups may run from any number of threads, also while a run is
+ * flushed or compacted.
+ * </p>
+ *
+ * @author nr
+ * @since 2023-03
+ */
+public class LsmTree implements Closeable {
+
+    /* Orders the runs from the newest to the oldest */
+    private static final Comparator<SortedRun> NEWEST_FIRST = Comparator.comparingLong(SortedRun::getSequence).reversed();
+
+    /* The name of the data file the tree is in front of */
+    private final String filename;
+
+    /* The size of a record */
+    private final int recordSize;
+
+    /* The size of a page of the runs */
+    private final int pageSize;
+
+    /* The kind of page source the runs are read through */
+    private final PageSource.Kind pageSourceKind;
+
+    /* The number of records the memory table holds before it is flushed */
+    private final int memTableRecords;
+
+    /* The records inserted since the last flush, by key */
+    private volatile ConcurrentSkipListMap<Integer, byte[]> memTable = new ConcurrentSkipListMap<>();
+
+    /* The number of keys in the memory table */
+    private int memTableKeys;
+
+    /* The memory table being flushed, null if there is none */
+    private volatile ConcurrentSkipListMap<Integer, byte[]> flushing;
+
+    /* The runs, newest first, replaced as a whole under the write lock of runLock */
+    private volatile List<SortedRun> runs;
+
+    /* Held by lookups while they read the runs, so that no run is deleted under them */
+    private final ReadWriteLock runLock = new ReentrantReadWriteLock();
+
+    /* Serializes compactions */
+    private final Object compactionLock = new Object();
+
+    /* The thread the compactions run on */
+    private final ExecutorService compactor;
+
+    /* The last compaction submitted, null if there is none */
+    private Future<?> compaction;
+
+    /* The sequence number of the next run */
+    private long nextSequence;
+
+    /**
+     * Creates the insert path of a data file, opening the runs written before.
+     *
+     * @param filename the name of the data file
+     * @param recordSize the size of a record
+     * @param pageSize the size of a page of the runs
+     * @param pageSourceKind the kind of page source the runs are read through
+     * @throws IOException if an I/O error occurs
+     */
+    public LsmTree(String filename, int recordSize, int pageSize, PageSource.Kind pageSourceKind) throws IOException {
+        if(filename == null) throw new NullPointerException("filename should not be null");
+        if(pageSourceKind == null) throw new NullPointerException("pageSourceKind should not be null");
+
+        this.filename = filename;
+        this.recordSize = recordSize;
+        this.pageSize = pageSize;
+        this.pageSourceKind = pageSourceKind;
+        this.memTableRecords = (int) Math.max(1, Math.min(Integer.MAX_VALUE, DataClassConfiguration.MEMTABLE_BYTES/recordSize));
+        this.runs = openRuns();
+        this.compactor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "compaction-" + filename);
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    private List<SortedRun> openRuns() throws IOException {
+        List<SortedRun> opened = new ArrayList<>();
+        String suffix = "_" + filename;
+        String[] names = new File("files").list();
+
+        for(String name : names == null ? new String[0] : names) {
+            long sequence = sequence(name, suffix);
+            if(sequence < 0)
+                continue;
+
+            opened.add(SortedRun.open(name, sequence));
+            nextSequence = Math.max(nextSequence, sequence + 1);
+        }
+
+        opened.sort(NEWEST_FIRST);
+        return List.copyOf(opened);
+    }
+
+    /**
+     * Returns whether runs of a data file were written before, without opening them.
+     *
+     * @param filename the name of the data file
+     * @return true if there is at least one run of the file
+     */
+    static boolean hasRuns(String filename) {
+        String suffix = "_" + filename;
+        String[] names = new File("files").list();
+
+        for(String name : names == null ? new String[0] : names)
+            if(sequence(name, suffix) >= 0)
+                return true;
+        return false;
+    }
+
+    /* Returns the sequence number of a run file name ending with the suffix, -1 if it is not one */
+    private static long sequence(String name, String suffix) {
+        if(!name.startsWith("lsm_") || !name.endsWith(suffix) || name.length() <= 4 + suffix.length())
+            return -1;
+        String sequence = name.substring(4, name.length() - suffix.length());
+        if(!sequence.chars().allMatch(Character::isDigit))
+            return -1;
+        return Long.parseLong(sequence);
+    }
+
+    private String runName(long sequence) {
+        return "lsm_" + sequence + "_" + filename;
+    }
+
+    /**
+     * Inserts a record, replacing the record of the key if there is one. The memory table is
+     * flushed as a run once it is full.
+     *
+     * @param key the key of the record, positive
+     * @param data the data of the record, zero padded to the record size
+     * @throws IOException if an I/O error occurs while the memory table is flushed
+     * @throws IllegalArgumentException if the key is not positive or the data does not fit in a record
+     */
+    public synchronized void insert(int key, byte[] data) throws IOException {
+        if(data == null) throw new NullPointerException("data should not be null");
+        if(key <= 0)
+            throw new IllegalArgumentException("The key should be positive");
+        if(data.length > recordSize - DataClassConfiguration.KEY_SIZE)
+            throw new IllegalArgumentException("The data should not be longer than " + (recordSize - DataClassConfiguration.KEY_SIZE) + " bytes");
+
+        byte[] record = new byte[recordSize];
+        Utils.intToBytes(key, record, 0);
+        System.arraycopy(data, 0, record, DataClassConfiguration.KEY_SIZE, data.length);
+        if(memTable.put(key, record) == null && ++memTableKeys >= memTableRecords)
+            flush();
+    }
+
+    /**
+     * Writes the memory table as a new run, and starts a background compaction if
+     * {@link DataClassConfiguration#COMPACTION_RUNS} runs have piled up.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public synchronized void flush() throws IOException {
+        if(memTable.isEmpty())
+            return;
+
+        long sequence = nextSequence++;
+        flushing = memTable;
+        memTable = new ConcurrentSkipListMap<>();
+        memTableKeys = 0;
+        SortedRun run = SortedRun.write(runName(sequence), sequence, recordSize, pageSize, pageSourceKind, flushing.values().iterator());
+
+        runLock.writeLock().lock();
+        try {
+            List<SortedRun> next = new ArrayList<>(runs.size() + 1);
+            next.add(run);
+            next.addAll(runs);
+            runs = List.copyOf(next);
+        } finally {
+            runLock.writeLock().unlock();
+        }
+        flushing = null;
+
+        if(runs.size() >= DataClassConfiguration.COMPACTION_RUNS && (compaction == null || compaction.isDone()))
+            compaction = compactor.submit(() -> {
+                compact();
+                return null;
+            });
+    }
+
+    /**
+     * Merges all the runs into one, keeping the newest record of every key. Runs flushed
+     * while the merge is running are left alone.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public void compact() throws IOException {
+        synchronized(compactionLock) {
+            List<SortedRun> merging;
+            long sequence;
+            synchronized(this) {
+                merging = runs;
+                if(merging.size() < 2)
+                    return;
+                sequence = nextSequence++;
+            }
+
+            SortedRun merged;
+            try {
+                merged = SortedRun.write(runName(sequence), sequence, recordSize, pageSize, pageSourceKind, new MergeIterator(merging));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+
+            runLock.writeLock().lock();
+            try {
+                List<SortedRun> next = new ArrayList<>(runs);
+                next.removeAll(merging);
+                next.add(merged);
+                next.sort(NEWEST_FIRST);
+                runs = List.copyOf(next);
+            } finally {
+                runLock.writeLock().unlock();
+            }
+
+            for(SortedRun run : merging)
+                run.delete();
+        }
+    }
+
+    /**
+     * Looks a key up in the memory table and then in the runs, newest first.
+     *
+     * @param key the key to search for
+     * @return a copy of the newest record of the key, or null if the key was never inserted
+     * @throws IOException if an I/O error occurs
+     */
+    public byte[] get(int key) throws IOException {
+        ByteBuffer record = find(key, new Lookup(key));
+        if(record == null)
+            return null;
+
+        byte[] copy = new byte[record.remaining()];
+        record.get(copy);
+        return copy;
+    }
+
+    /**
+     * Searches the memory table and then the runs, newest first, for a key.
+     *
+     * @param key the key to search for
+     * @return the number of disk accesses in the runs
+     * @throws IOException if an I/O error occurs
+     */
+    public int search(int key) throws IOException {
+        Lookup lookup = new Lookup(key);
+        find(key, lookup);
+        return lookup.getDiskAccesses();
+    }
+
+    /**
+     * Finds the newest record of a key, counting the pages read in the runs.
+     *
+     * @param key the key to search for
+     * @param lookup counts the index and data pages read
+     * @return a read-only view of the record, or null if the key was never inserted
+     * @throws IOException if an I/O error occurs
+     */
+    ByteBuffer find(int key, Lookup lookup) throws IOException {
+        byte[] record = memTable.get(key);
+        if(record != null)
+            return ByteBuffer.wrap(record).asReadOnlyBuffer();
+
+        ConcurrentSkipListMap<Integer, byte[]> frozen = flushing;
+        if(frozen != null && (record = frozen.get(key)) != null)
+            return ByteBuffer.wrap(record).asReadOnlyBuffer();
+
+        runLock.readLock().lock();
+        try {
+            for(SortedRun run : runs) {
+                ByteBuffer found = run.find(key, lookup);
+                if(found != null)
+                    return found;
+            }
+        } finally {
+            runLock.readLock().unlock();
+        }
+        return null;
+    }
+
+    /**
+     * Flushes the memory table, waits for the running compaction and closes the runs.
+     *
+     * @throws IOException if an I/O error occurs or the last compaction failed
+     */
+    @Override
+    public void close() throws IOException {
+        Future<?> last;
+        synchronized(this) {
+            flush();
+            last = compaction;
+        }
+
+        try {
+            if(last != null)
+                last.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the compaction of " + filename, e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        } finally {
+            compactor.shutdown();
+        }
+
+        for(SortedRun run : runs)
+            run.close();
+    }
+
+    /**
+     * Returns the runs, newest first.
+     *
+     * @return an unmodifiable snapshot of the runs
+     */
+    public List<SortedRun> getRuns() {
+        return runs;
+    }
+
+    public synchronized int getMemTableSize() {
+        return memTableKeys;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    /* Merges the records of runs, each in key order, keeping the record of the newest run for every key. */
+    private static final class MergeIterator implements Iterator<byte[]> {
+        private final PriorityQueue<Head> heads = new PriorityQueue<>();
+
+        MergeIterator(List<SortedRun> runs) {
+            for(SortedRun run : runs)
+                advance(new Head(run.records(), run.getSequence()));
+        }
+
+        private void advance(Head head) {
+            if(head.records.hasNext()) {
+                head.record = head.records.next();
+                head.key = Utils.byteArrayToInt(head.record, 0);
+                heads.add(head);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !heads.isEmpty();
+        }
+
+        @Override
+        public byte[] next() {
+            if(heads.isEmpty())
+                throw new NoSuchElementException();
+
+            Head head = heads.poll();
+            byte[] record = head.record;
+            int key = head.key;
+            advance(head);
+            while(!heads.isEmpty() && heads.peek().key == key)
+                advance(heads.poll());
+            return record;
+        }
+    }
+
+    /* The next record of a run being merged. */
+    private static final class Head implements Comparable<Head> {
+        private final Iterator<byte[]> records;
+        private final long sequence;
+        private byte[] record;
+        private int key;
+
+        Head(Iterator<byte[]> records, long sequence) {
+            this.records = records;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Head o) {
+            if(key != o.key)
+                return Integer.compare(key, o.key);
+            return Long.compare(o.sequence, sequence);
+        }
+    }
+}
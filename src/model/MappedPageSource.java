@@ -0,0 +1,144 @@
+package model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * A {@link PageSource} that maps the file into memory with {@link FileChannel#map}, so
+ * page reads become memory accesses instead of system calls.
+ * <p>
+ * The file is mapped in segments of {@link #SEGMENT_SIZE} bytes, which lets files larger
+ * than 2 GiB be read. A segment is mapped lazily on its first read and mapped again when
+ * the file has grown past the end of the previous mapping (e.g. after {@link RFile#putInts()}).
+ * A file that is written and may have shrunk, as an index file does when {@link RFile#sort()}
+ * compresses it, is mapped again after {@link #invalidate()}.
+ * </p>
+ * <p>
+ * The segments are published as an array that is replaced, never written in place, so reads
+ * find their segment without locking; only mapping a segment takes the lock.
+ * </p>
+ *
+ * @author nr
+ * @since 2023-03
+ */
+public class MappedPageSource implements PageSource {
+
+    /* The size of a mapped segment, a multiple of the page size. */
+    public static final int SEGMENT_SIZE = 1 << 30;
+
+    /* The channel of the mapped file */
+    private final FileChannel channel;
+
+    /* The mapped segments of the file, replaced as a whole when a segment is mapped */
+    private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+    /**
+     * Creates a new page source over the given channel.
+     *
+     * @param channel the channel of the file to read from
+     */
+    public MappedPageSource(FileChannel channel) {
+        if(channel == null) throw new NullPointerException("channel should not be null");
+        this.channel = channel;
+    }
+
+    @Override
+    public int read(long position, byte[] dst) throws IOException {
+        int total = 0;
+
+        while(total < dst.length) {
+            long pos = position + total;
+            MappedByteBuffer segment = segment((int) (pos / SEGMENT_SIZE), pos + dst.length - total);
+            int offset = (int) (pos % SEGMENT_SIZE);
+            int n = segment == null ? 0 : Math.min(dst.length - total, segment.limit() - offset);
+            if(n <= 0) break;
+
+            segment.get(offset, dst, total, n);
+            total += n;
+        }
+
+        Arrays.fill(dst, total, dst.length, (byte) 0);
+        return total;
+    }
+
+    /**
+     * Returns a read-only slice of the mapping, without copying, if the bytes lie in one
+     * mapped segment, and a copy otherwise.
+     */
+    @Override
+    public ByteBuffer view(long position, int length) throws IOException {
+        MappedByteBuffer segment = segment((int) (position / SEGMENT_SIZE), position + length);
+        int offset = (int) (position % SEGMENT_SIZE);
+        if(segment == null || offset + length > segment.limit())
+            return PageSource.super.view(position, length);
+
+        return segment.slice(offset, length).asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns the mapped segment with the given number, mapping it again if it does not
+     * reach {@code end} and the file is longer than the current mapping.
+     *
+     * @param index the number of the segment
+     * @param end the position up to which the caller wants to read
+     * @return the segment, or null if the file does not reach it
+     * @throws IOException if an I/O error occurs
+     */
+    private MappedByteBuffer segment(int index, long end) throws IOException {
+        MappedByteBuffer[] mapped = segments;
+        MappedByteBuffer segment = index < mapped.length ? mapped[index] : null;
+        if(covers(segment, index, end))
+            return segment;
+
+        return map(index, end);
+    }
+
+    private static boolean covers(MappedByteBuffer segment, int index, long end) {
+        return segment != null && (segment.limit() == SEGMENT_SIZE || (long) index*SEGMENT_SIZE + segment.limit() >= end);
+    }
+
+    /* Maps a segment under the lock, unless another thread mapped it first. */
+    private synchronized MappedByteBuffer map(int index, long end) throws IOException {
+        MappedByteBuffer[] mapped = segments;
+        MappedByteBuffer segment = index < mapped.length ? mapped[index] : null;
+        if(covers(segment, index, end))
+            return segment;
+
+        long start = (long) index * SEGMENT_SIZE;
+        long size = Math.min(channel.size() - start, SEGMENT_SIZE);
+        if(size <= 0)
+            return null;
+        if(segment != null && size <= segment.limit())
+            return segment;
+
+        mapped = Arrays.copyOf(mapped, Math.max(mapped.length, index + 1));
+        mapped[index] = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+        segments = mapped;
+        return mapped[index];
+    }
+
+    @Override
+    public long length() throws IOException {
+        return channel.size();
+    }
+
+    /**
+     * Drops the mappings, which may reach past the end of a file that was truncated, so the
+     * next reads map the file as it is now. Views returned before keep their mapping.
+     */
+    @Override
+    public synchronized void invalidate() {
+        segments = new MappedByteBuffer[0];
+    }
+
+    /**
+     * Drops the mappings, the channel is closed together with its RandomAccessFile.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        segments = new MappedByteBuffer[0];
+    }
+}
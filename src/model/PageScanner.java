@@ -0,0 +1,65 @@
+package model;
+
+/**
+ * The {@code PageScanner} interface finds a key among the records of a page without
+ * copying the records out of it. The key of a record is the big-endian integer stored
+ * in its first {@link DataClassConfiguration#KEY_SIZE} bytes and records are laid out
+ * at a {@code recordSize} stride from the start of the page.
+ * <p>
+ * {@link #create()} returns a {@code VectorPageScanner} that compares the keys in vector
+ * lanes when the {@code jdk.incubator.vector} module is available (and the class is on the
+ * classpath, see {@code src-incubator}), otherwise a {@link ScalarPageScanner}.
+ * </p>
+ *
+ * @author nr
+ * @since 2023-03
+ */
+public interface PageScanner {
+
+    /* The class name of the Vector API implementation */
+    String VECTOR_SCANNER = "model.VectorPageScanner";
+
+    /* The module the Vector API implementation depends on */
+    String VECTOR_MODULE = "jdk.incubator.vector";
+
+    /**
+     * Searches a page for a record with the given key.
+     *
+     * @param key the key to search for
+     * @param page the page to search
+     * @param recordSize the size of a record in the page
+     * @return the position of the record in the page, or -1 if the key is not in the page
+     */
+    int indexOf(int key, byte[] page, int recordSize);
+
+    /**
+     * Returns the number of records of the given size whose key fits in a page of the given length.
+     *
+     * @param pageLength the length of the page
+     * @param recordSize the size of a record in the page
+     * @return the number of keys in the page
+     */
+    static int keysInPage(int pageLength, int recordSize) {
+        return pageLength < DataClassConfiguration.KEY_SIZE ? 0 : (pageLength - DataClassConfiguration.KEY_SIZE)/recordSize + 1;
+    }
+
+    /**
+     * Creates the fastest page scanner available. The Vector API implementation can be
+     * disabled with {@code -Drfile.vectorScan=false}.
+     *
+     * @return a new PageScanner object
+     */
+    static PageScanner create() {
+        boolean vectorScan = Boolean.parseBoolean(System.getProperty("rfile.vectorScan", "true"));
+
+        if(vectorScan && ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent()) {
+            try {
+                return (PageScanner) Class.forName(VECTOR_SCANNER).getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // the Vector API implementation was not compiled, fall back to the scalar loop
+            }
+        }
+
+        return new ScalarPageScanner();
+    }
+}
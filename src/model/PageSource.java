@@ -0,0 +1,170 @@
+package model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+/**
+ * The {@code PageSource} interface is the layer under {@link RFile} through which
+ * pages of a file are read. Every call reads a whole buffer starting at an absolute
+ * position of the file, so the caller never depends on a shared seek position.
+ * <p>
+ * The searches of {@link RFile} count the logical pages they ask for regardless of the
+ * implementation used. Under them the page source of a file counts the reads asked of it, the
+ * read calls that reached the file and the bytes these transferred, see
+ * {@link ExtentPageSource}, and a {@link BufferedPageSource} counts how many pages were found
+ * in its {@link BufferPool}.
+ * </p>
+ *
+ * @author nr
+ * @since 2023-03
+ */
+public interface PageSource extends Closeable {
+
+    /**
+     * The available page source implementations.
+     */
+    enum Kind {
+        /* seek + read on the RandomAccessFile of the RFile */
+        RAF,
+        /* memory accesses on a FileChannel mapping of the file */
+        MAPPED
+    }
+
+    /**
+     * Reads {@code dst.length} bytes of the file starting at {@code position}.
+     * Whatever lies past the end of the file is filled with zeros.
+     *
+     * @param position the absolute position in the file
+     * @param dst the buffer to be filled
+     * @return the number of bytes actually read from the file (0 at the end of file)
+     * @throws IOException if an I/O error occurs
+     */
+    int read(long position, byte[] dst) throws IOException;
+
+    /**
+     * Returns a read-only view of {@code length} bytes of the file starting at {@code position},
+     * read with a single call of {@link #read(long, byte[])}. A page source that holds the file
+     * in memory may return a view of that memory instead of a copy.
+     *
+     * @param position the absolute position in the file
+     * @param length the number of bytes
+     * @return a read-only buffer of {@code length} bytes, positioned at 0
+     * @throws IOException if an I/O error occurs
+     */
+    default ByteBuffer view(long position, int length) throws IOException {
+        byte[] dst = new byte[length];
+        read(position, dst);
+        return ByteBuffer.wrap(dst).asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns the length of the underlying file in bytes.
+     *
+     * @return the length of the file
+     * @throws IOException if an I/O error occurs
+     */
+    long length() throws IOException;
+
+    /**
+     * Drops whatever the page source has cached about the file. It is called after the
+     * file has been written.
+     */
+    default void invalidate() {
+        // nothing is cached
+    }
+
+    /**
+     * Returns the number of pages found in a buffer pool.
+     *
+     * @return the number of hits, 0 if the page source is not buffered
+     */
+    default long getHits() {
+        return 0;
+    }
+
+    /**
+     * Returns the number of pages that had to be read from the file because they
+     * were not in a buffer pool.
+     *
+     * @return the number of misses, 0 if the page source is not buffered
+     */
+    default long getMisses() {
+        return 0;
+    }
+
+    /**
+     * Returns the number of reads asked of the page source, the logical page accesses.
+     *
+     * @return the number of logical reads, 0 if the page source does not count them
+     */
+    default long getLogicalReads() {
+        return 0;
+    }
+
+    /**
+     * Returns the number of read calls that reached the file.
+     *
+     * @return the number of physical reads, 0 if the page source does not count them
+     */
+    default long getPhysicalReads() {
+        return 0;
+    }
+
+    /**
+     * Returns the number of bytes the physical reads transferred.
+     *
+     * @return the number of bytes read, 0 if the page source does not count them
+     */
+    default long getBytesRead() {
+        return 0;
+    }
+
+    /**
+     * Creates a page source of the given kind over an open RandomAccessFile, buffered in
+     * the {@link BufferPool#getDefault() default buffer pool} unless it is disabled.
+     * The RandomAccessFile remains owned by the caller.
+     *
+     * @param kind the kind of page source
+     * @param raf the file to read from
+     * @return a new PageSource object
+     */
+    static PageSource open(Kind kind, RandomAccessFile raf) {
+        return open(kind, raf, BufferPool.getDefault());
+    }
+
+    /**
+     * Creates a page source of the given kind over an open RandomAccessFile, read in extents
+     * of {@link DataClassConfiguration#EXTENT_BYTES} bytes by an {@link ExtentPageSource} and
+     * buffered in the given pool. The RandomAccessFile remains owned by the caller.
+     *
+     * @param kind the kind of page source
+     * @param raf the file to read from
+     * @param pool the buffer pool, or null for an unbuffered page source
+     * @return a new PageSource object
+     */
+    static PageSource open(Kind kind, RandomAccessFile raf, BufferPool pool) {
+        return open(kind, raf, pool, DataClassConfiguration.PAGE_SIZE);
+    }
+
+    /**
+     * Creates a page source of the given kind over an open RandomAccessFile with pages of the
+     * given size, read in extents of {@link DataClassConfiguration#EXTENT_BYTES} bytes by an
+     * {@link ExtentPageSource} and buffered in the given pool. The RandomAccessFile remains
+     * owned by the caller.
+     *
+     * @param kind the kind of page source
+     * @param raf the file to read from
+     * @param pool the buffer pool, or null for an unbuffered page source
+     * @param pageSize the page size of the file, the size of its frames in the pool
+     * @return a new PageSource object
+     */
+    static PageSource open(Kind kind, RandomAccessFile raf, BufferPool pool, int pageSize) {
+        if(kind == null) throw new NullPointerException("kind should not be null");
+
+        PageSource source = kind == Kind.MAPPED ? new MappedPageSource(raf.getChannel()) : new RafPageSource(raf);
+        source = new ExtentPageSource(source, DataClassConfiguration.EXTENT_BYTES);
+        return pool == null ? source : new BufferedPageSource(source, pool, pageSize);
+    }
+}
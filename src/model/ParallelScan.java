@@ -0,0 +1,133 @@
+package model;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code ParallelScan} class searches the data pages of a file for a key on a
+ * {@link ForkJoinPool}.
+ * <p>
+ * The page range is split in halves down to chunks of {@link #CHUNK_PAGES} pages, which are
+ * scanned by the workers of the pool with positional reads of the {@link PageSource} of the
+ * file, so they do not share a file position and its I/O counters see every page. As soon as
+ * a worker finds the key the remaining chunks are
+ * cancelled: the tasks that have not started return at once and the running ones stop
+ * before their next page.
+ * </p>
+ *
+ * @author nr
+ * @since 2023-03
+ */
+public class ParallelScan {
+
+    /* The number of pages a task scans without splitting */
+    public static final int CHUNK_PAGES = 64;
+
+    /* The page source of the data file */
+    private final PageSource pageSource;
+
+    /* The header of the data file */
+    private final FileHeader header;
+
+    /* The scanner used to find a key among the records of a page */
+    private final PageScanner scanner;
+
+    /* The pool the chunks are scanned on */
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates a parallel scan over the pages of a data file.
+     *
+     * @param pageSource the page source of the data file
+     * @param header the header of the data file
+     * @param scanner the scanner used to find a key among the records of a page
+     * @param pool the pool the chunks are scanned on
+     */
+    public ParallelScan(PageSource pageSource, FileHeader header, PageScanner scanner, ForkJoinPool pool) {
+        if(pageSource == null) throw new NullPointerException("pageSource should not be null");
+        if(header == null) throw new NullPointerException("header should not be null");
+        if(scanner == null) throw new NullPointerException("scanner should not be null");
+        if(pool == null) throw new NullPointerException("pool should not be null");
+
+        this.pageSource = pageSource;
+        this.header = header;
+        this.scanner = scanner;
+        this.pool = pool;
+    }
+
+    /**
+     * Searches the file for a key.
+     *
+     * @param key the key to search for
+     * @return the total number of pages read by the workers, the disk accesses of the search
+     * @throws IOException if an I/O error occurs
+     */
+    public int search(int key) throws IOException {
+        Search search = new Search(key);
+
+        try {
+            pool.invoke(new ScanTask(search, 1, header.getLastPage() + 1));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return (int) search.pages.sum();
+    }
+
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /* The state shared by the tasks of a search. */
+    private static final class Search {
+        private final int key;
+        private final AtomicBoolean found = new AtomicBoolean();
+        private final LongAdder pages = new LongAdder();
+
+        Search(int key) {
+            this.key = key;
+        }
+    }
+
+    /* Scans the pages [from, to). */
+    private final class ScanTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Search search;
+        private final long from;
+        private final long to;
+
+        ScanTask(Search search, long from, long to) {
+            this.search = search;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if(search.found.get())
+                return;
+
+            if(to - from > CHUNK_PAGES) {
+                long mid = (from + to) >>> 1;
+                invokeAll(new ScanTask(search, from, mid), new ScanTask(search, mid, to));
+                return;
+            }
+
+            byte[] page = new byte[header.getPageSize()];
+            for(long p = from; p < to && !search.found.get(); ++p) {
+                try {
+                    pageSource.read(header.position(p), page);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                search.pages.increment();
+                if(scanner.indexOf(search.key, page, header.getRecordSize()) >= 0)
+                    search.found.set(true);
+            }
+        }
+    }
+}
@@ -1,20 +1,32 @@
 package model;
 
 import java.io.RandomAccessFile;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.List;
 import utils.Utils;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
 
 /**
  *
  *   The {@code RFile} class represents a file abstraction, where you can perform operations
  *   of searching for a specific key, splitting the file into an index file and sorting the
  *   index file.
+ *   <p>
+ *   Page 0 of every data and index file holds a {@link FileHeader} with the page size, the
+ *   record size, the record count, the sorted flag and the last used page of the file, so
+ *   the records start at page 1.
+ *   </p>
+ *   <p>
+ *   The searches may run on one {@code RFile} from many threads at once: the pages are read
+ *   with positional reads into buffers of their own and the index structures are built once,
+ *   by the first search that needs them. Building the indexes ({@link #split()}, {@link #sort()},
+ *   {@link #buildBPlusTree()}, {@link #buildHashIndex()}) must not overlap with searches.
+ *   </p>
  *   
  *   @author nr
  *   @since 2023-03
@@ -29,18 +41,80 @@ public class RFile implements Closeable {
 
     /* The RandomAccessFile object used to read from and write to the file */
     private RandomAccessFile raf = null;
+
+    /* The kind of page source the file is read through */
+    private final PageSource.Kind pageSourceKind;
+
+    /* The page source used to read pages of the file */
+    private PageSource pageSource;
     
     /* The size of the record in the file (31 or 59 bytes)*/
     private int recordSize;
 
+    /* The header of the file */
+    private FileHeader header;
+
+    /* The size of a page of the file */
+    private int pageSize;
+
     /* The index file associated with the RFile */
-    private RFile indexFile;
+    private volatile RFile indexFile;
+
+    /* The B+-tree built over the sorted index file */
+    private volatile BPlusTree bPlusTree;
+
+    /* The hash index built over the keys of the file */
+    private volatile HashIndex hashIndex;
+
+    /* The scanner used to find a key among the records of a page */
+    private static final PageScanner SCANNER = PageScanner.create();
+
+    /* The circular scan shared by concurrent linear searches, created lazily */
+    private SharedScan sharedScan;
+
+    /* The fork-join scan of the data pages, created lazily */
+    private ParallelScan parallelScan;
+
+    /* The insert path in front of the data file, created lazily, read by lookups without locking */
+    private volatile LsmTree lsmTree;
+
+    /* Whether runs of the file were found on disk, null until a lookup without a tree checks */
+    private volatile Boolean lsmRuns;
+
+    /* The maximum number of bytes sort() keeps in memory */
+    private long sortMemoryBudget = DataClassConfiguration.SORT_MEMORY_BUDGET;
+
+    /* Packed keys and indices taken from the Index File, used by split() and readPage() only */
+    private IndexBuffer keyIndex;
 
-    /* data buffer */
-    private final byte[] buffer = new byte[DataClassConfiguration.PAGE_SIZE];
+    /* The first key of every page of the sorted index file, null if there is none */
+    private FenceIndex fenceIndex;
 
-    /*List of keys and indices taken from the Index File */
-    private List<FIndex> keyIndex;
+    /* The Bloom filter over the keys of the file, null if there is none */
+    private BloomFilter bloomFilter;
+
+    /* The number of lookups checked against the Bloom filter */
+    private final LongAdder bloomChecks = new LongAdder();
+
+    /* The number of lookups the Bloom filter answered without reading a page */
+    private final LongAdder bloomShortCircuits = new LongAdder();
+
+    /* The smallest and largest key of the sorted index file, kept when it is written or first searched */
+    private volatile int[] indexKeyRange;
+
+    /* The number of probes an interpolation search may waste before it falls back to binary search */
+    private static final int INTERPOLATION_MISSES = 2;
+
+    /**
+     * Opens an existing file. The page size and the record size are taken from its header.
+     * 
+     * @param filename the file name to be read
+     * @param mode the mode to be used
+     * @throws IOException if an I/O error occurs or the file has no valid header
+     */
+    public RFile(String filename, String mode) throws IOException {
+        this(filename, mode, 0, 0, DataClassConfiguration.PAGE_SOURCE);
+    }
 
     /**
      * Creates a new instance of the {@code RFile} class with the specified file name, mode, and record size.
@@ -51,11 +125,102 @@ public class RFile implements Closeable {
      * @throws IOException if an I/O error occurs
      */
     public RFile(String filename, String mode, int recordSize) throws IOException {
+        this(filename, mode, recordSize, DataClassConfiguration.PAGE_SOURCE);
+    }
+
+    /**
+     * Creates a new instance of the {@code RFile} class with the specified file name, mode, record size
+     * and the kind of page source its pages are read through.
+     * 
+     * @param filename the file name to be read
+     * @param mode the mode to be used
+     * @param recordSize the size of the record
+     * @param pageSourceKind the kind of page source to be used
+     * @throws IOException if an I/O error occurs
+     */
+    public RFile(String filename, String mode, int recordSize, PageSource.Kind pageSourceKind) throws IOException {
+        this(filename, mode, recordSize, 0, pageSourceKind);
+    }
+
+    /**
+     * Creates a new instance of the {@code RFile} class with the specified file name, mode, record size,
+     * page size and the kind of page source its pages are read through.
+     * <p>
+     * An empty file is given a new header with the record size and the page size (the
+     * {@link DataClassConfiguration#PAGE_SIZE default one} if 0). The header of an existing file
+     * is read instead and must agree with the record size and page size, unless they are 0.
+     * </p>
+     * 
+     * @param filename the file name to be read
+     * @param mode the mode to be used
+     * @param recordSize the size of the record, 0 to take it from the header
+     * @param pageSize the size of a page, 0 to take it from the header
+     * @param pageSourceKind the kind of page source to be used
+     * @throws IOException if an I/O error occurs or the header does not describe the file
+     */
+    public RFile(String filename, String mode, int recordSize, int pageSize, PageSource.Kind pageSourceKind) throws IOException {
         this.filename = filename;
-        this.recordSize = recordSize;
+        this.pageSourceKind = pageSourceKind;
         file = new File("files/"+this.filename);
         raf = instantiateRAF(file, mode);
-        keyIndex = new ArrayList<>();
+        // the header is read unbuffered, the frames of the file in the pool take its page size
+        pageSource = PageSource.open(pageSourceKind, raf, null);
+        header = instantiateHeader(mode, recordSize, pageSize);
+        if(BufferPool.getDefault() != null)
+            pageSource = new BufferedPageSource(pageSource, BufferPool.getDefault(), header.getPageSize());
+        this.recordSize = header.getRecordSize();
+        this.pageSize = header.getPageSize();
+        keyIndex = new IndexBuffer();
+        if(getFenceFile().exists())
+            fenceIndex = FenceIndex.read(getFenceFile());
+        if(getBloomFile().exists()) {
+            BloomFilter filter = BloomFilter.read(getBloomFile());
+            // a filter built for an older generation of the file is stale until split() rebuilds it
+            if(filter.getGeneration() == header.getGeneration())
+                bloomFilter = filter;
+        }
+    }
+
+    /**
+     * Reads the header of the file, or writes a new one if the file is empty.
+     * 
+     * @param mode the mode the file is opened with
+     * @param recordSize the expected record size, 0 for any
+     * @param pageSize the expected page size, 0 for any
+     * @return the header of the file
+     * @throws IOException if an I/O error occurs or the header does not agree with the arguments
+     */
+    private FileHeader instantiateHeader(String mode, int recordSize, int pageSize) throws IOException {
+        if(pageSource.length() == 0) {
+            if(recordSize <= 0)
+                throw new IOException(file + " is empty and no record size was given");
+
+            FileHeader h = new FileHeader(pageSize > 0 ? pageSize : DataClassConfiguration.PAGE_SIZE, recordSize);
+            if(mode.contains("w"))
+                h.write(raf);
+            return h;
+        }
+
+        FileHeader h = FileHeader.read(pageSource);
+        if(recordSize > 0 && h.getRecordSize() != recordSize)
+            throw new IOException(file + " has records of " + h.getRecordSize() + " bytes, not " + recordSize);
+        if(pageSize > 0 && h.getPageSize() != pageSize)
+            throw new IOException(file + " has pages of " + h.getPageSize() + " bytes, not " + pageSize);
+        return h;
+    }
+
+    /**
+     * Writes the header of the file and drops the cached pages of the file. Every write draws
+     * a new random {@link FileHeader#getGeneration() generation} of the file, so the Bloom filter
+     * built for the previous one is no longer used, nor one left over by a deleted file of the
+     * same name.
+     * 
+     * @throws IOException if an I/O error occurs
+     */
+    public void writeHeader() throws IOException {
+        header.newGeneration();
+        header.write(raf);
+        pageSource.invalidate();
     }
 
     /**
@@ -81,7 +246,42 @@ public class RFile implements Closeable {
      * @throws IOException if an I/O error occurs
      */
     protected RFile instantiateRFile(String filename, String mode, int recordSize) throws IOException {
-        return indexFile == null ? new RFile(filename, mode, recordSize) : indexFile;
+        if(indexFile != null)
+            return indexFile;
+
+        return new RFile(filename, mode, recordSize, pageSize, pageSourceKind);
+    }
+
+    /**
+     * Opens the index file of the file once, for the searches on it. Concurrent searches
+     * share the index file opened by the first one.
+     * 
+     * @return the index file
+     * @throws IOException if an I/O error occurs
+     */
+    synchronized RFile openIndexFile() throws IOException {
+        indexFile = instantiateRFile("IndexFiles/indexFile_"+this.filename, "rw", IndexBuffer.ENTRY_SIZE);
+        return indexFile;
+    }
+
+    /**
+     * Checks a key against the Bloom filter of the file before any page of the file or of its
+     * index file is read. The filter is only used if it was built for the current
+     * {@link FileHeader#getGeneration() generation} of the file.
+     * 
+     * @param key the key to search for
+     * @return false if the key is certainly not in the file, and the lookup can stop
+     */
+    private boolean mayContain(int key) {
+        if(bloomFilter == null || bloomFilter.getGeneration() != header.getGeneration())
+            return true;
+
+        bloomChecks.increment();
+        if(bloomFilter.mightContain(key))
+            return true;
+
+        bloomShortCircuits.increment();
+        return false;
     }
 
     /**
@@ -93,31 +293,68 @@ public class RFile implements Closeable {
      * This function is tested on {@link modelTesting.TestGenerator#randomSearchCounter randomSearchCounter}
      * and also in {@link modelTesting.TestGenerator#randomSearchCounterIndexFile randomIndexSearchCounter}
      * </p>
+     * <p>
+     * If {@link DataClassConfiguration#SHARED_SCAN} is set the search rides the {@link SharedScan}
+     * of the file, see {@link #sharedSearchFile(int)}.
+     * </p>
      * @param key the unique key of a record
-     * @return an array of two integers. The first integer is either 0 or 1, depending on whether the elements
-     *         are found in the file. The second integer is the total number of disk accesses
+     * @return the total number of disk accesses
      * @throws IOException if an I/O error occurs
      */
     public int searchFile(int key) throws IOException {
+        if(DataClassConfiguration.SHARED_SCAN)
+            return sharedSearchFile(key);
+        if(!mayContain(key))
+            return 0;
+
         int diskAccesses = 0;
-        int pos = 0;
-        byte[] page = new byte[DataClassConfiguration.PAGE_SIZE];
+        long lastPage = header.getLastPage();
+        byte[] page = new byte[pageSize];
 
-        raf.seek(0);
-        while(pos < raf.length()) {
-            Arrays.fill(page, (byte) 0);
-            raf.read(page);
+        for(long p = 1; p <= lastPage; ++p) {
+            pageSource.read(header.position(p), page);
             diskAccesses++;
             if(isInPage(key, page)) {
                 return diskAccesses;
             }
-            pos+= DataClassConfiguration.PAGE_SIZE;
-            raf.seek(pos);
         }
 
         return diskAccesses;
     }
     
+    /**
+     * Searches the file page by page like {@link #searchFile(int)}, sharing the pages read with
+     * the other threads searching the file at the same time. The search starts at the page the
+     * shared scan is about to read and ends once the key is found or the scan has wrapped around.
+     * 
+     * @param key the unique key of a record
+     * @return the number of pages this search saw, its disk accesses
+     * @throws IOException if an I/O error occurs
+     */
+    public int sharedSearchFile(int key) throws IOException {
+        if(!mayContain(key))
+            return 0;
+
+        return getSharedScan().search(key);
+    }
+
+    /**
+     * Searches the data pages of the file for a key on the common {@link java.util.concurrent.ForkJoinPool},
+     * in chunks of {@link ParallelScan#CHUNK_PAGES} pages, stopping every worker once the key is found.
+     * This function is tested on {@link modelTesting.TestGenerator#randomSearchCounter randomSearchCounter}
+     * when the test runs in parallel scan mode.
+     * 
+     * @param key the unique key of a record
+     * @return the total number of pages read by the workers
+     * @throws IOException if an I/O error occurs
+     */
+    public int parallelSearchFile(int key) throws IOException {
+        if(!mayContain(key))
+            return 0;
+
+        return getParallelScan().search(key);
+    }
+
     /**
      * It takes a key and a record, and returns true if the key is in the record
      * 
@@ -126,58 +363,61 @@ public class RFile implements Closeable {
      * @return The key is being returned.
      */
     public boolean isInRecord(int key, byte[] rec) {
-        byte[] buf = Arrays.copyOfRange(rec, 0, Integer.BYTES);
-        return key == Utils.byteArrayToInt(buf);
+        return key == Utils.byteArrayToInt(rec, 0);
     }
 
     /**
      * This function takes a key and a page as input, and returns true if the key is in the page, and
-     * false otherwise
+     * false otherwise. The keys are compared in place by the {@link PageScanner} without copying
+     * the records out of the page.
      * 
      * @param key the key to search for
      * @param page the page to search
      * @return A boolean value.
      */
     public boolean isInPage(int key, byte[] page) {
-        for(int pos = 0; pos < page.length; pos += recordSize){
-            byte[] rec = Arrays.copyOfRange(page, pos, pos+recordSize);
-            if(isInRecord(key, rec)) return true;
-        }
-
-        return false;
+        if(header.isCompressed())
+            return IndexPage.find(page, key) >= 0;
+        return SCANNER.indexOf(key, page, recordSize) >= 0;
     }
 
     /**
      * It reads the index file and performs a binary search on it to find the key.
+     * The search covers the entries counted in the header of the index file.
+     * <p>
+     * Entries can only be addressed one by one in fixed size pages, so the search needs an index
+     * file written with {@link DataClassConfiguration#COMPRESSED_INDEX} turned off. The search over
+     * the pages of a {@link IndexPage compressed} index file is {@link #binarySearch2(int)}.
+     * </p>
      * 
      * @param key the key to search for
      * @return The number of disk accesses.
+     * @throws IOException if an I/O error occurs or the index file is written in compressed pages
      */
     public int binarySearch(int key) throws IOException {
         int diskAccesses = 0;
-        int pos = 0;
         byte[] keyBytes = new byte[Integer.BYTES];
         
-        indexFile = instantiateRFile("IndexFiles/indexFile_"+this.filename, "rw", recordSize);
-        int EOF = (int) indexFile.getRaf().length();
-        indexFile.getRaf().seek(0);
+        RFile index = openIndexFile();
+        if(index.getHeader().isCompressed())
+            throw new IOException("The entries of the compressed index file of " + filename + " cannot be probed one by one");
+        if(!mayContain(key))
+            return diskAccesses;
+        long pos = 0;
+        long EOF = index.getHeader().getRecordCount() - 1;
         
         while(pos <= EOF) {
-            int mid = (pos + EOF)/2;
-            
-            if(mid%(2*Integer.BYTES) != 0)
-                mid += (mid%(2*Integer.BYTES));
+            long mid = (pos + EOF)/2;
             
-            indexFile.getRaf().seek(mid);
-            indexFile.getRaf().read(keyBytes);
+            index.getPageSource().read(index.getHeader().position(1) + mid*IndexBuffer.ENTRY_SIZE, keyBytes);
             diskAccesses++;
             
             if(Utils.byteArrayToInt(keyBytes) == key)
                 return diskAccesses;
             else if(Utils.byteArrayToInt(keyBytes) < key)
-                pos = mid + 2*Integer.BYTES;
+                pos = mid + 1;
             else
-                EOF = mid - 2*Integer.BYTES;
+                EOF = mid - 1;
         }
 
         return diskAccesses;
@@ -186,6 +426,10 @@ public class RFile implements Closeable {
     /**
      * Binary search algorithm implementation on file pages.
      * This function is tested on {@link modelTesting.TestGenerator#randomBinarySearchCounter randomBinarySearchCounter}
+     * <p>
+     * The pages of the index file are always read, even if it has a {@link FenceIndex}; the
+     * search over the fences is {@link #fenceSearch(int)}.
+     * </p>
      * 
      * @param key
      * @return the number of disk accesses in the index file.
@@ -193,194 +437,709 @@ public class RFile implements Closeable {
      */
     public int binarySearch2(int key) throws IOException {
         int diskAccesses = 0;
-        int pos = 0;
-        indexFile = instantiateRFile("IndexFiles/indexFile_"+this.filename, "rw", recordSize);
-        int EOF = (int) indexFile.getRaf().length();
+        RFile index = openIndexFile();
+        if(!mayContain(key))
+            return diskAccesses;
+
+        byte[] indexPage = new byte[index.getPageSize()];
+
+        long pos = 1;
+        long EOF = index.getHeader().getLastPage();
 
         while(pos <= EOF) {
-            Arrays.fill(buffer, (byte) 0);
-            int mid = (pos + EOF)/2;
+            long mid = (pos + EOF)/2;
             
-            keyIndex.clear();
-            indexFile.getRaf().seek(mid);
-            indexFile.getRaf().read(buffer);
+            index.getPageSource().read(index.getHeader().position(mid), indexPage);
             diskAccesses++;
-            readPage(buffer);
+            long entry = IndexPage.find(indexPage, key);
 
-            if(keyIndex.isEmpty())
-                return diskAccesses;
-            if(binarySearchList(key) == 1)
+            if(entry >= 0 || entry == IndexPage.ABSENT)
                 return diskAccesses;
-            else if(keyIndex.get(keyIndex.size()-1).key() < key)
-                pos = mid + DataClassConfiguration.PAGE_SIZE;
-            else if(keyIndex.get(0).key() > key)
-                EOF = mid - DataClassConfiguration.PAGE_SIZE;
-            else if(inRange(key))
-                break;
-   
+            else if(entry == IndexPage.ABOVE)
+                pos = mid + 1;
+            else
+                EOF = mid - 1;
         }
 
-
         return diskAccesses;
     }
     
     /**
-     * Checks if the given key is in range of keys in a list.
+     * Searches the sorted index file for a key with its {@link FenceIndex}: the page of the key
+     * is found with a binary search over the first keys of the pages, in memory, and only that
+     * page is read. A lookup reads at most one index page, and at most two pages once the record
+     * is read from the data file.
+     * This function is tested on {@link modelTesting.TestGenerator#randomFenceSearchCounter randomFenceSearchCounter}
      * 
      * @param key the key to search for
-     * @return The keyIndex is being returned.
+     * @return the number of disk accesses in the index file, 0 or 1
+     * @throws IOException if an I/O error occurs or the index file has no up to date fence index
      */
-    private boolean inRange(int key) {
-        return keyIndex.get(0).key() < key && keyIndex.get(keyIndex.size()-1).key() > key;
+    public int fenceSearch(int key) throws IOException {
+        RFile index = openIndexFile();
+        if(fenceIndex == null || !fenceIndex.matches(index.getHeader()))
+            throw new IOException("The index file of " + filename + " has no up to date fence index");
+        if(!mayContain(key))
+            return 0;
+
+        long page = fenceIndex.page(key);
+        if(page == 0)
+            return 0;
+
+        byte[] indexPage = new byte[index.getPageSize()];
+        index.getPageSource().read(index.getHeader().position(page), indexPage);
+        IndexPage.find(indexPage, key);
+        return 1;
     }
 
     /**
-     * Performs binary search algorithm in the list {@link model.RFile#keyIndex keyIndex}
-     * for a given key.
+     * Interpolation search on the pages of the sorted index file. The page of the key is
+     * predicted from the smallest and largest key still in range, assuming the keys are spread
+     * uniformly, which makes a lookup read about {@code log log(pages)} pages. If a probe fails
+     * to halve the range {@link #INTERPOLATION_MISSES} times the keys are skewed and the search
+     * falls back to probing the middle page, like {@link #binarySearch2(int)}.
+     * <p>
+     * The smallest and largest key of the index are kept in memory, like its fences: they are
+     * known when the sorted index file is written, and read from its first and last page on the
+     * first search if the index was written by an earlier run. Those two reads belong to opening
+     * the index and are not charged to any lookup, so every lookup counts only the pages it probes.
+     * This function is tested on {@link modelTesting.TestGenerator#randomInterpolationSearchCounter randomInterpolationSearchCounter}
+     * </p>
      * 
      * @param key the key to search for
-     * @return The index of the key in the keyIndex list.
-     */
-    private int binarySearchList(int key) {
-        int left = 0;
-        int right = keyIndex.size()-1;
-        int mid = 0;
-
-        while(left <= right) {
-            mid = (left+right)/2;
-            if(keyIndex.get(mid).key() == key)
-                return 1;
-            else if(keyIndex.get(mid).key() < key)
-                left = mid + 1;
-            else
-                right = mid - 1;
-        } 
+     * @return the number of disk accesses in the index file.
+     * @throws IOException if an I/O error occurs
+     */
+    public int interpolationSearch(int key) throws IOException {
+        int diskAccesses = 0;
+        RFile index = openIndexFile();
+        FileHeader indexHeader = index.getHeader();
+        long entries = indexHeader.getRecordCount();
+        // compressed pages hold a varying number of entries, the average is close enough to predict a page
+        long pages = Math.max(1, indexHeader.getLastPage());
+        long entriesInPage = indexHeader.isCompressed() ? Math.max(1, (entries + pages - 1)/pages) : indexHeader.getPageSize()/IndexBuffer.ENTRY_SIZE;
+
+        if(entries == 0 || !mayContain(key))
+            return diskAccesses;
+        if(indexKeyRange == null)
+            readIndexKeyRange(index);
+
+        long low = 1;
+        long high = indexHeader.getLastPage();
+        int[] keyRange = indexKeyRange;
+        long lowKey = keyRange[0];
+        long highKey = keyRange[1];
+        int misses = 0;
+        byte[] indexPage = new byte[index.getPageSize()];
+        IndexBuffer keys = new IndexBuffer();
+
+        while(low <= high && key >= lowKey && key <= highKey) {
+            long mid;
+            if(misses < INTERPOLATION_MISSES && highKey > lowKey) {
+                long first = (low - 1)*entriesInPage;
+                long last = Math.min(high*entriesInPage, entries) - 1;
+                long entry = first + (key - lowKey)*(last - first)/(highKey - lowKey);
+                mid = Math.min(high, Math.max(low, entry/entriesInPage + 1));
+            } else {
+                mid = (low + high)/2;
+            }
 
-        return 0;
+            keys.clear();
+            index.getPageSource().read(indexHeader.position(mid), indexPage);
+            diskAccesses++;
+            keys.readIndexPage(indexPage);
+
+            if(keys.isEmpty() || binarySearchList(keys, key) == 1)
+                return diskAccesses;
+
+            long range = high - low + 1;
+            if(keys.key(keys.size()-1) < key) {
+                low = mid + 1;
+                lowKey = keys.key(keys.size()-1) + 1L;
+            } else if(keys.key(0) > key) {
+                high = mid - 1;
+                highKey = keys.key(0) - 1L;
+            } else {
+                break;
+            }
+            if(2*(high - low + 1) > range)
+                misses++;
+        }
+
+        return diskAccesses;
+    }
+
+    /**
+     * Reads the smallest and largest key of the sorted index file into {@link #indexKeyRange}.
+     * 
+     * @param index the index file
+     * @throws IOException if an I/O error occurs
+     */
+    private void readIndexKeyRange(RFile index) throws IOException {
+        FileHeader indexHeader = index.getHeader();
+        byte[] indexPage = new byte[index.getPageSize()];
+        IndexBuffer keys = new IndexBuffer();
+        int[] range = new int[2];
+
+        index.getPageSource().read(indexHeader.position(1), indexPage);
+        keys.readIndexPage(indexPage);
+        range[0] = keys.key(0);
+
+        keys.clear();
+        index.getPageSource().read(indexHeader.position(indexHeader.getLastPage()), indexPage);
+        keys.readIndexPage(indexPage);
+        range[1] = keys.key(keys.size()-1);
+
+        indexKeyRange = range;
+    }
+
+    /**
+     * Performs binary search algorithm in the keys of an index page for a given key.
+     * 
+     * @param keys the keys of an index page
+     * @param key the key to search for
+     * @return 1 if the key is in the buffer, 0 otherwise.
+     */
+    private static int binarySearchList(IndexBuffer keys, int key) {
+        return keys.binarySearch(key) >= 0 ? 1 : 0;
     }
 
     /**
      * It reads a file, extracts the keys from the records, and writes them to a new file.
+     * The index file has the page size of the file and {@link IndexBuffer#ENTRY_SIZE}-byte records.
+     * A {@link BloomFilter} over the keys, with the {@link DataClassConfiguration#BLOOM_FALSE_POSITIVE_RATE
+     * configured} false positive rate, is built on the way and written to its {@link #getBloomFile() sidecar}.
      *
      *@return A new RFile object representing the index file.
      *@throws IOException if there is an I/O error while accessing the files.
      */
     public RFile split() throws IOException {
-        int pos = 0;
-        
         assert keyIndex.isEmpty();
 
-        byte[] page = new byte[DataClassConfiguration.PAGE_SIZE];
-        indexFile = instantiateRFile("IndexFiles/indexFile_"+this.filename, "rw", recordSize);
-        
-        raf.seek(0);
-        indexFile.getRaf().seek(0);
-        while(pos < raf.length()) {
-            raf.read(page);
-            extractInts(page, pos);
-            pos += DataClassConfiguration.PAGE_SIZE;
-            raf.seek(pos);
-        }
-
+        indexFile = instantiateRFile("IndexFiles/indexFile_"+this.filename, "rw", IndexBuffer.ENTRY_SIZE);
+        extractInts(keyIndex);
+        buildBloomFilter(keyIndex);
         putInts();
         return indexFile;
     }
 
+    /**
+     * Builds the index file from the (key, position) entries of all the records of the file,
+     * collected by a {@link BulkLoader} while it wrote them, so the data file is not read again.
+     * The entries are sorted in memory, unless the records were written in key order, and
+     * written as the sorted index file with its {@link FenceIndex}, next to the
+     * {@link BloomFilter} of the file.
+     * 
+     * @param entries the entries of the records, cleared on return
+     * @param sorted whether the entries are already in key order
+     * @return the index file
+     * @throws IOException if an I/O error occurs
+     */
+    RFile loadIndex(IndexBuffer entries, boolean sorted) throws IOException {
+        indexFile = instantiateRFile("IndexFiles/indexFile_"+this.filename, "rw", IndexBuffer.ENTRY_SIZE);
+        buildBloomFilter(entries);
+        if(!sorted)
+            entries.sort();
+        writeIndex(entries, true);
+        return indexFile;
+    }
+
+    /**
+     * Builds the {@link BloomFilter} of the file over the given keys, with the
+     * {@link DataClassConfiguration#BLOOM_FALSE_POSITIVE_RATE configured} false positive rate,
+     * and writes it to its {@link #getBloomFile() sidecar}, stamped with the generation of the file.
+     */
+    private void buildBloomFilter(IndexBuffer keys) throws IOException {
+        if(DataClassConfiguration.BLOOM_FALSE_POSITIVE_RATE > 0) {
+            bloomFilter = BloomFilter.of(keys, DataClassConfiguration.BLOOM_FALSE_POSITIVE_RATE);
+            bloomFilter.setGeneration(header.getGeneration());
+            bloomFilter.write(getBloomFile());
+        } else {
+            bloomFilter = null;
+            getBloomFile().delete();
+        }
+    }
+
+    /**
+     * Builds a {@link HashIndex} in pages of the page size of the file over its keys, read page by
+     * page the same way {@link model.RFile#split() split} does. The index is stored in
+     * {@code files/IndexFiles/hashIndex_<filename>}.
+     * <p>
+     * Used in {@link model.RFile#hashSearch(int key) hash search}
+     * </p>
+     * 
+     * @return the HashIndex object
+     * @throws IOException if an I/O error occurs
+     */
+    public synchronized HashIndex buildHashIndex() throws IOException {
+        HashIndex index = hashIndex;
+        if(index == null) {
+            // the index is built anew, with the page size of the file rather than the one a file left by an earlier run has
+            File hashFile = new File("files/IndexFiles/hashIndex_"+this.filename);
+            hashFile.delete();
+            index = new HashIndex(hashFile, pageSize, pageSourceKind);
+        }
+
+        index.build(extractInts(new IndexBuffer()));
+        hashIndex = index;
+        return index;
+    }
+
+    /**
+     * Returns the hash index of the file, building it if it does not exist yet. Concurrent
+     * searches build it once.
+     * 
+     * @return the HashIndex object
+     * @throws IOException if an I/O error occurs
+     */
+    private synchronized HashIndex openHashIndex() throws IOException {
+        return hashIndex != null ? hashIndex : buildHashIndex();
+    }
+
+    /**
+     * Searches for the key in the hash index of the file, building the index first if it
+     * does not exist. A lookup reads the bucket of the key and its overflow pages, if any.
+     * This function is tested on {@link modelTesting.TestGenerator#randomHashSearchCounter randomHashSearchCounter}
+     * 
+     * @param key the key to search for
+     * @return the number of disk accesses in the hash index file.
+     * @throws IOException if an I/O error occurs
+     */
+    public int hashSearch(int key) throws IOException {
+        HashIndex index = hashIndex;
+        if(index == null)
+            index = openHashIndex();
+        if(!mayContain(key))
+            return 0;
+
+        return index.search(key);
+    }
+
     /**
      * Writes the key and index values from the {@link model.RFile#keyIndex keyIndex}
-     * list to the index file. This method uses an array buffer to minimize the number
-     * of disk writes required.
+     * buffer to the index file, from page 1 on, and clears it. Whole pages are written
+     * in bulk to minimize the number of disk writes required. The header of the index
+     * file is updated with the number of entries and pages written.
+     * <p>
+     * If the header of the data file says its records are sorted by key, as in the runs of a
+     * {@link LsmTree}, the entries are already in key order: the index file is marked sorted,
+     * written in {@link IndexPage compressed} pages, and its {@link FenceIndex} is written right
+     * away, so no {@link #sort()} is needed.
+     * </p>
      * <p>
-     * Used in {@link model.RFile#split() split} and {@link model.RFile#sort() sort}.
+     * Used in {@link model.RFile#split() split}.
      * </p>
      *
      * @throws IOException if an I/O error occurs while writing to the index file
      */
     public void putInts() throws IOException{
-        int index=0;
-
-        indexFile.getRaf().seek(0);
-        while(!keyIndex.isEmpty()) {
-            System.arraycopy(Utils.intsToByteArray(keyIndex.get(0).key(), keyIndex.get(0).index()),0, buffer, index, 2*Integer.BYTES);
-            index+= 2*Integer.BYTES;
-            if(buffer.length - index < 2*Integer.BYTES) {
-                index = 0;
-                indexFile.getRaf().write(buffer);
-                Arrays.fill(buffer, (byte) 0);
-            }
-            keyIndex.remove(0);
+        writeIndex(keyIndex, header.isSorted());
+    }
+
+    private void writeIndex(IndexBuffer entries, boolean sorted) throws IOException {
+        FileHeader indexHeader = indexFile.getHeader();
+        IndexPage.Format format = sorted ? indexFormat() : IndexPage.Format.FIXED;
+        int[] fences = null;
+
+        invalidateIndexes();
+        indexKeyRange = null;
+        fenceIndex = null;
+        getFenceFile().delete();
+        indexHeader.setRecordCount(entries.size());
+        indexFile.getRaf().seek(indexHeader.position(1));
+        if(sorted) {
+            IndexPage.Writer writer = new IndexPage.Writer(indexFile.getRaf(), indexHeader.getPageSize(), format);
+            for(int i = 0; i < entries.size(); ++i)
+                writer.add(entries.get(i));
+            indexHeader.setLastPage(writer.finish());
+            fences = writer.getFences();
+            if(!entries.isEmpty())
+                indexKeyRange = new int[] {entries.key(0), entries.key(entries.size()-1)};
+            entries.clear();
+        } else {
+            indexHeader.setLastPage(entries.write(indexFile.getRaf(), indexHeader.getPageSize()));
+        }
+        indexHeader.setSorted(sorted);
+        indexHeader.setCompressed(format.isCompressed());
+        indexFile.getRaf().setLength(indexHeader.position(indexHeader.getLastPage() + 1));
+        indexFile.writeHeader();
+
+        if(sorted) {
+            fenceIndex = new FenceIndex(fences, indexHeader.getRecordCount());
+            fenceIndex.write(getFenceFile());
         }
+    }
 
-        indexFile.getRaf().write(buffer);
-        Arrays.fill(buffer, (byte) 0);
+    /**
+     * Closes and drops the B+-tree and the hash index of the file, built over an index file
+     * that is being rewritten, so the next searches build them again over the new one.
+     */
+    private synchronized void invalidateIndexes() throws IOException {
+        if(bPlusTree != null)
+            bPlusTree.close();
+        if(hashIndex != null)
+            hashIndex.close();
+        bPlusTree = null;
+        hashIndex = null;
+    }
+
+    /**
+     * Returns the format the sorted index file is written in: {@link IndexPage compressed}
+     * pages if {@link DataClassConfiguration#COMPRESSED_INDEX} is set and the records of the
+     * file can be described by them, fixed size entries otherwise.
+     */
+    private IndexPage.Format indexFormat() {
+        if(DataClassConfiguration.COMPRESSED_INDEX && recordSize <= IndexPage.MAX_RECORD_SIZE && recordSize <= pageSize)
+            return IndexPage.Format.compressed(recordSize, pageSize);
+        return IndexPage.Format.FIXED;
     }
 
     /**
      * Sorts the index file based on the key in each record.
+     * <p>
+     * The index file is sorted by an {@link ExternalIndexSorter} within
+     * {@link model.RFile#sortMemoryBudget sortMemoryBudget} bytes of memory. Indexes larger than
+     * the budget are spilled as sorted runs under {@code files/IndexFiles/} and merged back.
+     * The sorted entries are written in {@link IndexPage compressed} pages, unless
+     * {@link DataClassConfiguration#COMPRESSED_INDEX} is turned off, so the sorted index file
+     * has fewer pages than the unsorted one and the searches over it read fewer of them.
+     * The first key of every sorted page is kept as the {@link FenceIndex} of the file and
+     * written to its {@link #getFenceFile() sidecar}. The B+-tree and the hash index built over
+     * the previous index file are dropped.
+     * </p>
      * 
      * @throws IOException If there is an error reading or writing to the index file.
      *
      */
     public void sort() throws IOException {
-        int pos = 0;
-        long EOF = indexFile.raf.length();
-        byte[] page = new byte[DataClassConfiguration.PAGE_SIZE];
+        FileHeader indexHeader = indexFile.getHeader();
 
-        assert keyIndex.isEmpty();
+        ExternalIndexSorter sorter = new ExternalIndexSorter(sortMemoryBudget, indexFile.getFile().getAbsoluteFile().getParentFile());
+
+        IndexPage.Format format = indexFormat();
+        invalidateIndexes();
+        indexKeyRange = null;
+        indexHeader.setLastPage(sorter.sort(indexFile.getPageSource(), indexFile.getRaf(), indexHeader, format));
+        indexHeader.setSorted(true);
+        indexHeader.setCompressed(format.isCompressed());
+        indexFile.getRaf().setLength(indexHeader.position(indexHeader.getLastPage() + 1));
+        indexFile.writeHeader();
+
+        fenceIndex = new FenceIndex(sorter.getFences(), indexHeader.getRecordCount());
+        fenceIndex.write(getFenceFile());
+        if(indexHeader.getRecordCount() > 0)
+            readIndexKeyRange(indexFile);
+    }
 
-        indexFile.getRaf().seek(0);
-        while(pos < EOF) {
-            indexFile.getRaf().read(page);
-            readPage(page);
-            pos += DataClassConfiguration.PAGE_SIZE;
-            indexFile.getRaf().seek(pos);
+    /**
+     * Builds a {@link BPlusTree} with nodes of the page size of the file over the index file, which is sorted
+     * first unless its header says it already is. The tree is stored in
+     * {@code files/IndexFiles/bPlusTree_<filename>}.
+     * <p>
+     * Used in {@link model.RFile#bPlusTreeSearch(int key) B+-tree search}
+     * </p>
+     * 
+     * @return the BPlusTree object
+     * @throws IOException if an I/O error occurs
+     */
+    public synchronized BPlusTree buildBPlusTree() throws IOException {
+        if(indexFile == null)
+            split();
+        if(!indexFile.getHeader().isSorted())
+            sort();
+
+        BPlusTree tree = bPlusTree;
+        if(tree == null) {
+            // the tree is built anew, with the page size of the file rather than the one a file left by an earlier run has
+            File treeFile = new File("files/IndexFiles/bPlusTree_"+this.filename);
+            treeFile.delete();
+            tree = new BPlusTree(treeFile, pageSize, pageSourceKind);
         }
+        tree.bulkLoad(indexFile.getPageSource(), indexFile.getHeader());
+        bPlusTree = tree;
+        return tree;
+    }
 
-        Collections.sort(keyIndex, (k1, k2) -> Utils.compare(k1.key(), k2.key()));  
-        putInts();
+    /**
+     * Returns the B+-tree of the index file, building it if it does not exist yet. Concurrent
+     * searches build it once.
+     * 
+     * @return the BPlusTree object
+     * @throws IOException if an I/O error occurs
+     */
+    private synchronized BPlusTree openBPlusTree() throws IOException {
+        return bPlusTree != null ? bPlusTree : buildBPlusTree();
     }
 
     /**
-     * It reads a page of data from the Index File into 
-     * {@link model.RFile#keyIndex keyIndex} list.
+     * Searches for the key in the B+-tree of the index file, building the tree first if it
+     * does not exist. A lookup reads one node per level of the tree.
+     * This function is tested on {@link modelTesting.TestGenerator#randomBPlusTreeSearchCounter randomBPlusTreeSearchCounter}
+     * 
+     * @param key the key to search for
+     * @return the number of disk accesses in the B+-tree file.
+     * @throws IOException if an I/O error occurs
+     */
+    public int bPlusTreeSearch(int key) throws IOException {
+        BPlusTree tree = bPlusTree;
+        if(tree == null)
+            tree = openBPlusTree();
+        if(!mayContain(key))
+            return 0;
+
+        return tree.search(key);
+    }
+
+    /**
+     * Opens a {@link BulkLoader} that replaces the records of the file with the records added
+     * to it, and builds the sorted index file when it is closed.
+     * 
+     * @return the bulk loader
+     */
+    public BulkLoader bulkLoader() {
+        return new BulkLoader(this);
+    }
+
+    /**
+     * Replaces the records of the file with the given records and builds the sorted index file,
+     * its fences and the Bloom filter of the file, in one pass over the records: the data pages
+     * are written in large batches while the (key, position) entries are collected in memory,
+     * 8 bytes per record, and sorted at the end. A {@link java.util.stream.Stream Stream} is
+     * loaded through its {@link java.util.stream.Stream#iterator() iterator}. The B+-tree and
+     * the hash index of the previous records are dropped and built again on the next search.
+     * 
+     * @param records the records, with unique positive keys
+     * @return the index file
+     * @throws IOException if an I/O error occurs
+     */
+    public RFile bulkLoad(Iterator<Record> records) throws IOException {
+        try(BulkLoader loader = bulkLoader()) {
+            while(records.hasNext())
+                loader.add(records.next());
+        }
+        return indexFile;
+    }
+
+    /**
+     * Inserts a record through the {@link LsmTree} of the file, replacing the record of the key
+     * if there is one. The data file itself is not written, the record goes to the memory table
+     * and later to a sorted run.
+     * 
+     * @param key the key of the record, positive
+     * @param data the data of the record, at most {@code recordSize - 4} bytes
+     * @throws IOException if an I/O error occurs
+     */
+    public void insert(int key, byte[] data) throws IOException {
+        getLsmTree().insert(key, data);
+    }
+
+    /**
+     * Searches for a key the way a lookup sees the file after inserts: in the memory table and
+     * the runs of the {@link LsmTree}, newest first, and then in the data file, with
+     * {@link #binarySearch2(int)} if the index file is sorted and {@link #searchFile(int)} otherwise.
+     * 
+     * @param key the key to search for
+     * @return the number of disk accesses in the runs and the file
+     * @throws IOException if an I/O error occurs
+     */
+    public int lsmSearch(int key) throws IOException {
+        Lookup lookup = new Lookup(key);
+        if(lsmFind(key, lookup) != null)
+            return lookup.getDiskAccesses();
+
+        return lookup.getDiskAccesses() + (hasSortedIndex() ? binarySearch2(key) : searchFile(key));
+    }
+
+    /**
+     * Looks a key up and returns its record with what the lookup cost. The memory table and
+     * the runs of the {@link LsmTree}, if the file has one, are checked first, newest first, then
+     * the Bloom filter of the file. If the index file is sorted the entry of the key is found in
+     * it, reading a single index page when its {@link FenceIndex} is up to date and a binary
+     * search over the pages otherwise, and the record is read at the position the entry gives
+     * with one positional read of {@code recordSize} bytes. Without a sorted index the data file
+     * is scanned page by page.
      * <p>
-     * Used in {@link model.RFile#sort() sort} and {@link model.RFile#binarySearch2(int key) binary search}
+     * The record is returned as a read-only view without copying it: of the frame of its page
+     * when the {@link BufferPool} is enabled, pinned until the lookup is {@link Lookup#close()
+     * closed}, and of the mapping itself if the file is read through an unbuffered
+     * {@link PageSource.Kind#MAPPED mapped} page source. It is safe to call from several threads.
      * </p>
      * 
-     * @param page the byte array that contains the data
-     * @return A list of FIndex objects.
+     * @param key the key to search for
+     * @return the record of the key, if any, and the index and data pages read
+     * @throws IOException if an I/O error occurs
+     */
+    public Lookup get(int key) throws IOException {
+        Lookup lookup = new Lookup(key);
+        ByteBuffer record = lsmFind(key, lookup);
+
+        if(record == null && mayContain(key)) {
+            if(hasSortedIndex()) {
+                long position = indexLookup(openIndexFile(), key, lookup);
+                if(position >= 0) {
+                    lookup.dataPageRead();
+                    record = readRecord(position, lookup);
+                }
+            } else {
+                record = scanLookup(key, lookup);
+            }
+        }
+
+        lookup.setRecord(record);
+        return lookup;
+    }
+
+    /**
+     * Reads the record at a position of the data file as a view of the frame of its page,
+     * leased to the lookup, or as the view of the unbuffered page source.
      */
-    public List<FIndex> readPage(byte[] page) {
-        if(page == null) throw new NullPointerException("page should not be null");
+    private ByteBuffer readRecord(long position, Lookup lookup) throws IOException {
+        if(pageSource instanceof BufferedPageSource) {
+            BufferedPageSource.Lease lease = ((BufferedPageSource) pageSource).lease(position, recordSize);
+            lookup.setLease(lease);
+            return lease.getView();
+        }
+        return pageSource.view(position, recordSize);
+    }
 
-        int pos = 0;
-        for(int i = 0; i < page.length/(2*Integer.BYTES); i++) {
-            if(Utils.byteArrayToInt(Arrays.copyOfRange(page, pos, pos+Integer.BYTES)) != 0)
-                keyIndex.add(new FIndex(Utils.byteArrayToInt(Arrays.copyOfRange(page, pos, pos + Integer.BYTES)),
-                                        Utils.byteArrayToInt(Arrays.copyOfRange(page, pos + Integer.BYTES, pos + 2*Integer.BYTES))));
-            pos += 2*Integer.BYTES;
+    /**
+     * Looks a key up in the {@link LsmTree} of the file without opening one when it has none:
+     * a file nothing was inserted into, now or by an earlier run, has no memory table or run
+     * to check, and its lookups take no lock and start no compaction thread.
+     * 
+     * @param key the key to search for
+     * @param lookup counts the pages read in the runs
+     * @return a read-only view of the newest record of the key, or null
+     * @throws IOException if an I/O error occurs
+     */
+    private ByteBuffer lsmFind(int key, Lookup lookup) throws IOException {
+        LsmTree tree = lsmTree;
+        if(tree == null) {
+            Boolean runs = lsmRuns;
+            if(runs == null)
+                lsmRuns = runs = LsmTree.hasRuns(filename);
+            if(!runs)
+                return null;
+            tree = getLsmTree();
         }
-        return keyIndex;
+        return tree.find(key, lookup);
+    }
+
+    /**
+     * Returns the records whose keys lie in {@code [lo, hi]}, in key order, following the
+     * sorted index file from the first index page of {@code lo} and reading
+     * {@link DataClassConfiguration#SCAN_READ_AHEAD} index pages ahead on the I/O threads of
+     * {@link RangeScan}, so the blocking reads do not take the workers of the common
+     * {@link ForkJoinPool}. The records inserted into the {@link LsmTree} of the file are not
+     * part of the scan, see {@link RangeScan}.
+     * 
+     * @param lo the smallest key of the range
+     * @param hi the largest key of the range, the range is empty if it is smaller than lo
+     * @return a lazy iterator over read-only views of the records
+     * @throws IOException if an I/O error occurs or the index file is not sorted
+     */
+    public RangeScan scan(int lo, int hi) throws IOException {
+        RFile index = openIndexFile();
+        if(!index.getHeader().isSorted())
+            throw new IOException("The index file of " + filename + " is not sorted");
+
+        FenceIndex fences = DataClassConfiguration.FENCE_INDEX && fenceIndex != null && fenceIndex.matches(index.getHeader()) ? fenceIndex : null;
+        return new RangeScan(this, index, fences, lo, hi, DataClassConfiguration.SCAN_READ_AHEAD, RangeScan.readAheadPool());
+    }
+
+    /**
+     * Returns whether the index file, opened or not, is sorted. An index file that was never
+     * opened is taken to be sorted if it has fences, which only a sorted index file gets.
+     */
+    private boolean hasSortedIndex() {
+        RFile index = indexFile;
+        return index != null ? index.getHeader().isSorted() : fenceIndex != null;
     }
 
     /**
-     * It takes a byte array and an integer, and returns a list of Keys and Indices.
+     * Finds the entry of a key in the sorted index file, by a binary search over its pages, which
+     * the fences narrow down to a single page when they are up to date.
      * 
-     * @param page the byte array of the page.
-     * @param fileIndex the position of the key in the file.
-     * @return A List of {@code FIndex} objects.
+     * @return the position of the record in the data file, or -1 if the key is not in the file
      */
-    private List<FIndex> extractInts(byte[] page, int fileIndex) {
-        if(page == null) throw new NullPointerException("page should not be null");
+    private long indexLookup(RFile index, int key, Lookup lookup) throws IOException {
+        FileHeader indexHeader = index.getHeader();
+        long low = 1;
+        long high = indexHeader.getLastPage();
+        if(DataClassConfiguration.FENCE_INDEX && fenceIndex != null && fenceIndex.matches(indexHeader))
+            low = high = fenceIndex.page(key);
+
+        byte[] indexPage = new byte[index.getPageSize()];
+        while(low > 0 && low <= high) {
+            long mid = (low + high)/2;
 
-        int pos = 0;
-        for(int i = 0; i < page.length/recordSize; i++) {
-            if(Utils.byteArrayToInt(Arrays.copyOfRange(page, pos, pos+Integer.BYTES)) != 0)
-                keyIndex.add(new FIndex(Utils.byteArrayToInt(Arrays.copyOfRange(page, pos, pos + Integer.BYTES)), pos + fileIndex));
+            index.getPageSource().read(indexHeader.position(mid), indexPage);
+            lookup.indexPageRead();
+            long entry = IndexPage.find(indexPage, key);
 
-            pos += recordSize;
+            if(entry >= 0)
+                return IndexBuffer.index(entry) & 0xffffffffL;
+            if(entry == IndexPage.ABOVE)
+                low = mid + 1;
+            else if(entry == IndexPage.BELOW)
+                high = mid - 1;
+            else
+                return -1;
         }
-        return keyIndex;
+        return -1;
+    }
+
+    /**
+     * Scans the data file page by page for a key, like {@link #searchFile(int)}.
+     * 
+     * @return a read-only view of the record in the page it was found in, or null
+     */
+    private ByteBuffer scanLookup(int key, Lookup lookup) throws IOException {
+        long lastPage = header.getLastPage();
+        byte[] page = new byte[pageSize];
+
+        for(long p = 1; p <= lastPage; ++p) {
+            pageSource.read(header.position(p), page);
+            lookup.dataPageRead();
+            int offset = SCANNER.indexOf(key, page, recordSize);
+            if(offset >= 0)
+                return ByteBuffer.wrap(page, offset, recordSize).slice().asReadOnlyBuffer();
+        }
+        return null;
+    }
+
+    /**
+     * It reads a page of data from the Index File into 
+     * {@link model.RFile#keyIndex keyIndex} buffer. The buffer is shared, so unlike the
+     * searches this is not safe to call from several threads.
+     * 
+     * @param page the byte array that contains the data
+     * @return The keyIndex buffer.
+     */
+    public IndexBuffer readPage(byte[] page) {
+        return keyIndex.readIndexPage(page);
+    }
+
+    /**
+     * It reads the file page by page and appends the Keys of its records, together with
+     * their position in the file, to the given buffer.
+     * 
+     * @param keys the buffer to append the Keys and Indices to.
+     * @return The given buffer.
+     * @throws IOException if an I/O error occurs, or if the last record lies past
+     *         {@link IndexBuffer#MAX_INDEX}, which an index entry cannot hold
+     */
+    private IndexBuffer extractInts(IndexBuffer keys) throws IOException {
+        byte[] page = new byte[pageSize];
+        long lastPage = header.getLastPage();
+        if(header.position(lastPage + 1) - recordSize > IndexBuffer.MAX_INDEX)
+            throw new IOException("The file " + filename + " is too large to be indexed, its records lie past " + IndexBuffer.MAX_INDEX);
+
+        for(long p = 1; p <= lastPage; ++p) {
+            pageSource.read(header.position(p), page);
+            keys.readDataPage(page, recordSize, header.position(p));
+        }
+        return keys;
     }
 
     /**
@@ -388,16 +1147,30 @@ public class RFile implements Closeable {
      * 
      * <blockquote>
      * <pre>
+     *  getLsmTree().close();
+     *  pageSource.close();
      *  raf.close();
-     *  getIndexFile().getRaf().close();
+     *  getIndexFile().close();
+     *  getBPlusTree().close();
+     *  getHashIndex().close();
      * </pre>
      * </blockquote>
      * 
      */
     @Override
     public void close() throws IOException {
+        synchronized(this) {
+            if(this.lsmTree != null)
+                this.lsmTree.close();
+        }
+        this.pageSource.close();
         this.raf.close();
-        this.getIndexFile().getRaf().close();
+        if(this.getIndexFile() != null)
+            this.getIndexFile().close();
+        if(this.getBPlusTree() != null)
+            this.getBPlusTree().close();
+        if(this.getHashIndex() != null)
+            this.getHashIndex().close();
     }
 
     public File getFile() {
@@ -408,6 +1181,107 @@ public class RFile implements Closeable {
         return raf;
     }
 
+    public PageSource getPageSource() {
+        return pageSource;
+    }
+
+    public PageSource.Kind getPageSourceKind() {
+        return pageSourceKind;
+    }
+
+    public long getSortMemoryBudget() {
+        return sortMemoryBudget;
+    }
+
+    public void setSortMemoryBudget(long sortMemoryBudget) {
+        this.sortMemoryBudget = sortMemoryBudget;
+    }
+
+    public synchronized SharedScan getSharedScan() {
+        if(sharedScan == null)
+            sharedScan = new SharedScan(pageSource, header, SCANNER);
+        return sharedScan;
+    }
+
+    public synchronized ParallelScan getParallelScan() {
+        if(parallelScan == null)
+            parallelScan = new ParallelScan(pageSource, header, SCANNER, ForkJoinPool.commonPool());
+        return parallelScan;
+    }
+
+    /**
+     * Returns the insert path of the file, opening the runs written before on the first call.
+     * 
+     * @return the LsmTree of the file
+     * @throws IOException if an I/O error occurs
+     */
+    public LsmTree getLsmTree() throws IOException {
+        LsmTree tree = lsmTree;
+        return tree != null ? tree : openLsmTree();
+    }
+
+    private synchronized LsmTree openLsmTree() throws IOException {
+        if(lsmTree == null)
+            lsmTree = new LsmTree(filename, recordSize, pageSize, pageSourceKind);
+        return lsmTree;
+    }
+
+    /**
+     * Returns the sidecar file the {@link FenceIndex} of the index file is stored in,
+     * {@code files/IndexFiles/fences_<filename>}.
+     * 
+     * @return the fence file
+     */
+    public File getFenceFile() {
+        return new File("files/IndexFiles/fences_"+this.filename);
+    }
+
+    /**
+     * Returns the sidecar file the {@link BloomFilter} of the file is stored in,
+     * {@code files/IndexFiles/bloom_<filename>}.
+     * 
+     * @return the Bloom filter file
+     */
+    public File getBloomFile() {
+        return new File("files/IndexFiles/bloom_"+this.filename);
+    }
+
+    public BloomFilter getBloomFilter() {
+        return bloomFilter;
+    }
+
+    /**
+     * Returns the number of lookups of the file and its index file answered by the Bloom
+     * filter without reading a page.
+     * 
+     * @return the number of short-circuited lookups
+     */
+    public long getBloomShortCircuits() {
+        return bloomShortCircuits.sum();
+    }
+
+    /**
+     * Returns the number of lookups of the file and its index file checked against the Bloom
+     * filter, those it short-circuited included.
+     * 
+     * @return the number of lookups that checked the Bloom filter
+     */
+    public long getBloomChecks() {
+        return bloomChecks.sum();
+    }
+
+    public FenceIndex getFenceIndex() {
+        return fenceIndex;
+    }
+
+    public FileHeader getHeader() {
+        return header;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
     public int getRecordSize() {
         return recordSize;
     }
@@ -420,4 +1294,70 @@ public class RFile implements Closeable {
         return indexFile;
     }
 
+    /**
+     * Returns the number of pages of the file and of the indexes built over it that were
+     * found in the buffer pool.
+     * 
+     * @return the number of buffer pool hits
+     */
+    public long getBufferHits() {
+        return sumOverPageSources(PageSource::getHits);
+    }
+
+    /**
+     * Returns the number of pages of the file and of the indexes built over it that were
+     * physically read because they were not in the buffer pool.
+     * 
+     * @return the number of buffer pool misses
+     */
+    public long getBufferMisses() {
+        return sumOverPageSources(PageSource::getMisses);
+    }
+
+    /**
+     * Returns the number of reads asked of the page sources of the file and of the indexes
+     * built over it, the logical page accesses.
+     * 
+     * @return the number of logical reads
+     */
+    public long getLogicalReads() {
+        return sumOverPageSources(PageSource::getLogicalReads);
+    }
+
+    /**
+     * Returns the number of read calls that reached the file and the indexes built over it,
+     * after the buffer pool and the coalescing of adjacent reads into extents.
+     * 
+     * @return the number of physical reads
+     */
+    public long getPhysicalReads() {
+        return sumOverPageSources(PageSource::getPhysicalReads);
+    }
+
+    /**
+     * Returns the number of bytes the physical reads of the file and of the indexes built over
+     * it transferred.
+     * 
+     * @return the number of bytes read
+     */
+    public long getBytesRead() {
+        return sumOverPageSources(PageSource::getBytesRead);
+    }
+
+    private long sumOverPageSources(ToLongFunction<PageSource> counter) {
+        long sum = counter.applyAsLong(pageSource);
+        if(indexFile != null) sum += counter.applyAsLong(indexFile.getPageSource());
+        if(bPlusTree != null) sum += counter.applyAsLong(bPlusTree.getPageSource());
+        if(hashIndex != null) sum += counter.applyAsLong(hashIndex.getPageSource());
+        return sum;
+    }
+
+    public BPlusTree getBPlusTree() {
+        return bPlusTree;
+    }
+
+    public HashIndex getHashIndex() {
+        return hashIndex;
+    }
+
 }
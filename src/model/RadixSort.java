@@ -0,0 +1,161 @@
+package model;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * The {@code RadixSort} class sorts packed (key, index) entries of an {@link IndexBuffer} by key
+ * with a parallel least significant digit radix sort.
+ * <p>
+ * The non-negative 31-bit key in the high half of an entry is sorted in passes of
+ * {@link #DIGIT_BITS}-bit digits. The entries are cut in one chunk per processor and every pass
+ * counts the digits of each chunk in a histogram of its own, turns the histograms into the
+ * position every chunk writes each digit to with a prefix sum over the digits, and scatters the
+ * chunks in parallel. A pass whose digit is the same for every entry is skipped, so small keys
+ * take fewer passes. The sort is stable and needs a scratch array as large as the input.
+ * </p>
+ * <p>
+ * Inputs of less than {@link #THRESHOLD} entries are sorted by {@link Arrays#parallelSort(long[], int, int)}.
+ * </p>
+ *
+ * @author nr
+ * @since 2023-03
+ */
+public final class RadixSort {
+
+    /* The number of bits of a digit */
+    public static final int DIGIT_BITS = 11;
+
+    /* The number of entries below which the entries are sorted by Arrays.parallelSort */
+    public static final int THRESHOLD = 1 << 17;
+
+    /* The number of values of a digit */
+    private static final int RADIX = 1 << DIGIT_BITS;
+
+    /* The smallest chunk worth a task of its own */
+    private static final int MIN_CHUNK = 1 << 15;
+
+    /* The number of digits a prefix sum task adds up */
+    private static final int DIGITS_PER_TASK = 256;
+
+    private RadixSort() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * Sorts the packed entries {@code [from, to)} of an array by key.
+     *
+     * @param a the packed entries, with non-negative keys
+     * @param from the first entry to sort
+     * @param to the entry after the last to sort
+     * @throws IllegalArgumentException if {@code from > to}
+     * @throws ArrayIndexOutOfBoundsException if the range is out of the array
+     */
+    public static void sort(long[] a, int from, int to) {
+        if(a == null) throw new NullPointerException("a should not be null");
+        if(from > to)
+            throw new IllegalArgumentException("from should not be greater than to");
+        if(from < 0 || to > a.length)
+            throw new ArrayIndexOutOfBoundsException("Array index out of bounds");
+
+        int n = to - from;
+        if(n < THRESHOLD) {
+            Arrays.parallelSort(a, from, to);
+            return;
+        }
+
+        int chunks = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), n/MIN_CHUNK));
+        int[][] counts = new int[chunks][RADIX];
+        int[] totals = new int[RADIX];
+        long[] src = a;
+        long[] dst = new long[n];
+        int srcFrom = from;
+        int dstFrom = 0;
+
+        for(int shift = Integer.SIZE; shift < Long.SIZE; shift += DIGIT_BITS) {
+            long[] in = src;
+            long[] out = dst;
+            int inFrom = srcFrom;
+            int outFrom = dstFrom;
+            int digitShift = shift;
+
+            parallel(chunks, c -> {
+                int[] count = counts[c];
+                Arrays.fill(count, 0);
+                for(int i = inFrom + chunkStart(n, chunks, c), end = inFrom + chunkStart(n, chunks, c + 1); i < end; ++i)
+                    count[digit(in[i], digitShift)]++;
+            });
+            if(!prefixSum(counts, totals, n))
+                continue;
+            parallel(chunks, c -> {
+                int[] position = counts[c];
+                for(int i = inFrom + chunkStart(n, chunks, c), end = inFrom + chunkStart(n, chunks, c + 1); i < end; ++i)
+                    out[outFrom + position[digit(in[i], digitShift)]++] = in[i];
+            });
+
+            src = out;
+            dst = in;
+            srcFrom = outFrom;
+            dstFrom = inFrom;
+        }
+
+        if(src != a) {
+            long[] sorted = src;
+            parallel(chunks, c -> System.arraycopy(sorted, chunkStart(n, chunks, c), a, from + chunkStart(n, chunks, c),
+                    chunkStart(n, chunks, c + 1) - chunkStart(n, chunks, c)));
+        }
+    }
+
+    /**
+     * Turns the digit counts of every chunk into the position the chunk writes its first entry
+     * of each digit to: the entries of smaller digits, and of the same digit in the chunks
+     * before it, go first. The counts of a digit across the chunks are added up in parallel
+     * over the digits, the totals are scanned and the positions are filled in parallel again.
+     *
+     * @return false if every entry has the same digit, and the pass can be skipped
+     */
+    private static boolean prefixSum(int[][] counts, int[] totals, int n) {
+        parallel(RADIX/DIGITS_PER_TASK, t -> {
+            for(int d = t*DIGITS_PER_TASK; d < (t + 1)*DIGITS_PER_TASK; ++d) {
+                int total = 0;
+                for(int[] count : counts)
+                    total += count[d];
+                totals[d] = total;
+            }
+        });
+
+        int base = 0;
+        for(int d = 0; d < RADIX; ++d) {
+            if(totals[d] == n)
+                return false;
+            int total = totals[d];
+            totals[d] = base;
+            base += total;
+        }
+
+        parallel(RADIX/DIGITS_PER_TASK, t -> {
+            for(int d = t*DIGITS_PER_TASK; d < (t + 1)*DIGITS_PER_TASK; ++d) {
+                int position = totals[d];
+                for(int[] count : counts) {
+                    int k = count[d];
+                    count[d] = position;
+                    position += k;
+                }
+            }
+        });
+        return true;
+    }
+
+    private static int digit(long entry, int shift) {
+        return (int) (entry >>> shift) & (RADIX - 1);
+    }
+
+    private static int chunkStart(int n, int chunks, int c) {
+        return (int) ((long) n*c/chunks);
+    }
+
+    private static void parallel(int tasks, IntConsumer task) {
+        IntStream.range(0, tasks).parallel().forEach(task);
+    }
+}
@@ -0,0 +1,58 @@
+package model;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * A {@link PageSource} that reads pages with positional reads of the {@link FileChannel}
+ * of a {@link RandomAccessFile}. Each read is a system call. Positional reads leave the
+ * file position alone, so any number of threads can read through the same source.
+ *
+ * @author nr
+ * @since 2023-03
+ */
+public class RafPageSource implements PageSource {
+
+    /* The channel of the RandomAccessFile the pages are read from */
+    private final FileChannel channel;
+
+    /**
+     * Creates a new page source over the given RandomAccessFile.
+     *
+     * @param raf the file to read from
+     */
+    public RafPageSource(RandomAccessFile raf) {
+        if(raf == null) throw new NullPointerException("raf should not be null");
+        this.channel = raf.getChannel();
+    }
+
+    @Override
+    public int read(long position, byte[] dst) throws IOException {
+        ByteBuffer bb = ByteBuffer.wrap(dst);
+
+        while(bb.hasRemaining()) {
+            int n = channel.read(bb, position + bb.position());
+            if(n < 0) break;
+        }
+
+        int total = bb.position();
+        Arrays.fill(dst, total, dst.length, (byte) 0);
+        return total;
+    }
+
+    @Override
+    public long length() throws IOException {
+        return channel.size();
+    }
+
+    /**
+     * Does nothing, the RandomAccessFile is closed by its owner.
+     */
+    @Override
+    public void close() throws IOException {
+        // the RandomAccessFile belongs to the RFile
+    }
+}
@@ -0,0 +1,342 @@
+package model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * The {@code RangeScan} class returns the records of a file whose keys lie in {@code [lo, hi]},
+ * in key order, following its sorted index file. It is created by {@link RFile#scan(int, int)}.
+ * <p>
+ * The first index page of the range is found with the {@link FenceIndex} of the index file, or
+ * with a binary search over its pages if the fences are out of date. From there the index pages
+ * are read in order, while the next {@link DataClassConfiguration#SCAN_READ_AHEAD} pages are read
+ * ahead on an {@link Executor}, and read by the scan itself if it gets to them first. The record
+ * of every entry in the range is read from the data file with one positional read when the
+ * iterator reaches it, as a read-only view like {@link RFile#get(int)} returns. With the fences
+ * no page past the one of {@code hi} is read.
+ * </p>
+ * <p>
+ * The reads ahead block on I/O, so the scans of {@link RFile#scan(int, int)} share a pool of
+ * {@link DataClassConfiguration#SCAN_IO_THREADS} daemon threads of their own, created on the
+ * first scan, rather than the common {@link java.util.concurrent.ForkJoinPool ForkJoinPool}
+ * the compute work such as a {@link ParallelScan} runs on.
+ * </p>
+ * <p>
+ * The scan covers the data file only, not the records inserted into its {@link LsmTree}. It is
+ * not safe to share between threads, but any number of scans may run on the same file. A scan
+ * that is not read to the end should be closed, which cancels the pages still being read ahead.
+ * </p>
+ *
+ * @author nr
+ * @since 2023-03
+ */
+public class RangeScan implements Iterator<ByteBuffer>, Closeable {
+
+    /* The pool the scans read ahead on, created lazily */
+    private static ExecutorService readAheadPool = null;
+
+    /* The data file */
+    private final RFile file;
+
+    /* The sorted index file */
+    private final RFile index;
+
+    /* The smallest key of the range */
+    private final int lo;
+
+    /* The largest key of the range */
+    private final int hi;
+
+    /* The number of index pages read ahead of the page being returned */
+    private final int readAhead;
+
+    /* The executor the pages are read ahead on */
+    private final Executor executor;
+
+    /* The index pages read or being read, in page order */
+    private final ArrayDeque<CompletableFuture<byte[]>> pending = new ArrayDeque<>();
+
+    /* The entries of the index page being returned */
+    private final IndexBuffer keys = new IndexBuffer();
+
+    /* The next entry of keys */
+    private int entry;
+
+    /* The next index page to read */
+    private long nextPage;
+
+    /* The last index page that can hold a key of the range */
+    private final long endPage;
+
+    /* The next record, null if it is not read yet */
+    private ByteBuffer next;
+
+    /* Whether the end of the range was reached or the scan was closed */
+    private boolean done;
+
+    /* The number of index pages read */
+    private int indexPages;
+
+    /* The number of records read from the data file */
+    private int dataPages;
+
+    RangeScan(RFile file, RFile index, FenceIndex fences, int lo, int hi, int readAhead, Executor executor) throws IOException {
+        if(file == null) throw new NullPointerException("file should not be null");
+        if(index == null) throw new NullPointerException("index should not be null");
+        if(executor == null) throw new NullPointerException("executor should not be null");
+        if(readAhead < 0)
+            throw new IllegalArgumentException("The read ahead should not be negative");
+
+        this.file = file;
+        this.index = index;
+        this.lo = lo;
+        this.hi = hi;
+        this.readAhead = readAhead;
+        this.executor = executor;
+
+        long lastPage = index.getHeader().getLastPage();
+        if(lo > hi || lastPage == 0) {
+            this.endPage = 0;
+            this.done = true;
+            return;
+        }
+
+        if(fences != null) {
+            this.nextPage = Math.max(1, fences.page(lo));
+            this.endPage = Math.max(1, fences.page(hi));
+        } else {
+            this.nextPage = firstPage(lastPage);
+            this.endPage = lastPage;
+        }
+        for(int i = pending.size(); i <= readAhead; ++i)
+            readNextPage();
+    }
+
+    /**
+     * Returns the pool the scans of {@link RFile#scan(int, int)} read ahead on, sized by
+     * {@link DataClassConfiguration#SCAN_IO_THREADS}. Its threads are daemons, so it is never
+     * shut down.
+     *
+     * @return the shared read ahead pool
+     */
+    static synchronized Executor readAheadPool() {
+        if(readAheadPool == null) {
+            AtomicInteger threads = new AtomicInteger();
+            readAheadPool = Executors.newFixedThreadPool(Math.max(1, DataClassConfiguration.SCAN_IO_THREADS), r -> {
+                Thread t = new Thread(r, "scan-read-ahead-" + threads.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return readAheadPool;
+    }
+
+    /**
+     * Finds the first index page whose last key is not smaller than {@code lo} with a binary
+     * search over the pages. The page found is queued as the first page of the scan.
+     */
+    private long firstPage(long lastPage) throws IOException {
+        long low = 1;
+        long high = lastPage;
+        byte[] found = null;
+
+        while(low < high) {
+            long mid = (low + high)/2;
+            byte[] page = readPage(mid);
+            indexPages++;
+            keys.clear();
+            keys.readIndexPage(page);
+            if(keys.isEmpty() || keys.key(keys.size()-1) < lo) {
+                low = mid + 1;
+            } else {
+                high = mid;
+                found = page;
+            }
+        }
+
+        keys.clear();
+        if(found != null) {
+            pending.add(CompletableFuture.completedFuture(found));
+            return low + 1;
+        }
+        return low;
+    }
+
+    private byte[] readPage(long page) throws IOException {
+        byte[] bytes = new byte[index.getPageSize()];
+        index.getPageSource().read(index.getHeader().position(page), bytes);
+        return bytes;
+    }
+
+    /* Queues the next index page of the range, if there is one, and starts reading it ahead. */
+    private void readNextPage() {
+        if(nextPage == 0 || nextPage > endPage)
+            return;
+
+        long page = nextPage++;
+        CompletableFuture<byte[]> bytes = new CompletableFuture<>();
+        indexPages++;
+        pending.add(bytes);
+        if(readAhead > 0)
+            executor.execute(() -> {
+                if(bytes.isDone())
+                    return;
+                try {
+                    bytes.complete(readPage(page));
+                } catch (IOException e) {
+                    bytes.completeExceptionally(new UncheckedIOException(e));
+                }
+            });
+    }
+
+    /**
+     * Moves to the next index page. A page the executor has not read yet is read here rather
+     * than waited for, so a scan of cached pages does not wait for the executor to get to them.
+     *
+     * @return false if there are no more index pages
+     */
+    private boolean nextIndexPage() {
+        long pageNumber = nextPage - pending.size();
+        CompletableFuture<byte[]> page = pending.poll();
+        if(page == null)
+            return false;
+
+        byte[] bytes;
+        try {
+            if(!page.isDone())
+                page.complete(readPage(pageNumber));
+            bytes = page.join();
+        } catch (IOException e) {
+            close();
+            throw new UncheckedIOException(e);
+        } catch (CompletionException e) {
+            close();
+            throw e.getCause() instanceof UncheckedIOException ? (UncheckedIOException) e.getCause() : e;
+        }
+        readNextPage();
+
+        keys.clear();
+        keys.readIndexPage(bytes);
+        entry = 0;
+        return !keys.isEmpty();
+    }
+
+    /**
+     * Checks whether there is another record in the range, reading index pages and the record
+     * as needed. Throws an {@link UncheckedIOException} if a page cannot be read.
+     */
+    @Override
+    public boolean hasNext() {
+        if(next != null)
+            return true;
+
+        while(!done) {
+            if(entry == keys.size()) {
+                if(!nextIndexPage())
+                    close();
+                continue;
+            }
+
+            int key = keys.key(entry);
+            long position = keys.index(entry) & 0xffffffffL;
+            entry++;
+            if(key < lo)
+                continue;
+            if(key > hi) {
+                close();
+                break;
+            }
+
+            try {
+                next = file.getPageSource().view(position, file.getRecordSize());
+            } catch (IOException e) {
+                close();
+                throw new UncheckedIOException(e);
+            }
+            dataPages++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the next record of the range, in key order.
+     *
+     * @return a read-only view of the record, key first
+     */
+    @Override
+    public ByteBuffer next() {
+        if(!hasNext())
+            throw new NoSuchElementException();
+
+        ByteBuffer record = next;
+        next = null;
+        return record;
+    }
+
+    /**
+     * Returns the records left in the range as a sequential stream, which closes the scan when
+     * it is closed.
+     *
+     * @return the stream of records
+     */
+    public Stream<ByteBuffer> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(this::close);
+    }
+
+    /**
+     * Ends the scan, cancelling the index pages still being read ahead.
+     */
+    @Override
+    public void close() {
+        done = true;
+        for(CompletableFuture<byte[]> page : pending)
+            page.cancel(false);
+        pending.clear();
+        keys.clear();
+        entry = 0;
+    }
+
+    public int getLo() {
+        return lo;
+    }
+
+    public int getHi() {
+        return hi;
+    }
+
+    /**
+     * Returns the number of index pages the scan read or started reading, pages read ahead
+     * and then cancelled included.
+     *
+     * @return the number of index pages
+     */
+    public int getIndexPages() {
+        return indexPages;
+    }
+
+    /**
+     * Returns the number of positional reads of records from the data file.
+     *
+     * @return the number of data reads
+     */
+    public int getDataPages() {
+        return dataPages;
+    }
+}
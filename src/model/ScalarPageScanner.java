@@ -0,0 +1,29 @@
+package model;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * A {@link PageScanner} that reads the keys of a page one at a time through a
+ * big-endian {@link VarHandle} view of the page, without allocating.
+ *
+ * @author nr
+ * @since 2023-03
+ */
+public class ScalarPageScanner implements PageScanner {
+
+    /* A big-endian int view over a byte array */
+    private static final VarHandle INT_BE = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+
+    @Override
+    public int indexOf(int key, byte[] page, int recordSize) {
+        int keys = PageScanner.keysInPage(page.length, recordSize);
+
+        for(int i = 0, pos = 0; i < keys; ++i, pos += recordSize)
+            if((int) INT_BE.get(page, pos) == key)
+                return pos;
+
+        return -1;
+    }
+}
@@ -0,0 +1,194 @@
+package model;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The {@code SharedScan} class lets concurrent linear searches of a data file share a
+ * single circular pass over its pages.
+ * <p>
+ * A search attaches to the scan at the page it is about to read and is done once it has
+ * found its key or the scan has wrapped back to the page it started at. While a scan is in
+ * flight, every page read is checked against the keys of all the searches attached to it,
+ * so N concurrent searches cost about one pass over the file instead of N.
+ * </p>
+ * <p>
+ * There is no scan thread: one of the waiting searches drives the scan, reading the pages
+ * itself, and hands it over to another one once its own key is resolved. Pages are read
+ * and checked outside the lock, so searches can attach while a page is being read.
+ * </p>
+ *
+ * @author nr
+ * @since 2023-03
+ */
+public class SharedScan {
+
+    /* The page source of the data file */
+    private final PageSource pageSource;
+
+    /* The header of the data file */
+    private final FileHeader header;
+
+    /* The scanner used to find a key among the records of a page */
+    private final PageScanner scanner;
+
+    /* The searches attached to the scan */
+    private final List<Query> attached = new ArrayList<>();
+
+    /* The next page the scan reads, 0 before the first read */
+    private long cursor;
+
+    /* Set while a search drives the scan */
+    private boolean driving;
+
+    /* The number of pages read by the scan */
+    private long pagesRead;
+
+    /**
+     * Creates a shared scan over the pages of a data file.
+     *
+     * @param pageSource the page source of the data file
+     * @param header the header of the data file
+     * @param scanner the scanner used to find a key among the records of a page
+     */
+    public SharedScan(PageSource pageSource, FileHeader header, PageScanner scanner) {
+        if(pageSource == null) throw new NullPointerException("pageSource should not be null");
+        if(header == null) throw new NullPointerException("header should not be null");
+        if(scanner == null) throw new NullPointerException("scanner should not be null");
+
+        this.pageSource = pageSource;
+        this.header = header;
+        this.scanner = scanner;
+    }
+
+    /**
+     * Searches the file for a key, riding the scan in flight if there is one.
+     *
+     * @param key the key to search for
+     * @return the number of pages the search saw, its disk accesses
+     * @throws IOException if an I/O error occurs while reading the file
+     */
+    public int search(int key) throws IOException {
+        Query query = new Query(key);
+
+        synchronized(this) {
+            long lastPage = header.getLastPage();
+            if(lastPage == 0)
+                return 0;
+            if(cursor < 1 || cursor > lastPage)
+                cursor = 1;
+            query.start = cursor;
+            attached.add(query);
+        }
+
+        while(true) {
+            synchronized(this) {
+                while(!query.done && driving)
+                    await();
+                if(query.done) {
+                    if(query.error != null)
+                        throw new IOException("The shared scan failed", query.error);
+                    return query.pages;
+                }
+                driving = true;
+            }
+
+            try {
+                drive(query);
+            } finally {
+                synchronized(this) {
+                    driving = false;
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads pages for every attached search until {@code query} is done.
+     *
+     * @param query the search of the driving thread
+     * @throws IOException if an I/O error occurs, after failing every attached search
+     */
+    private void drive(Query query) throws IOException {
+        byte[] page = new byte[header.getPageSize()];
+        int recordSize = header.getRecordSize();
+
+        while(!query.done) {
+            Query[] riders;
+            long p;
+            long next;
+
+            synchronized(this) {
+                long lastPage = header.getLastPage();
+                p = cursor;
+                next = p >= lastPage ? 1 : p + 1;
+                cursor = next;
+                riders = attached.toArray(new Query[0]);
+            }
+
+            try {
+                pageSource.read(header.position(p), page);
+            } catch (IOException e) {
+                synchronized(this) {
+                    for(Query q : attached) {
+                        q.error = e;
+                        q.done = true;
+                    }
+                    attached.clear();
+                    notifyAll();
+                }
+                throw e;
+            }
+
+            boolean[] found = new boolean[riders.length];
+            for(int i = 0; i < riders.length; ++i)
+                found[i] = scanner.indexOf(riders[i].key, page, recordSize) >= 0;
+
+            synchronized(this) {
+                pagesRead++;
+                for(int i = 0; i < riders.length; ++i) {
+                    Query q = riders[i];
+                    q.pages++;
+                    if(found[i] || next == q.start) {
+                        q.done = true;
+                        attached.remove(q);
+                    }
+                }
+                notifyAll();
+            }
+        }
+    }
+
+    private void await() throws IOException {
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the shared scan", e);
+        }
+    }
+
+    /**
+     * Returns the number of pages read by the scan, shared by all the searches that rode it.
+     *
+     * @return the number of pages read
+     */
+    public synchronized long getPagesRead() {
+        return pagesRead;
+    }
+
+    /* A search attached to the scan. */
+    private static final class Query {
+        private final int key;
+        private long start;
+        private int pages;
+        private boolean done;
+        private IOException error;
+
+        Query(int key) {
+            this.key = key;
+        }
+    }
+}
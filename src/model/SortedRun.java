@@ -0,0 +1,252 @@
+package model;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import utils.Utils;
+
+/**
+ * The {@code SortedRun} class is an immutable run of records written by an {@link LsmTree}:
+ * a data file whose pages hold the records in key order, with the sorted index file,
+ * {@link FenceIndex} and {@link BloomFilter} {@link RFile#split() split} builds over it.
+ * <p>
+ * The header of the data file is marked sorted, so the index file comes out sorted with its
+ * fences and no {@link RFile#sort() sort} is needed. A lookup that passes the Bloom filter
+ * reads one index page, found with the fences, and the record at the position it gives.
+ * </p>
+ *
+ * @author nr
+ * @since 2023-03
+ */
+public class SortedRun implements Closeable {
+
+    /* The data file of the run */
+    private final RFile file;
+
+    /* The position of the run in the order the runs were written, newer runs have larger ones */
+    private final long sequence;
+
+    private SortedRun(RFile file, long sequence) {
+        this.file = file;
+        this.sequence = sequence;
+    }
+
+    /**
+     * Writes a run from records given in ascending key order, replacing any file of that name.
+     *
+     * @param filename the name of the data file of the run, relative to {@code files/}
+     * @param sequence the position of the run in the order the runs are written
+     * @param recordSize the size of a record
+     * @param pageSize the size of a page
+     * @param pageSourceKind the kind of page source the run is read through
+     * @param records the records, in ascending key order and with unique keys
+     * @return the run
+     * @throws IOException if an I/O error occurs
+     */
+    public static SortedRun write(String filename, long sequence, int recordSize, int pageSize,
+            PageSource.Kind pageSourceKind, Iterator<byte[]> records) throws IOException {
+        new File("files/"+filename).delete();
+        RFile rf = new RFile(filename, "rw", recordSize, pageSize, pageSourceKind);
+        FileHeader header = rf.getHeader();
+        int recordsInPage = header.recordsInPage();
+        byte[] block = new byte[IndexBuffer.PAGES_PER_WRITE*pageSize];
+        long count = 0;
+        long pages = 0;
+        int pagesInBlock = 0;
+        int slot = 0;
+
+        rf.getRaf().seek(header.position(1));
+        try {
+            while(records.hasNext()) {
+                System.arraycopy(records.next(), 0, block, pagesInBlock*pageSize + slot*recordSize, recordSize);
+                count++;
+                if(++slot < recordsInPage)
+                    continue;
+
+                slot = 0;
+                if(++pagesInBlock == IndexBuffer.PAGES_PER_WRITE) {
+                    rf.getRaf().write(block);
+                    Arrays.fill(block, (byte) 0);
+                    pages += pagesInBlock;
+                    pagesInBlock = 0;
+                }
+            }
+        } catch (UncheckedIOException e) {
+            rf.close();
+            throw e.getCause();
+        }
+
+        if(slot > 0)
+            pagesInBlock++;
+        rf.getRaf().write(block, 0, pagesInBlock*pageSize);
+        pages += pagesInBlock;
+
+        header.setRecordCount(count);
+        header.setLastPage(pages);
+        header.setSorted(true);
+        rf.getRaf().setLength(header.position(pages + 1));
+        rf.writeHeader();
+        rf.split();
+        return new SortedRun(rf, sequence);
+    }
+
+    /**
+     * Opens a run written before. Its fences and Bloom filter are rebuilt if their sidecar
+     * files are missing.
+     *
+     * @param filename the name of the data file of the run, relative to {@code files/}
+     * @param sequence the position of the run in the order the runs were written
+     * @return the run
+     * @throws IOException if an I/O error occurs or the file is not a run
+     */
+    public static SortedRun open(String filename, long sequence) throws IOException {
+        RFile rf = new RFile(filename, "rw");
+        if(!rf.getHeader().isSorted()) {
+            rf.close();
+            throw new IOException(rf.getFile() + " is not a sorted run");
+        }
+
+        if(rf.getFenceIndex() == null)
+            rf.split();
+        else
+            rf.openIndexFile();
+        return new SortedRun(rf, sequence);
+    }
+
+    /**
+     * Looks a key up in the run.
+     *
+     * @param key the key to search for
+     * @return a copy of the record of the key, or null if the key is not in the run
+     * @throws IOException if an I/O error occurs
+     */
+    public byte[] get(int key) throws IOException {
+        ByteBuffer record = find(key, new Lookup(key));
+        if(record == null)
+            return null;
+
+        byte[] copy = new byte[record.remaining()];
+        record.get(copy);
+        return copy;
+    }
+
+    /**
+     * Searches the run for a key.
+     *
+     * @param key the key to search for
+     * @return the number of disk accesses, at most 2
+     * @throws IOException if an I/O error occurs
+     */
+    public int search(int key) throws IOException {
+        Lookup lookup = new Lookup(key);
+        find(key, lookup);
+        return lookup.getDiskAccesses();
+    }
+
+    /**
+     * Finds the record of a key: the index page of the key is found with the fences and the
+     * record is read from its position in the data file with a single positional read.
+     *
+     * @param key the key to search for
+     * @param lookup counts the index and data pages read
+     * @return a read-only view of the record, or null if the key is not in the run
+     * @throws IOException if an I/O error occurs
+     */
+    ByteBuffer find(int key, Lookup lookup) throws IOException {
+        BloomFilter bloomFilter = file.getBloomFilter();
+        if(bloomFilter != null && !bloomFilter.mightContain(key))
+            return null;
+
+        long indexPage = file.getFenceIndex().page(key);
+        if(indexPage == 0)
+            return null;
+
+        RFile index = file.getIndexFile();
+        byte[] page = new byte[index.getPageSize()];
+        index.getPageSource().read(index.getHeader().position(indexPage), page);
+        lookup.indexPageRead();
+        long entry = IndexPage.find(page, key);
+        if(entry < 0)
+            return null;
+
+        lookup.dataPageRead();
+        return file.getPageSource().view(IndexBuffer.index(entry) & 0xffffffffL, file.getRecordSize());
+    }
+
+    /**
+     * Returns the records of the run in key order, reading the data file page by page. The
+     * iterator throws an {@link UncheckedIOException} if a page cannot be read.
+     *
+     * @return the records of the run
+     */
+    public Iterator<byte[]> records() {
+        return new Iterator<byte[]>() {
+            private final FileHeader header = file.getHeader();
+            private final byte[] page = new byte[header.getPageSize()];
+            private long p = 0;
+            private int pos = page.length;
+
+            @Override
+            public boolean hasNext() {
+                while(true) {
+                    for(; pos + header.getRecordSize() <= page.length; pos += header.getRecordSize())
+                        if(Utils.byteArrayToInt(page, pos) != 0)
+                            return true;
+                    if(p == header.getLastPage())
+                        return false;
+                    try {
+                        file.getPageSource().read(header.position(++p), page);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    pos = 0;
+                }
+            }
+
+            @Override
+            public byte[] next() {
+                if(!hasNext())
+                    throw new NoSuchElementException();
+
+                byte[] record = Arrays.copyOfRange(page, pos, pos + header.getRecordSize());
+                pos += header.getRecordSize();
+                return record;
+            }
+        };
+    }
+
+    /**
+     * Closes the run and deletes its data file, index file and sidecar files.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public void delete() throws IOException {
+        close();
+        file.getFile().delete();
+        file.getIndexFile().getFile().delete();
+        file.getFenceFile().delete();
+        file.getBloomFile().delete();
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    public RFile getFile() {
+        return file;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long size() {
+        return file.getHeader().getRecordCount();
+    }
+}
@@ -1,38 +1,84 @@
 package modelTesting;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import utils.Utils;
 
 /**
  * The {@code App} class is the main class of this application, responsible for
  * generating test files and measuring the time it takes to generate them.
+ * <p>
+ * The tests of the different file sizes are run on an executor chosen with
+ * {@code -Drfile.runner=SERIAL|PLATFORM|VIRTUAL}: one at a time, so the timings of the
+ * small files are not distorted by the I/O of the big ones, on a pool of
+ * {@code -Drfile.runnerThreads} platform threads (the number of processors by default),
+ * or on a virtual thread each.
+ * </p>
+ * <p>
+ * Besides the mean disk accesses and runtimes, the latency and disk access percentiles of
+ * every method are printed and written to {@code <rfile.latencyDir>/latency_<dataBytes>.csv}.
+ * </p>
  * 
  * @author nr
  * 
  */
 public class App {
+
+    /**
+     * The executors the tests can run on.
+     */
+    public enum Runner {
+        /* one test at a time */
+        SERIAL,
+        /* a bounded pool of platform threads */
+        PLATFORM,
+        /* a virtual thread per test, Java 21 or later */
+        VIRTUAL
+    }
+
+    /* The executor the tests run on */
+    protected static final Runner RUNNER = Runner.valueOf(System.getProperty("rfile.runner", "PLATFORM"));
+
+    /* The number of threads of the PLATFORM runner */
+    protected static final int RUNNER_THREADS = Integer.getInteger("rfile.runnerThreads", Runtime.getRuntime().availableProcessors());
     
     /* The Singleton instance of the App class. */
     private static App app = null;
 
     /* The array of test values to use when generating test files. */
     protected static final int[] TEST_VALUES = {50, 100, 200, 500, 800, 1000, 2000, 5000, 10000, 50000, 100000, 200000};
+
+    /* The number of random searches made with every method, overridden with -Drfile.counts=<searches> */
+    protected static final int COUNTS = Integer.getInteger("rfile.counts", 10);
+
+    /* The directory the percentiles are dumped to as latency_<dataBytes>.csv, overridden with -Drfile.latencyDir=<dir>, empty to skip the dump */
+    protected static final String LATENCY_DIR = System.getProperty("rfile.latencyDir", "files");
     
     /* The list of TestGenerator objects used to generate the test files. */
     private List<TestGenerator> generators;
 
-    /* The list of threads that run the generators */
-    private List<Thread> threads;
+    /* The pending results of the generators */
+    private List<Future<TestStructure>> results;
 
     /**
      * Constructs a new `App` object.
      */
     public App() {
         generators = new ArrayList<>();
-        threads = new ArrayList<>();
+        results = new ArrayList<>();
     }
 
     /**
@@ -46,11 +92,11 @@ public class App {
     }
 
     /**
-     * Clears the generators and threads lists
+     * Clears the generators and results lists
      */
     public void resetThreads() {
         generators.clear();
-        threads.clear();
+        results.clear();
         TestGenerator.getTestStructureList().clear();
     }
 
@@ -85,41 +131,118 @@ public class App {
         resetThreads();
         long start = System.currentTimeMillis();
        
-        // Creating a new TestGenerator and Thread for each value in the TEST_VALUES array.
-        for(int i = 0; i< TEST_VALUES.length; ++i) {
-            generators.add(new TestGenerator(dataBytes, TEST_VALUES[i], 10));
-            threads.add(new Thread(generators.get(i)));
-        }
+        // Creating a new TestGenerator for each value in the TEST_VALUES array.
+        for(int i = 0; i< TEST_VALUES.length; ++i)
+            generators.add(new TestGenerator(dataBytes, TEST_VALUES[i], COUNTS));
 
-        //Starting all the threads.
-        for(int i=0; i< threads.size(); ++i)
-            threads.get(i).start();
-        
-        // Waiting for the threads to finish before continuing
-        for(int i = 0; i<threads.size(); ++i)
-            threads.get(i).join();
+        // Submitting the tests to the executor and waiting for them to finish before continuing
+        ExecutorService executor = newExecutor(RUNNER);
+        try {
+            for(int i = 0; i < generators.size(); ++i)
+                results.add(executor.submit((Callable<TestStructure>) generators.get(i)));
+
+            for(int i = 0; i < results.size(); ++i) {
+                try {
+                    results.get(i).get();
+                } catch (ExecutionException e) {
+                    System.err.println("The test of " + TEST_VALUES[i] + " records failed: " + e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
 
         // Sorting the `TestStructure` list by the number of records.
         Collections.sort(TestGenerator.getTestStructureList(), (g1, g2) -> Utils.compare(g1.numOfRecords(), g2.numOfRecords()));
 
-        System.out.println("\n\n|| Data Byte Length |"+"| Number of Records |"+"| disk accesses method A |"+ "| disk accesses method B |"+ "| disk accesses method C ||");
-        for(int i = 0; i < app.generators.size(); i++) {
-            System.out.printf("||%18d||%19d||%24.1f||%24.1f||%24.1f||\n", 
+        System.out.println("\n\n|| Data Byte Length |"+"| Number of Records |"+"| disk accesses method A |"+ "| disk accesses method B |"+ "| disk accesses method C |"+ "| disk accesses method D |"+ "| disk accesses method E |"+ "| disk accesses method F |"+ "| disk accesses method G ||");
+        for(int i = 0; i < TestGenerator.getTestStructureList().size(); i++) {
+            System.out.printf("||%18d||%19d||%24.1f||%24.1f||%24.1f||%24.1f||%24.1f||%24.1f||%24.1f||\n", 
             TestGenerator.getTestStructureList().get(i).dataBytes(), 
             TestGenerator.getTestStructureList().get(i).numOfRecords(), 
-            TestGenerator.getTestStructureList().get(i).discAccessCountA(),
-            TestGenerator.getTestStructureList().get(i).discAccessCountB(), 
-            TestGenerator.getTestStructureList().get(i).discAccessCountC());
+            TestGenerator.getTestStructureList().get(i).method(SearchMethod.A).diskAccesses(),
+            TestGenerator.getTestStructureList().get(i).method(SearchMethod.B).diskAccesses(), 
+            TestGenerator.getTestStructureList().get(i).method(SearchMethod.C).diskAccesses(),
+            TestGenerator.getTestStructureList().get(i).method(SearchMethod.D).diskAccesses(),
+            TestGenerator.getTestStructureList().get(i).method(SearchMethod.E).diskAccesses(),
+            TestGenerator.getTestStructureList().get(i).method(SearchMethod.F).diskAccesses(),
+            TestGenerator.getTestStructureList().get(i).method(SearchMethod.G).diskAccesses());
         }
 
-        System.out.println("\n\n|| Data Byte Length |"+"| Number of Records |"+"| runtime method A |"+ "| runtime method B |"+ "| runtime method C ||");
-        for(int i = 0; i < app.generators.size(); i++) {
-            System.out.printf("||%18d||%19d||%13d (ns)||%13d (ns)||%13d (ns)||\n", 
+        System.out.println("\n\n|| Data Byte Length |"+"| Number of Records |"+"| runtime method A |"+ "| runtime method B |"+ "| runtime method C |"+ "| runtime method D |"+ "| runtime method E |"+ "| runtime method F |"+ "| runtime method G ||");
+        for(int i = 0; i < TestGenerator.getTestStructureList().size(); i++) {
+            System.out.printf("||%18d||%19d||%13d (ns)||%13d (ns)||%13d (ns)||%13d (ns)||%13d (ns)||%13d (ns)||%13d (ns)||\n", 
             TestGenerator.getTestStructureList().get(i).dataBytes(), 
             TestGenerator.getTestStructureList().get(i).numOfRecords(), 
-            TestGenerator.getTestStructureList().get(i).runtimeA(), 
-            TestGenerator.getTestStructureList().get(i).runtimeB(), 
-            TestGenerator.getTestStructureList().get(i).runtimeC());
+            TestGenerator.getTestStructureList().get(i).method(SearchMethod.A).runtime(), 
+            TestGenerator.getTestStructureList().get(i).method(SearchMethod.B).runtime(), 
+            TestGenerator.getTestStructureList().get(i).method(SearchMethod.C).runtime(),
+            TestGenerator.getTestStructureList().get(i).method(SearchMethod.D).runtime(),
+            TestGenerator.getTestStructureList().get(i).method(SearchMethod.E).runtime(),
+            TestGenerator.getTestStructureList().get(i).method(SearchMethod.F).runtime(),
+            TestGenerator.getTestStructureList().get(i).method(SearchMethod.G).runtime());
+        }
+
+        System.out.println("\n\n|| Data Byte Length |"+"| Number of Records |"+"| buffer pool hits |"+ "| buffer pool misses |"+ "| hit ratio ||");
+        for(int i = 0; i < TestGenerator.getTestStructureList().size(); i++) {
+            TestStructure ts = TestGenerator.getTestStructureList().get(i);
+            System.out.printf("||%18d||%19d||%18d||%20d||%11.3f||\n", 
+            ts.dataBytes(), 
+            ts.numOfRecords(), 
+            ts.io().bufferHits(), 
+            ts.io().bufferMisses(),
+            ts.io().bufferHits() + ts.io().bufferMisses() == 0 ? 0f : (float) ts.io().bufferHits()/(ts.io().bufferHits() + ts.io().bufferMisses()));
+        }
+
+        System.out.println("\n\n|| Data Byte Length |"+"| Number of Records |"+"| Bloom filter checks |"+ "| Bloom filter short-circuits ||");
+        for(int i = 0; i < TestGenerator.getTestStructureList().size(); i++) {
+            TestStructure ts = TestGenerator.getTestStructureList().get(i);
+            System.out.printf("||%18d||%19d||%21d||%29d||\n", 
+            ts.dataBytes(), 
+            ts.numOfRecords(), 
+            ts.io().bloomChecks(), 
+            ts.io().bloomShortCircuits());
+        }
+
+        System.out.println("\n\n|| Data Byte Length |"+"| Number of Records |"+"| logical reads |"+ "| physical reads |"+ "| bytes read |"+ "| bytes per physical read ||");
+        for(int i = 0; i < TestGenerator.getTestStructureList().size(); i++) {
+            TestStructure ts = TestGenerator.getTestStructureList().get(i);
+            System.out.printf("||%18d||%19d||%15d||%16d||%12d||%25.1f||\n", 
+            ts.dataBytes(), 
+            ts.numOfRecords(), 
+            ts.io().logicalReads(), 
+            ts.io().physicalReads(), 
+            ts.io().bytesRead(),
+            ts.io().physicalReads() == 0 ? 0f : (float) ts.io().bytesRead()/ts.io().physicalReads());
+        }
+
+        System.out.println("\n\n|| Data Byte Length |"+"| Number of Records |"+"| method |"+ "| p50 (ns) |"+ "| p90 (ns) |"+ "| p99 (ns) |"+ "| p99.9 (ns) |"+ "| max (ns) |"+ "| accesses p50 |"+ "| accesses p99 |"+ "| accesses max ||");
+        for(int i = 0; i < TestGenerator.getTestStructureList().size(); i++) {
+            TestStructure ts = TestGenerator.getTestStructureList().get(i);
+            for(SearchMethod method : SearchMethod.values()) {
+                Percentiles latency = ts.method(method).latencies();
+                Percentiles accesses = ts.method(method).accesses();
+                System.out.printf("||%18d||%19d||%8s||%10d||%10d||%10d||%12d||%10d||%14d||%14d||%14d||\n", 
+                ts.dataBytes(), 
+                ts.numOfRecords(), 
+                method, 
+                latency.p50(), 
+                latency.p90(), 
+                latency.p99(), 
+                latency.p999(), 
+                latency.max(), 
+                accesses.p50(), 
+                accesses.p99(), 
+                accesses.max());
+            }
+        }
+
+        if(!LATENCY_DIR.isEmpty()) {
+            try {
+                System.out.println("\nPercentiles written to " + writePercentiles(dataBytes));
+            } catch (IOException e) {
+                System.err.println("Could not write the percentiles: " + e.getMessage());
+            }
         }
 
         resetThreads();
@@ -127,12 +250,66 @@ public class App {
         return (end - start);
     }
 
+    /**
+     * Writes the latency and disk access percentiles of every method and file size of the last
+     * tests to {@code <rfile.latencyDir>/latency_<dataBytes>.csv}, one line per test and method.
+     * 
+     * @param dataBytes the length of the data strings of the tests
+     * @return the file written
+     * @throws IOException if an I/O error occurs
+     */
+    public File writePercentiles(int dataBytes) throws IOException {
+        File file = new File(LATENCY_DIR, "latency_" + dataBytes + ".csv");
+        try(PrintWriter out = new PrintWriter(Files.newBufferedWriter(file.toPath(), StandardCharsets.US_ASCII))) {
+            out.println("dataBytes,numOfRecords,method,samples,"
+                    + "latencyMeanNs,latencyP50Ns,latencyP90Ns,latencyP99Ns,latencyP999Ns,latencyMaxNs,"
+                    + "accessesMean,accessesP50,accessesP90,accessesP99,accessesP999,accessesMax");
+            for(TestStructure ts : TestGenerator.getTestStructureList()) {
+                for(SearchMethod method : SearchMethod.values()) {
+                    Percentiles latency = ts.method(method).latencies();
+                    Percentiles accesses = ts.method(method).accesses();
+                    out.printf(Locale.ROOT, "%d,%d,%s,%d,%.1f,%d,%d,%d,%d,%d,%.2f,%d,%d,%d,%d,%d%n",
+                            ts.dataBytes(), ts.numOfRecords(), method, latency.count(),
+                            latency.mean(), latency.p50(), latency.p90(), latency.p99(), latency.p999(), latency.max(),
+                            accesses.mean(), accesses.p50(), accesses.p90(), accesses.p99(), accesses.p999(), accesses.max());
+                }
+            }
+            if(out.checkError())
+                throw new IOException("Could not write " + file);
+        }
+        return file;
+    }
+
     public List<TestGenerator> getGenerators() {
         return generators;
     }
 
-    public List<Thread> getThreads() {
-        return threads;
+    /**
+     * Creates the executor the tests run on. Virtual threads are only available from Java 21
+     * on, so the {@link Runner#VIRTUAL VIRTUAL} runner falls back to the platform thread pool
+     * on older runtimes.
+     * 
+     * @param runner the kind of executor
+     * @return a new executor
+     */
+    protected static ExecutorService newExecutor(Runner runner) {
+        switch(runner) {
+            case SERIAL:
+                return Executors.newSingleThreadExecutor();
+            case VIRTUAL:
+                try {
+                    return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+                } catch (ReflectiveOperationException e) {
+                    System.err.println("Virtual threads are not available, running on " + RUNNER_THREADS + " platform threads");
+                    return Executors.newFixedThreadPool(RUNNER_THREADS);
+                }
+            default:
+                return Executors.newFixedThreadPool(RUNNER_THREADS);
+        }
+    }
+
+    public List<Future<TestStructure>> getResults() {
+        return results;
     }
     
 }
@@ -2,11 +2,21 @@ package modelTesting;
 
 import java.util.Random;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import model.FileHeader;
+import model.IndexBuffer;
 import model.Record;
 import utils.Utils;
 import model.DataClassConfiguration;
@@ -17,6 +27,10 @@ import model.RFile;
  * The {@code DataGenerator} class generates a list of records with random keys
  * and random data strings of fixed length, where the number of records and the
  * length of the data strings are specified by the constructor.
+ * <p>
+ * {@link #generateFile(long, int)} streams the records straight into the pages of the file
+ * instead, on several threads and in constant memory, see {@link KeyPermutation}.
+ * </p>
  *
  */
 public class DataGenerator {
@@ -30,18 +44,24 @@ public class DataGenerator {
     /* DataClassConfiguration Object */
     private DataClassConfiguration DCC = null;
     
-    /* The list of records */
+    /* The list of records, empty unless generateRecords is used */
     private List<Record> recordList;
     
     /* RFile Object */
     private RFile rf = null;
 
+    /* The size of a page of the file. */
+    private final int pageSize;
+
     /* A buffer that is used to store the data that will be written to the file. */
-    private final byte[] buffer = new byte[DataClassConfiguration.PAGE_SIZE];
+    private final byte[] buffer;
 
     /* A constant that is used to calculate the number of records that can fit in a page. */
     private int RECORDS_IN_PAGE;
 
+    /* The number of pages generateFile() hands to a thread at a time. */
+    public static final int SLICE_PAGES = 1024;
+
     /**
 	 * Constructor for the DataGenerator class.
 	 * 
@@ -52,6 +72,20 @@ public class DataGenerator {
      * 
 	 */
     public DataGenerator(int dataBytes, int numOfRecords) throws IOException {
+        this(dataBytes, numOfRecords, DataClassConfiguration.PAGE_SIZE);
+    }
+
+    /**
+	 * Constructor for the DataGenerator class, for a file with the given page size.
+	 * 
+	 * @param dataBytes The length of the data strings in bytes.
+	 * @param numOfRecords The amount of records to be created in the file.
+	 * @param pageSize The size of a page of the file.
+	 * @throws IOException If there is an I/O error.
+	 * @throws IllegalArgumentException If either the dataBytes or numOfRecords argument is negative.
+     * 
+	 */
+    public DataGenerator(int dataBytes, int numOfRecords, int pageSize) throws IOException {
         if(dataBytes < 0)
             throw new IllegalArgumentException("The length of the data string is negative");
 
@@ -59,11 +93,14 @@ public class DataGenerator {
             throw new IllegalArgumentException("You cannot create a negative amount of Records");
         
         this.dataBytes = dataBytes;
-        this.RECORDS_IN_PAGE = DataClassConfiguration.PAGE_SIZE/(this.dataBytes+Integer.BYTES);
+        this.pageSize = pageSize;
+        this.buffer = new byte[pageSize];
+        this.RECORDS_IN_PAGE = pageSize/(this.dataBytes+Integer.BYTES);
         this.numOfRecords = numOfRecords;
         DCC = instantiateDCC(dataBytes);
         rf = instantiateRFile(dataBytes, numOfRecords);
-        recordList = new ArrayList<>(numOfRecords);
+        // sized by generateRecords only, generateFile streams the records and never fills it
+        recordList = new ArrayList<>();
     }
 
     /**
@@ -85,7 +122,7 @@ public class DataGenerator {
      * @return The RFile object.
      */
     protected RFile instantiateRFile(int dataBytes, int numOfRecords) throws IOException {
-        return (rf == null) ? new RFile("test_"+dataBytes+"-bytes"+"_"+numOfRecords+".bin", "rw", DCC.RECORD_SIZE) : rf;
+        return (rf == null) ? new RFile("test_"+dataBytes+"-bytes"+"_"+numOfRecords+".bin", "rw", DCC.RECORD_SIZE, pageSize, DataClassConfiguration.PAGE_SOURCE) : rf;
     }
 
     /**
@@ -104,6 +141,7 @@ public class DataGenerator {
         for(int i = 0 ; i < numOfRecords ; ++i)
             data[i] = RandomString.getAlphaNumericString(dataBytes);
 
+        recordList = new ArrayList<>(numOfRecords);
         for(int i = 0; i< numOfRecords ; ++i)
             setRecord(new Record(keys[i], data[i]), i);
         
@@ -111,32 +149,151 @@ public class DataGenerator {
     }
 
     /**
-     * This function writes the data from the recordList to the file
+     * This function writes the data from the recordList to the file, from page 1 on,
+     * and updates the header of the file.
      * 
      * @return The number of records that were written to the file.
      */
     protected int fillFile() throws IOException {
         ByteBuffer bb = ByteBuffer.allocate(dataBytes);
-        long pos = 0;
-        rf.getRaf().seek(pos);
+        int records = recordList.size();
+        long pages = 0;
+        rf.getRaf().seek(rf.getHeader().position(1));
         
-        for(int i = 0; i < recordList.size(); ++i) {
+        for(int i = 0; i < records; ++i) {
             byte[] key = Utils.intToBytes(getRecord(i).getKey());
             bb.put(getRecord(i).getData().getBytes(StandardCharsets.US_ASCII));
             byte[] data = bb.array();
             System.arraycopy(key, 0, buffer, (i%RECORDS_IN_PAGE)*(dataBytes+Integer.BYTES), Integer.BYTES);
             System.arraycopy(data, 0, buffer, (i%RECORDS_IN_PAGE)*(dataBytes+Integer.BYTES) + Integer.BYTES, dataBytes);
             bb.clear();
-            if(i%RECORDS_IN_PAGE == 0 && i!=0) {
+            if(i%RECORDS_IN_PAGE == RECORDS_IN_PAGE - 1) {
                 rf.getRaf().write(buffer);
                 Arrays.fill(buffer, (byte) 0);
+                pages++;
             }
         }
 
-        rf.getRaf().write(buffer);
-        Arrays.fill(buffer, (byte) 0);
+        if(records%RECORDS_IN_PAGE != 0) {
+            rf.getRaf().write(buffer);
+            Arrays.fill(buffer, (byte) 0);
+            pages++;
+        }
+        rf.getHeader().setRecordCount(records);
+        rf.getHeader().setLastPage(pages);
+        rf.getRaf().setLength(rf.getHeader().position(pages + 1));
+        rf.writeHeader();
         recordList.clear();
-        return 0;
+        return records;
+    }
+
+    /**
+     * Generates the records straight into the file, from page 1 on, on as many threads as
+     * there are processors, and updates the header of the file.
+     * 
+     * @param seed the seed the keys and data strings are drawn from
+     * @return The number of records that were written to the file.
+     * @throws IOException If there is an I/O error.
+     */
+    public int generateFile(long seed) throws IOException {
+        return generateFile(seed, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Generates the records straight into the file, from page 1 on, and updates the header of
+     * the file. No record is kept in memory: the key of the i-th record is the i-th value of a
+     * {@link KeyPermutation} of {@code [1, 2n]}, so the keys are unique and drawn from the same
+     * range as {@link #generateRecords()} draws them, and the data strings are written into the
+     * page buffers by {@link RandomString#fill}.
+     * <p>
+     * The pages are split in slices of {@link #SLICE_PAGES} pages, which the threads write with
+     * positional writes of {@link IndexBuffer#PAGES_PER_WRITE} pages. Every slice draws its data
+     * strings from its own {@link SplittableRandom}, split off the seed, so the same seed gives
+     * the same file whatever the number of threads.
+     * </p>
+     * 
+     * @param seed the seed the keys and data strings are drawn from
+     * @param threads the number of threads writing the pages
+     * @return The number of records that were written to the file.
+     * @throws IOException If there is an I/O error.
+     * @throws IllegalArgumentException If the number of threads is not positive.
+     */
+    public int generateFile(long seed, int threads) throws IOException {
+        if(threads < 1)
+            throw new IllegalArgumentException("The number of threads should be positive");
+
+        FileHeader header = rf.getHeader();
+        long pages = ((long) numOfRecords + RECORDS_IN_PAGE - 1)/RECORDS_IN_PAGE;
+
+        if(numOfRecords > 0) {
+            KeyPermutation keys = new KeyPermutation(2L*numOfRecords, seed);
+            SplittableRandom random = new SplittableRandom(seed);
+            List<Callable<Void>> tasks = new ArrayList<>();
+
+            for(long from = 1; from <= pages; from += SLICE_PAGES) {
+                long first = from;
+                long last = Math.min(pages + 1, from + SLICE_PAGES);
+                SplittableRandom sliceRandom = random.split();
+                tasks.add(() -> {
+                    writePages(keys, sliceRandom, first, last);
+                    return null;
+                });
+            }
+            runAll(tasks, threads);
+        }
+
+        header.setRecordCount(numOfRecords);
+        header.setLastPage(pages);
+        rf.getRaf().setLength(header.position(pages + 1));
+        rf.writeHeader();
+        return numOfRecords;
+    }
+
+    /**
+     * Writes the records of the pages [from, to) of the file.
+     */
+    private void writePages(KeyPermutation keys, SplittableRandom random, long from, long to) throws IOException {
+        FileChannel channel = rf.getRaf().getChannel();
+        int recordSize = dataBytes + Integer.BYTES;
+        byte[] block = new byte[(int) Math.min(to - from, IndexBuffer.PAGES_PER_WRITE)*pageSize];
+
+        for(long p = from; p < to; ) {
+            int n = (int) Math.min(to - p, IndexBuffer.PAGES_PER_WRITE);
+            Arrays.fill(block, (byte) 0);
+            for(int q = 0; q < n; ++q) {
+                long first = (p + q - 1)*RECORDS_IN_PAGE;
+                int records = (int) Math.min(RECORDS_IN_PAGE, numOfRecords - first);
+                for(int r = 0; r < records; ++r) {
+                    int pos = q*pageSize + r*recordSize;
+                    Utils.intToBytes((int) keys.permute(first + r) + 1, block, pos);
+                    RandomString.fill(random, block, pos + Integer.BYTES, dataBytes);
+                }
+            }
+
+            ByteBuffer bb = ByteBuffer.wrap(block, 0, n*pageSize);
+            long position = rf.getHeader().position(p);
+            while(bb.hasRemaining())
+                channel.write(bb, position + bb.position());
+            p += n;
+        }
+    }
+
+    /**
+     * Runs the tasks on a pool of the given number of threads and waits for all of them.
+     */
+    private static void runAll(List<Callable<Void>> tasks, int threads) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, tasks.size()));
+        try {
+            for(Future<Void> f : pool.invokeAll(tasks))
+                f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while generating the file");
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
     }
 
     public DataClassConfiguration getDCC() {
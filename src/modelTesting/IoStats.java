@@ -0,0 +1,43 @@
+package modelTesting;
+
+import model.RFile;
+
+/* A record class that holds the I/O counters of an RFile and its index files, or what they counted between two snapshots. */
+public record IoStats(long bufferHits, long bufferMisses,
+                      long bloomChecks, long bloomShortCircuits,
+                      long logicalReads, long physicalReads,
+                      long bytesRead){
+
+    /* The counters of a file nothing was read from */
+    public static final IoStats NONE = new IoStats(0, 0, 0, 0, 0, 0, 0);
+
+    /**
+     * Takes a snapshot of the counters of a file.
+     *
+     * @param file the file
+     * @return the counters of the file
+     */
+    public static IoStats of(RFile file) {
+        if(file == null) throw new NullPointerException("file should not be null");
+
+        return new IoStats(file.getBufferHits(), file.getBufferMisses(),
+                           file.getBloomChecks(), file.getBloomShortCircuits(),
+                           file.getLogicalReads(), file.getPhysicalReads(),
+                           file.getBytesRead());
+    }
+
+    /**
+     * Returns what the counters counted since an earlier snapshot.
+     *
+     * @param before the earlier snapshot
+     * @return the difference of the counters
+     */
+    public IoStats since(IoStats before) {
+        if(before == null) throw new NullPointerException("before should not be null");
+
+        return new IoStats(bufferHits - before.bufferHits, bufferMisses - before.bufferMisses,
+                           bloomChecks - before.bloomChecks, bloomShortCircuits - before.bloomShortCircuits,
+                           logicalReads - before.logicalReads, physicalReads - before.physicalReads,
+                           bytesRead - before.bytesRead);
+    }
+}
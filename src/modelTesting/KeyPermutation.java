@@ -0,0 +1,98 @@
+package modelTesting;
+
+import java.util.SplittableRandom;
+
+/**
+ * The {@code KeyPermutation} class is a seeded bijection of {@code [0, range)}, so the first
+ * {@code n} positions give {@code n} unique keys without remembering the keys already drawn.
+ * <p>
+ * The positions are enciphered by a balanced Feistel network over the smallest domain of
+ * {@code 4^h} values that holds the range. A Feistel network is a permutation of its domain
+ * whatever its round function is, so values outside the range are enciphered again (cycle
+ * walking) until they land in it, which takes less than 4 rounds of the network on average.
+ * </p>
+ *
+ * @author nr
+ * @since 2023-03
+ */
+public class KeyPermutation {
+
+    /* The number of rounds of the Feistel network */
+    private static final int ROUNDS = 4;
+
+    /* The size of the permuted range */
+    private final long range;
+
+    /* The number of bits of each half of a value */
+    private final int halfBits;
+
+    /* The mask of the low half of a value */
+    private final long halfMask;
+
+    /* The key of every round */
+    private final int[] roundKeys = new int[ROUNDS];
+
+    /**
+     * Creates the permutation of {@code [0, range)} drawn by the given seed.
+     *
+     * @param range the size of the range, at most {@code 2^31}
+     * @param seed the seed
+     * @throws IllegalArgumentException if the range is not positive or larger than {@code 2^31}
+     */
+    public KeyPermutation(long range, long seed) {
+        if(range < 1 || range > 1L << 31)
+            throw new IllegalArgumentException("The range should be between 1 and 2^31");
+
+        int bits = Math.max(2, Long.SIZE - Long.numberOfLeadingZeros(range - 1));
+        this.range = range;
+        this.halfBits = (bits + 1)/2;
+        this.halfMask = (1L << halfBits) - 1;
+
+        SplittableRandom random = new SplittableRandom(seed);
+        for(int i = 0; i < ROUNDS; ++i)
+            roundKeys[i] = random.nextInt();
+    }
+
+    /**
+     * Returns the value the permutation maps a position to.
+     *
+     * @param i the position, in {@code [0, range)}
+     * @return the value of the position, in {@code [0, range)}
+     * @throws IndexOutOfBoundsException if the position is out of the range
+     */
+    public long permute(long i) {
+        if(i < 0 || i >= range)
+            throw new IndexOutOfBoundsException("Position out of range");
+
+        long x = i;
+        do {
+            x = encipher(x);
+        } while(x >= range);
+        return x;
+    }
+
+    private long encipher(long x) {
+        long left = x >>> halfBits;
+        long right = x & halfMask;
+
+        for(int round = 0; round < ROUNDS; ++round) {
+            long next = left ^ (mix((int) right ^ roundKeys[round]) & halfMask);
+            left = right;
+            right = next;
+        }
+        return (left << halfBits) | right;
+    }
+
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    public long getRange() {
+        return range;
+    }
+}
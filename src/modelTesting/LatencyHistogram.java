@@ -0,0 +1,146 @@
+package modelTesting;
+
+import java.util.Arrays;
+
+/**
+ * The {@code LatencyHistogram} class counts non-negative values, such as lookup latencies in
+ * nanoseconds or disk accesses, in buckets of bounded relative width, so the percentiles of
+ * any number of samples are kept in a fixed amount of memory over the whole range of a long.
+ * <p>
+ * Values below {@code 2^SUB_BUCKET_BITS} get a bucket each and are exact. Above that every
+ * power of two is split into {@code 2^(SUB_BUCKET_BITS-1)} buckets, so a value is reported
+ * with a relative error of less than {@code 2^-(SUB_BUCKET_BITS-1)}, under 1.6%. A percentile
+ * is the largest value of the bucket holding the sample of that rank, and never more than the
+ * largest value recorded. The histogram is not safe to share between threads.
+ * </p>
+ *
+ * @author nr
+ * @since 2023-03
+ */
+public class LatencyHistogram {
+
+    /* The bits of a value kept exact */
+    private static final int SUB_BUCKET_BITS = 7;
+
+    /* The number of buckets of the exact values */
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /* The number of buckets every further power of two is split into */
+    private static final int HALF_SUB_BUCKETS = SUB_BUCKETS/2;
+
+    /* The counts of the buckets */
+    private final long[] counts = new long[SUB_BUCKETS + (Long.SIZE - SUB_BUCKET_BITS)*HALF_SUB_BUCKETS];
+
+    /* The number of values recorded */
+    private long count;
+
+    /* The sum of the values recorded */
+    private double sum;
+
+    /* The smallest value recorded */
+    private long min = Long.MAX_VALUE;
+
+    /* The largest value recorded */
+    private long max;
+
+    /**
+     * Records a value.
+     *
+     * @param value the value, not negative
+     * @throws IllegalArgumentException if the value is negative
+     */
+    public void record(long value) {
+        if(value < 0)
+            throw new IllegalArgumentException("The value should not be negative");
+
+        counts[bucket(value)]++;
+        count++;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Adds the values recorded by another histogram to this one.
+     *
+     * @param other the other histogram
+     */
+    public void add(LatencyHistogram other) {
+        if(other == null) throw new NullPointerException("other should not be null");
+
+        for(int i = 0; i < counts.length; ++i)
+            counts[i] += other.counts[i];
+        count += other.count;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * Returns the value below or at which the given percentage of the values lie, the value of
+     * the sample of rank {@code ceil(percentile/100*count)}.
+     *
+     * @param percentile the percentage, between 0 and 100
+     * @return the value of the percentile, 0 if no value was recorded
+     * @throws IllegalArgumentException if the percentage is out of range
+     */
+    public long percentile(double percentile) {
+        if(!(percentile >= 0 && percentile <= 100))
+            throw new IllegalArgumentException("The percentile should be between 0 and 100");
+        if(count == 0)
+            return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(percentile/100*count));
+        long seen = 0;
+        for(int i = 0; i < counts.length; ++i) {
+            seen += counts[i];
+            if(seen >= rank)
+                return Math.min(max, Math.max(min, highestValue(i)));
+        }
+        return max;
+    }
+
+    /**
+     * Clears the histogram.
+     */
+    public void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        sum = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+    private static int bucket(long value) {
+        if(value < SUB_BUCKETS)
+            return (int) value;
+
+        int shift = Long.SIZE - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return SUB_BUCKETS + (shift - 1)*HALF_SUB_BUCKETS + (int) (value >>> shift) - HALF_SUB_BUCKETS;
+    }
+
+    private static long highestValue(int bucket) {
+        if(bucket < SUB_BUCKETS)
+            return bucket;
+
+        int shift = (bucket - SUB_BUCKETS)/HALF_SUB_BUCKETS + 1;
+        long sub = (bucket - SUB_BUCKETS)%HALF_SUB_BUCKETS + HALF_SUB_BUCKETS;
+        return ((sub + 1) << shift) - 1;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMean() {
+        return count == 0 ? 0 : sum/count;
+    }
+
+    public long getMin() {
+        return count == 0 ? 0 : min;
+    }
+
+    public long getMax() {
+        return max;
+    }
+}
@@ -0,0 +1,17 @@
+package modelTesting;
+
+/* A record class that holds the results of one search method in a test: the mean disk accesses and runtime
+   (in nanoseconds) of its lookups, and the percentiles of their latencies (in nanoseconds) and disk accesses. */
+public record MethodResult(float diskAccesses, long runtime,
+                           Percentiles latencies, Percentiles accesses){
+
+    /**
+     * Returns the results of a method that made no lookup.
+     *
+     * @return the empty results
+     */
+    public static MethodResult empty() {
+        Percentiles none = Percentiles.of(new LatencyHistogram());
+        return new MethodResult(0, 0, none, none);
+    }
+}
@@ -0,0 +1,21 @@
+package modelTesting;
+
+/* A record class that summarizes the samples of a LatencyHistogram: their number, mean, tail percentiles and maximum. */
+public record Percentiles(long count, double mean,
+                          long p50, long p90, long p99,
+                          long p999, long max){
+
+    /**
+     * Summarizes the values recorded by a histogram.
+     *
+     * @param histogram the histogram
+     * @return the percentiles of the histogram
+     */
+    public static Percentiles of(LatencyHistogram histogram) {
+        if(histogram == null) throw new NullPointerException("histogram should not be null");
+
+        return new Percentiles(histogram.getCount(), histogram.getMean(),
+                               histogram.percentile(50), histogram.percentile(90), histogram.percentile(99),
+                               histogram.percentile(99.9), histogram.getMax());
+    }
+}
@@ -1,5 +1,8 @@
 package modelTesting;
 
+import java.nio.charset.StandardCharsets;
+import java.util.SplittableRandom;
+
 /**
  * Java program generate a random AlphaNumeric String
  * using Math.random() method.
@@ -8,6 +11,13 @@ package modelTesting;
  * </p>
  */
 public class RandomString {
+
+    /* The characters the strings are made of */
+    private static final String ALPHA_NUMERIC = "ABCDEFGHIJKLMNOPQRSTUVWXYZ"
+            + "0123456789" + "abcdefghijklmnopqrstuvxyz";
+
+    /* The characters the strings are made of, as US-ASCII bytes */
+    private static final byte[] ALPHA_NUMERIC_BYTES = ALPHA_NUMERIC.getBytes(StandardCharsets.US_ASCII);
     
     private RandomString(){
         throw new IllegalStateException("Random String Class"); 
@@ -17,8 +27,7 @@ public class RandomString {
     public static String getAlphaNumericString(int n) {
     
      // choose a Character random from this String
-     String AlphaNumericString = "ABCDEFGHIJKLMNOPQRSTUVWXYZ"
-            + "0123456789" + "abcdefghijklmnopqrstuvxyz";
+     String AlphaNumericString = ALPHA_NUMERIC;
     
      // create StringBuffer size of AlphaNumericString
      StringBuilder sb = new StringBuilder(n);
@@ -35,4 +44,18 @@ public class RandomString {
      return sb.toString();
     }
 
+    /**
+     * Writes random alphanumeric US-ASCII characters straight into a buffer, the bytes a
+     * string of {@link #getAlphaNumericString(int)} would be written as.
+     * 
+     * @param random the random number generator to draw from
+     * @param dst the buffer
+     * @param offset the position of the first character in the buffer
+     * @param length the number of characters
+     */
+    public static void fill(SplittableRandom random, byte[] dst, int offset, int length) {
+        for(int i = offset; i < offset + length; ++i)
+            dst[i] = ALPHA_NUMERIC_BYTES[random.nextInt(ALPHA_NUMERIC_BYTES.length)];
+    }
+
 }
\ No newline at end of file
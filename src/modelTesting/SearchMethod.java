@@ -0,0 +1,24 @@
+package modelTesting;
+
+/**
+ * The search methods a {@link TestGenerator} measures, in the order they are reported in.
+ *
+ * @author nr
+ * @since 2023-03
+ */
+public enum SearchMethod {
+    /* linear search of the data file, or its parallel scan */
+    A,
+    /* linear search of the index file */
+    B,
+    /* binary search over the pages of the sorted index file */
+    C,
+    /* search of the B+-tree built over the sorted index file */
+    D,
+    /* search of the hash index built over the keys of the data file */
+    E,
+    /* interpolation search over the pages of the sorted index file */
+    F,
+    /* search of the sorted index file through its fence index */
+    G
+}
@@ -1,37 +1,44 @@
 package modelTesting;
 
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.List;
-import java.util.Random;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import model.DataClassConfiguration;
 
 /**
  *  <p>
  *  The {@code TestGenerator} class is a utility class created for generating
  *  the necessary tests required for the first exercise of the course
- *  CSC201 - Data Structures and Algorithms. More specifically, three tests
+ *  CSC201 - Data Structures and Algorithms. More specifically, five tests
  *  are created: a linear search on a file with keys and data, a linear search
  *  on the index file that contains the keys and their position in the original file,
- *  and a binary search on the index file.
+ *  a binary search on the index file, a search on a B+-tree built over the index file,
+ *  a search on a hash index built over the keys of the file and an interpolation search
+ *  on the sorted index file.
  *  </p>
  *  <p>
- *  Each instance of this class is a separate thread which runs in parallel with 
- *  other instances of this class. The reasons behind this design choice are merely 
- *  educational and not necessarily functional, even though a performance boost with
- *  respect to time is to be expected.
+ *  Each instance of this class is a task which {@link App} runs on an executor, in parallel
+ *  with other instances of this class or one at a time. Every instance draws its keys from
+ *  its own random number generator and the results of all of them are collected in a
+ *  concurrent list, so they can run on any number of threads.
  *  </p>
  * 
  *  @author nr
  *  @since 2023-03
  *  
  */
-public class TestGenerator implements Runnable {
+public class TestGenerator implements Runnable, Callable<TestStructure> {
 
     /* The length of the data string (27 or 55 bytes) */
     private int dataBytes;
     
-    /* A random number generator used to generate random integers.*/
-    private static Random RNG = new Random();
+    /* A random number generator used to generate random integers, one per test.*/
+    private final SplittableRandom RNG = new SplittableRandom();
 
     /* The  number of records to be generated. */
     private int numOfRecords;
@@ -41,9 +48,18 @@ public class TestGenerator implements Runnable {
    
     /* The number of repetitions to make for random searches */
     private int counts;
+
+    /* Whether the linear search of method A scans the file on a fork-join pool */
+    private final boolean parallelScan;
     
-    /* A list to hold the performance metrics of the file structures. */
-    private static List<TestStructure> testStructureList = new ArrayList<>();
+    /* A list to hold the performance metrics of the file structures, added to by every test. */
+    private static final List<TestStructure> testStructureList = new CopyOnWriteArrayList<>();
+
+    /* The latency of every lookup in nanoseconds, per method */
+    private final Map<SearchMethod, LatencyHistogram> latencies = new EnumMap<>(SearchMethod.class);
+
+    /* The disk accesses of every lookup, per method */
+    private final Map<SearchMethod, LatencyHistogram> accesses = new EnumMap<>(SearchMethod.class);
 
     /* Linear search stopwatch */
     private long startLinearSearch;
@@ -57,6 +73,22 @@ public class TestGenerator implements Runnable {
     private long startBinarySearch;
     private long stopBinarySearch;
 
+    /* B+-tree search stopwatch */
+    private long startBPlusTreeSearch;
+    private long stopBPlusTreeSearch;
+
+    /* Hash index search stopwatch */
+    private long startHashSearch;
+    private long stopHashSearch;
+
+    /* Interpolation search stopwatch */
+    private long startInterpolationSearch;
+    private long stopInterpolationSearch;
+
+    /* Fence index search stopwatch */
+    private long startFenceSearch;
+    private long stopFenceSearch;
+
     /**
      * Constructs a TestGenerator object with the specified parameters.
      * 
@@ -65,23 +97,52 @@ public class TestGenerator implements Runnable {
      * @param counts The number of times to search for a record in each file.
      */
     public TestGenerator(int dataBytes, int numOfRecords, int counts) {
+        this(dataBytes, numOfRecords, counts, DataClassConfiguration.PARALLEL_SCAN);
+    }
+
+    /**
+     * Constructs a TestGenerator object with the specified parameters.
+     * 
+     * @param dataBytes The number of bytes to be generated for each record.
+     * @param numOfRecords The number of records to be generated.
+     * @param counts The number of times to search for a record in each file.
+     * @param parallelScan Whether method A scans the file in parallel, see {@link model.RFile#parallelSearchFile(int)}.
+     */
+    public TestGenerator(int dataBytes, int numOfRecords, int counts, boolean parallelScan) {
+        for(SearchMethod method : SearchMethod.values()) {
+            latencies.put(method, new LatencyHistogram());
+            accesses.put(method, new LatencyHistogram());
+        }
         resetTimers();
+        this.parallelScan = parallelScan;
         this.dataBytes = dataBytes;
         this.numOfRecords = numOfRecords;
         this.counts = counts;
-        testResults = new TestStructure(0,0,0,0,0,0,0,0);        
+        testResults = TestStructure.empty(dataBytes, numOfRecords);
     }
 
     /**
-     * This function resets the timers to 0
+     * This function resets the timers to 0 and clears the histograms
      */
     public void resetTimers() {
+        for(SearchMethod method : SearchMethod.values()) {
+            latencies.get(method).reset();
+            accesses.get(method).reset();
+        }
         startBinarySearch = 0;
         stopBinarySearch = 0;
         startLinearSearch = 0;
         stopLinearSearch = 0;
         startLinearIndexSearch = 0;
         stopLinearIndexSearch = 0;
+        startBPlusTreeSearch = 0;
+        stopBPlusTreeSearch = 0;
+        startHashSearch = 0;
+        stopHashSearch = 0;
+        startInterpolationSearch = 0;
+        stopInterpolationSearch = 0;
+        startFenceSearch = 0;
+        stopFenceSearch = 0;
     }
 
     /**
@@ -90,19 +151,41 @@ public class TestGenerator implements Runnable {
     @Override
     public void run() {
         try {
-            DataGenerator dg = new DataGenerator(dataBytes, numOfRecords);
+            call();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Runs the test and adds its results to the {@link #getTestStructureList() list} of results.
+     * 
+     * @return the results of the test
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public TestStructure call() throws IOException {
+        DataGenerator dg = new DataGenerator(dataBytes, numOfRecords);
+        try {
             if(dg.getRf().getFile() == null || dg.getRf().getIndexFile() == null){
-                dg.generateRecords();
-                dg.fillFile();
+                dg.generateFile(RNG.nextLong());
                 dg.getRf().split();
             }
             
-            testStructureList.add(makeTest(dg, this.counts));
+            TestStructure results = makeTest(dg, this.counts);
+            testStructureList.add(results);
+            return results;
+        } finally {
             dg.getRf().close();
             dg.getRf().getFile().deleteOnExit();
-            dg.getRf().getIndexFile().getFile().deleteOnExit();
-        } catch (IOException e) {
-            e.printStackTrace();
+            if(dg.getRf().getIndexFile() != null)
+                dg.getRf().getIndexFile().getFile().deleteOnExit();
+            if(dg.getRf().getBPlusTree() != null)
+                dg.getRf().getBPlusTree().getFile().deleteOnExit();
+            if(dg.getRf().getHashIndex() != null)
+                dg.getRf().getHashIndex().getFile().deleteOnExit();
+            dg.getRf().getFenceFile().deleteOnExit();
+            dg.getRf().getBloomFile().deleteOnExit();
         }
     }
 
@@ -114,21 +197,43 @@ public class TestGenerator implements Runnable {
      * @return The TestStructure object containing information about the test.
      */
     public TestStructure makeTest(DataGenerator dg, int counts) throws IOException {
+        IoStats before = IoStats.of(dg.getRf());
+        Map<SearchMethod, MethodResult> methods = new EnumMap<>(SearchMethod.class);
         float randomLinearSearch = randomSearchCounter(dg, counts);
+        methods.put(SearchMethod.A, result(SearchMethod.A, randomLinearSearch, stopLinearSearch));
         float randomIndexSearch = randomSearchCounterIndexFile(dg, counts);
+        methods.put(SearchMethod.B, result(SearchMethod.B, randomIndexSearch, stopLinearIndexSearch));
         float randomBinarySearch = randomBinarySearchCounter(dg, counts);
+        methods.put(SearchMethod.C, result(SearchMethod.C, randomBinarySearch, stopBinarySearch));
+        float randomBPlusTreeSearch = randomBPlusTreeSearchCounter(dg, counts);
+        methods.put(SearchMethod.D, result(SearchMethod.D, randomBPlusTreeSearch, stopBPlusTreeSearch));
+        float randomHashSearch = randomHashSearchCounter(dg, counts);
+        methods.put(SearchMethod.E, result(SearchMethod.E, randomHashSearch, stopHashSearch));
+        float randomInterpolationSearch = randomInterpolationSearchCounter(dg, counts);
+        methods.put(SearchMethod.F, result(SearchMethod.F, randomInterpolationSearch, stopInterpolationSearch));
+        float randomFenceSearch = randomFenceSearchCounter(dg, counts);
+        methods.put(SearchMethod.G, result(SearchMethod.G, randomFenceSearch, stopFenceSearch));
 
-        testResults = new TestStructure(dataBytes, numOfRecords, randomLinearSearch, 
-                          stopLinearSearch, randomIndexSearch,
-                          stopLinearIndexSearch, randomBinarySearch,
-                          stopBinarySearch);
+        testResults = new TestStructure(dataBytes, numOfRecords, Collections.unmodifiableMap(methods),
+                                        IoStats.of(dg.getRf()).since(before));
         resetTimers();
         return testResults;
     }
 
+    private void record(SearchMethod method, long elapsed, int diskAccesses) {
+        latencies.get(method).record(elapsed);
+        accesses.get(method).record(diskAccesses);
+    }
+
+    private MethodResult result(SearchMethod method, float diskAccesses, long runtime) {
+        return new MethodResult(diskAccesses, runtime,
+                                Percentiles.of(latencies.get(method)), Percentiles.of(accesses.get(method)));
+    }
+
     /**
      * Returns the average number of disk accesses made by the searchFile function in the RFile class
-     * for a random serial search in the original file.
+     * for a random serial search in the original file, or by the parallelSearchFile function, the
+     * pages read by all the workers, if the test runs in parallel scan mode.
      * 
      * @param dg The DataGenerator object.
      * @param counts The number of times to search for a record in each file.
@@ -143,8 +248,11 @@ public class TestGenerator implements Runnable {
         
         for(int i = 0; i < counts; ++i){
             startLinearSearch = System.nanoTime();
-            result += dg.getRf().searchFile(randomInts[i]);
-            stopLinearSearch += (System.nanoTime() - startLinearSearch);
+            int diskAccesses = parallelScan ? dg.getRf().parallelSearchFile(randomInts[i]) : dg.getRf().searchFile(randomInts[i]);
+            long elapsed = System.nanoTime() - startLinearSearch;
+            stopLinearSearch += elapsed;
+            record(SearchMethod.A, elapsed, diskAccesses);
+            result += diskAccesses;
         }
 
         stopLinearSearch /= counts;
@@ -168,8 +276,11 @@ public class TestGenerator implements Runnable {
         
         for(int i = 0; i < counts; ++i) {
             startLinearIndexSearch = System.nanoTime();
-            result += dg.getRf().getIndexFile().searchFile(randomInts[i]);
-            stopLinearIndexSearch += (System.nanoTime() - startLinearIndexSearch);
+            int diskAccesses = dg.getRf().getIndexFile().searchFile(randomInts[i]);
+            long elapsed = System.nanoTime() - startLinearIndexSearch;
+            stopLinearIndexSearch += elapsed;
+            record(SearchMethod.B, elapsed, diskAccesses);
+            result += diskAccesses;
         }
 
         stopLinearIndexSearch /= counts;
@@ -193,14 +304,131 @@ public class TestGenerator implements Runnable {
         
         for(int i = 1; i <= counts; ++i) {
             startBinarySearch = System.nanoTime();
-            result += dg.getRf().binarySearch2(randomInts[i-1]);
-            stopBinarySearch += System.nanoTime() - startBinarySearch;
+            int diskAccesses = dg.getRf().binarySearch2(randomInts[i-1]);
+            long elapsed = System.nanoTime() - startBinarySearch;
+            stopBinarySearch += elapsed;
+            record(SearchMethod.C, elapsed, diskAccesses);
+            result += diskAccesses;
         }
 
         stopBinarySearch /= counts;
         return result/counts;
     }
 
+    /**
+     * Returns the average number of disk accesses made by the bPlusTreeSearch function in the RFile class
+     * for a random search in the B+-tree built over the sorted index file.
+     * 
+     * @param dg The DataGenerator object.
+     * @param counts The number of times to search for a record in each file.
+     * @return The average number of disk accesses.
+     */
+    public synchronized float randomBPlusTreeSearchCounter(DataGenerator dg, int counts) throws IOException {
+        dg.getRf().buildBPlusTree();
+        float result = 0;
+        int[] randomInts = (numOfRecords >= 50 && numOfRecords <= 1000) ?
+                            RNG.ints(1, 2*numOfRecords+1).limit(counts).toArray() :
+                            RNG.ints(1, 2*numOfRecords+1).distinct().limit(counts).toArray();
+        
+        for(int i = 0; i < counts; ++i) {
+            startBPlusTreeSearch = System.nanoTime();
+            int diskAccesses = dg.getRf().bPlusTreeSearch(randomInts[i]);
+            long elapsed = System.nanoTime() - startBPlusTreeSearch;
+            stopBPlusTreeSearch += elapsed;
+            record(SearchMethod.D, elapsed, diskAccesses);
+            result += diskAccesses;
+        }
+
+        stopBPlusTreeSearch /= counts;
+        return result/counts;
+    }
+
+    /**
+     * Returns the average number of disk accesses made by the hashSearch function in the RFile class
+     * for a random search in the hash index built over the keys of the original file.
+     * 
+     * @param dg The DataGenerator object.
+     * @param counts The number of times to search for a record in each file.
+     * @return The average number of disk accesses.
+     */
+    public synchronized float randomHashSearchCounter(DataGenerator dg, int counts) throws IOException {
+        dg.getRf().buildHashIndex();
+        float result = 0;
+        int[] randomInts = (numOfRecords >= 50 && numOfRecords <= 1000) ?
+                            RNG.ints(1, 2*numOfRecords+1).limit(counts).toArray() :
+                            RNG.ints(1, 2*numOfRecords+1).distinct().limit(counts).toArray();
+        
+        for(int i = 0; i < counts; ++i) {
+            startHashSearch = System.nanoTime();
+            int diskAccesses = dg.getRf().hashSearch(randomInts[i]);
+            long elapsed = System.nanoTime() - startHashSearch;
+            stopHashSearch += elapsed;
+            record(SearchMethod.E, elapsed, diskAccesses);
+            result += diskAccesses;
+        }
+
+        stopHashSearch /= counts;
+        return result/counts;
+    }
+
+    /**
+     * Returns the average number of disk accesses made by the interpolationSearch function in the RFile class
+     * for a random search in the sorted index file.
+     * 
+     * @param dg The DataGenerator object.
+     * @param counts The number of times to search for a record in each file.
+     * @return The average number of disk accesses.
+     */
+    public synchronized float randomInterpolationSearchCounter(DataGenerator dg, int counts) throws IOException {
+        if(!dg.getRf().getIndexFile().getHeader().isSorted())
+            dg.getRf().sort();
+        float result = 0;
+        int[] randomInts = (numOfRecords >= 50 && numOfRecords <= 1000) ?
+                            RNG.ints(1, 2*numOfRecords+1).limit(counts).toArray() :
+                            RNG.ints(1, 2*numOfRecords+1).distinct().limit(counts).toArray();
+        
+        for(int i = 0; i < counts; ++i) {
+            startInterpolationSearch = System.nanoTime();
+            int diskAccesses = dg.getRf().interpolationSearch(randomInts[i]);
+            long elapsed = System.nanoTime() - startInterpolationSearch;
+            stopInterpolationSearch += elapsed;
+            record(SearchMethod.F, elapsed, diskAccesses);
+            result += diskAccesses;
+        }
+
+        stopInterpolationSearch /= counts;
+        return result/counts;
+    }
+
+    /**
+     * Returns the average number of disk accesses made by the fenceSearch function in the RFile class
+     * for a random search in the sorted index file, whose page is found with its fence index.
+     * 
+     * @param dg The DataGenerator object.
+     * @param counts The number of times to search for a record in each file.
+     * @return The average number of disk accesses.
+     */
+    public synchronized float randomFenceSearchCounter(DataGenerator dg, int counts) throws IOException {
+        if(!dg.getRf().getIndexFile().getHeader().isSorted())
+            dg.getRf().sort();
+        float result = 0;
+        int[] randomInts = (numOfRecords >= 50 && numOfRecords <= 1000) ?
+                            RNG.ints(1, 2*numOfRecords+1).limit(counts).toArray() :
+                            RNG.ints(1, 2*numOfRecords+1).distinct().limit(counts).toArray();
+        
+        for(int i = 0; i < counts; ++i) {
+            startFenceSearch = System.nanoTime();
+            int diskAccesses = dg.getRf().fenceSearch(randomInts[i]);
+            long elapsed = System.nanoTime() - startFenceSearch;
+            stopFenceSearch += elapsed;
+            record(SearchMethod.G, elapsed, diskAccesses);
+            result += diskAccesses;
+        }
+
+        stopFenceSearch /= counts;
+        return result/counts;
+    }
+
     /*------------------Getters------------------*/
     public int getDataBytes() {
         return dataBytes;
@@ -221,5 +449,9 @@ public class TestGenerator implements Runnable {
     public int getCounts() {
         return counts;
     }
+
+    public boolean isParallelScan() {
+        return parallelScan;
+    }
     
 }
@@ -1,7 +1,36 @@
 package modelTesting;
 
-/* A record class that contains the necessary performance metrics. */
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/* A record class that contains the necessary performance metrics of a test: the results of every
+   search method and what the test read. */
 public record TestStructure (int dataBytes, int numOfRecords,
-                             float discAccessCountA, long runtimeA,
-                             float discAccessCountB, long runtimeB,
-                             float discAccessCountC, long runtimeC){}
+                             Map<SearchMethod, MethodResult> methods,
+                             IoStats io){
+
+    /**
+     * Returns the results of a test that has not run yet.
+     *
+     * @param dataBytes the length of the data strings of the test
+     * @param numOfRecords the number of records of the test
+     * @return the empty results
+     */
+    public static TestStructure empty(int dataBytes, int numOfRecords) {
+        Map<SearchMethod, MethodResult> methods = new EnumMap<>(SearchMethod.class);
+        for(SearchMethod method : SearchMethod.values())
+            methods.put(method, MethodResult.empty());
+        return new TestStructure(dataBytes, numOfRecords, Collections.unmodifiableMap(methods), IoStats.NONE);
+    }
+
+    /**
+     * Returns the results of a search method.
+     *
+     * @param method the search method
+     * @return the results of the method
+     */
+    public MethodResult method(SearchMethod method) {
+        return methods.get(method);
+    }
+}
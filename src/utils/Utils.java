@@ -34,6 +34,22 @@ public class Utils {
     }
 
 
+    /**
+     * It writes an integer as 4 big-endian bytes at the given offset of a byte array.
+     * 
+     * @param data The integer to convert to bytes
+     * @param dst The byte array to write to
+     * @param offset The position of the first byte
+     * @throws ArrayIndexOutOfBoundsException if the four bytes do not fit in the array.
+     */
+    public static void intToBytes(int data, byte[] dst, int offset) {
+        dst[offset] = (byte)((data >> 24) & 0xff);
+        dst[offset + 1] = (byte)((data >> 16) & 0xff);
+        dst[offset + 2] = (byte)((data >> 8) & 0xff);
+        dst[offset + 3] = (byte)(data & 0xff);
+    }
+
+
     /**
      * It takes a byte array and returns the integer value of the byte array
      * 
@@ -49,6 +65,22 @@ public class Utils {
                 (0xff & data[3]) << 0);
     }
 
+    /**
+     * It reads the big-endian integer stored at the given offset of a byte array,
+     * without copying it out of the array.
+     * 
+     * @param data The byte array to read from.
+     * @param offset The position of the first byte of the integer.
+     * @return The integer value of the four bytes at the offset.
+     * @throws ArrayIndexOutOfBoundsException if the four bytes do not fit in the array.
+     */
+    public static int byteArrayToInt(byte[] data, int offset) {
+        return (0xff & data[offset]) << 24  |
+               (0xff & data[offset + 1]) << 16  |
+               (0xff & data[offset + 2]) << 8   |
+               (0xff & data[offset + 3]);
+    }
+
      /**
      * It takes two integers, converts them to byte arrays, and then combines them into a single byte
      * array